@@ -0,0 +1,148 @@
+package com.gt.music.bench;
+
+import com.gt.music.model.ColumnarPage;
+import com.gt.music.model.Note;
+import com.gt.music.model.Rest;
+import com.gt.music.model.Symbol;
+import com.gt.music.types.Accidental;
+import com.gt.music.types.NoteDuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the object list (ArrayList of Note/Rest) with {@link ColumnarPage}:
+ * retained heap per symbol, and the time of a full scan that reads x, duration and MIDI key.
+ *
+ * Usage: java com.gt.music.bench.ColumnarPageBenchmark [symbols] [rounds]
+ * Heap numbers come from Runtime after System.gc(), so run with a fixed heap (e.g. -Xms1g -Xmx1g)
+ * for stable figures.
+ */
+public final class ColumnarPageBenchmark {
+    private ColumnarPageBenchmark() {
+    }
+
+    private static final NoteDuration[] DURATIONS = NoteDuration.values();
+    private static final Accidental[] ACCIDENTALS = Accidental.values();
+
+    public static void main(String[] args) {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+        // ---- memory ----
+        long base = usedHeap();
+        List<Symbol> objects = generate(n, 42L);
+        long objectBytes = usedHeap() - base;
+
+        base = usedHeap();
+        ColumnarPage columnar = new ColumnarPage(n);
+        fill(columnar, n, 42L);
+        long columnarBytes = usedHeap() - base;
+
+        System.out.printf("symbols            : %,d%n", n);
+        System.out.printf("object list        : %,d bytes (%.1f bytes/symbol)%n", objectBytes, (double) objectBytes / n);
+        System.out.printf("columnar page      : %,d bytes (%.1f bytes/symbol)%n", columnarBytes, (double) columnarBytes / n);
+
+        // ---- scan speed (first half of the rounds is warm-up) ----
+        long sink = 0;
+        long objectNs = Long.MAX_VALUE, viewNs = Long.MAX_VALUE, columnNs = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            sink += scanObjects(objects);
+            long t1 = System.nanoTime();
+            sink += scanViews(columnar);
+            long t2 = System.nanoTime();
+            sink += scanColumns(columnar);
+            long t3 = System.nanoTime();
+            if (r >= rounds / 2) {
+                objectNs = Math.min(objectNs, t1 - t0);
+                viewNs = Math.min(viewNs, t2 - t1);
+                columnNs = Math.min(columnNs, t3 - t2);
+            }
+        }
+        System.out.printf("scan object list   : %8.3f ms (%.2f ns/symbol)%n", objectNs / 1e6, (double) objectNs / n);
+        System.out.printf("scan flyweight view: %8.3f ms (%.2f ns/symbol)%n", viewNs / 1e6, (double) viewNs / n);
+        System.out.printf("scan raw columns   : %8.3f ms (%.2f ns/symbol)%n", columnNs / 1e6, (double) columnNs / n);
+        System.out.println("(checksum " + sink + ")");
+
+        // keep both stores reachable until here so the heap figures above are honest
+        if (objects.size() + columnar.size() == 0) System.out.println();
+    }
+
+    private static List<Symbol> generate(int n, long seed) {
+        Random rnd = new Random(seed);
+        List<Symbol> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int x = rnd.nextInt(1000);
+            int y = rnd.nextInt(2000);
+            NoteDuration d = DURATIONS[rnd.nextInt(DURATIONS.length)];
+            if (rnd.nextInt(8) == 0) {
+                out.add(new Rest(x, y, d));
+            } else {
+                Note note = new Note(x, y, d);
+                note.setPitchStep(25 + rnd.nextInt(25));
+                note.setAccidental(ACCIDENTALS[rnd.nextInt(ACCIDENTALS.length)]);
+                out.add(note);
+            }
+        }
+        return out;
+    }
+
+    // same sequence as generate(), without allocating the objects
+    private static void fill(ColumnarPage page, int n, long seed) {
+        Random rnd = new Random(seed);
+        for (int i = 0; i < n; i++) {
+            int x = rnd.nextInt(1000);
+            int y = rnd.nextInt(2000);
+            NoteDuration d = DURATIONS[rnd.nextInt(DURATIONS.length)];
+            if (rnd.nextInt(8) == 0) {
+                page.addRest(x, y, d);
+            } else {
+                int step = 25 + rnd.nextInt(25);
+                page.addNote(x, y, d, step, ACCIDENTALS[rnd.nextInt(ACCIDENTALS.length)]);
+            }
+        }
+        page.trimToSize();
+    }
+
+    private static long scanObjects(List<Symbol> symbols) {
+        long acc = 0;
+        for (Symbol s : symbols) {
+            acc += s.getX() + s.getDuration().ordinal();
+            if (s instanceof Note) acc += ((Note) s).getMidiKey();
+        }
+        return acc;
+    }
+
+    private static long scanViews(ColumnarPage page) {
+        long[] acc = new long[1];
+        page.forEach(s -> {
+            acc[0] += s.getX() + s.getDuration().ordinal();
+            if (s instanceof Note) acc[0] += ((Note) s).getMidiKey();
+        });
+        return acc[0];
+    }
+
+    private static long scanColumns(ColumnarPage page) {
+        long acc = 0;
+        for (int i = 0, n = page.size(); i < n; i++) {
+            acc += page.x(i) + page.duration(i).ordinal();
+            if (page.isNote(i)) acc += page.midiKey(i);
+        }
+        return acc;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,232 @@
+package com.gt.music.bench;
+
+import com.gt.music.io.MusicXml;
+import com.gt.music.midi.MidiFileExporter;
+import com.gt.music.midi.MidiFileImporter;
+import com.gt.music.model.DurationMs;
+import com.gt.music.model.Note;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.Pitch;
+import com.gt.music.model.Rest;
+import com.gt.music.model.Score;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.StaffLayout;
+import com.gt.music.model.Symbol;
+import com.gt.music.model.playback.PackedTimeline;
+import com.gt.music.model.playback.TimelineBuilder;
+import com.gt.music.types.Accidental;
+import com.gt.music.types.NoteDuration;
+
+import javax.sound.midi.Sequence;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * MusicXML and MIDI export / import round trips must play back exactly like the score they came
+ * from: every page is compiled the way playback does ({@link TimelineBuilder#pack}, staves as
+ * parts, pages back to back) before and after the trip, and the two time lines are compared event
+ * by event.
+ * Where the pages break may differ (import wraps at the right margin), the time line may not,
+ * unless notes overlap across every column of a full imported page: playback holds the next page
+ * until they stop, so the rest comes late by that much (some seeds of the random staves do this).
+ *
+ * Usage: java com.gt.music.bench.ImportRoundTripCheck [pages] [seed]
+ * Exits with status 1 if any trip does not match.
+ */
+public final class ImportRoundTripCheck {
+    private ImportRoundTripCheck() {
+    }
+
+    private static final int CHORD_TOLERANCE_PX = MusicXml.CHORD_TOLERANCE_PX;
+    private static final NoteDuration[] DURATIONS = NoteDuration.values();
+    // the MIDI importer folds keys into this range
+    private static final int LOWEST_STEP = Pitch.step('G', 3);
+    private static final int HIGHEST_STEP = Pitch.step('D', 6);
+
+    public static void main(String[] args) throws IOException {
+        int pageCount = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 42L;
+
+        boolean ok = true;
+        ok &= check("melody, 60 quarters", melody(60));
+        ok &= check("random staves", generate(pageCount, seed));
+        if (!ok) System.exit(1);
+    }
+
+    private static boolean check(String name, List<PageSnapshot> pages) throws IOException {
+        return checkMusicXml(name, pages) & checkMidi(name, midiSafe(pages));
+    }
+
+    private static boolean checkMusicXml(String name, List<PageSnapshot> pages) throws IOException {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        MusicXml.write(pages, xml);
+        List<PageSnapshot> back = new ArrayList<>();
+        MusicXml.read(new ByteArrayInputStream(xml.toByteArray()), page -> back.add(page.snapshot()));
+        if (!compare(name + " / MusicXML", timeline(pages), timeline(back))) return false;
+        if (endMs(pages) != endMs(back)) {
+            System.out.printf("%-34s FAIL: ends at %d ms, expected %d ms%n", name + " / MusicXML", endMs(back), endMs(pages));
+            return false;
+        }
+        return ok(name + " / MusicXML", pages, back);
+    }
+
+    // a MIDI file has no rests: silence after the last note is not kept, everything else is
+    private static boolean checkMidi(String name, List<PageSnapshot> pages) throws IOException {
+        boolean ok = true;
+        for (int type = 0; type <= 1; type++) {
+            Sequence midi = new MidiFileExporter(CHORD_TOLERANCE_PX, 0).toSequence(pages, type);
+            List<PageSnapshot> back = new ArrayList<>();
+            MidiFileImporter.read(midi, page -> back.add(page.snapshot()));
+            String trip = name + " / MIDI type " + type;
+            ok &= compare(trip, timeline(pages), timeline(back)) && ok(trip, pages, back);
+        }
+        return ok;
+    }
+
+    static boolean compare(String name, List<Long> expected, List<Long> actual) {
+        int n = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < n; i++) {
+            if (!expected.get(i).equals(actual.get(i))) {
+                System.out.printf("%-34s FAIL at event %d: expected %s, got %s%n",
+                        name, i, describe(expected.get(i)), describe(actual.get(i)));
+                return false;
+            }
+        }
+        if (expected.size() != actual.size()) {
+            System.out.printf("%-34s FAIL: %d events expected, %d imported%n", name, expected.size(), actual.size());
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean ok(String name, List<PageSnapshot> before, List<PageSnapshot> after) {
+        System.out.printf("%-34s ok: %,d events, %d -> %d page(s), %,d ms%n", name, timeline(before).size(),
+                before.size(), after.size(), endMs(before));
+        return true;
+    }
+
+    // the whole score as playback compiles it (staves as parts, pages back to back), in playback order
+    static List<Long> timeline(List<PageSnapshot> pages) {
+        List<Long> out = new ArrayList<>();
+        long offset = 0;
+        for (PageSnapshot page : pages) {
+            PackedTimeline t = TimelineBuilder.pack(page, CHORD_TOLERANCE_PX, offset);
+            for (int i = 0; i < t.size(); i++) out.add(t.get(i));
+            offset = t.getEndMs();
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    static long endMs(List<PageSnapshot> pages) {
+        long end = 0;
+        for (PageSnapshot page : pages) end = TimelineBuilder.pack(page, CHORD_TOLERANCE_PX, end).getEndMs();
+        return end;
+    }
+
+    private static String describe(long e) {
+        return String.format("%s key %d part %d at %d ms", PackedTimeline.isNoteOn(e) ? "on" : "off",
+                PackedTimeline.key(e), PackedTimeline.channel(e), PackedTimeline.atMs(e));
+    }
+
+    /*
+     * A MIDI channel sounds each key once: a note whose key is still sounding on its staff would end
+     * the earlier one. Such notes move to a key that is free (same x, y and duration, so the timing
+     * stays the same).
+     */
+    static List<PageSnapshot> midiSafe(List<PageSnapshot> pages) {
+        List<PageSnapshot> out = new ArrayList<>(pages.size());
+        for (PageSnapshot snapshot : pages) {
+            int numStaves = snapshot.getNumStaves();
+            List<Symbol> symbols = new ArrayList<>(snapshot.getSymbols());
+            long[] startMs = TimelineBuilder.startTimes(symbols, CHORD_TOLERANCE_PX);
+            long[] soundingUntil = new long[numStaves * 128];
+            ScorePage page = new ScorePage(numStaves);
+            for (int i = 0; i < symbols.size(); i++) {
+                // copies throughout: a page numbers its own symbols
+                Symbol s = symbols.get(i);
+                if (s instanceof Rest) {
+                    page.addSymbol(new Rest(s.getX(), s.getY(), s.getDuration()));
+                    continue;
+                }
+                Note n = (Note) s;
+                int row = StaffLayout.staffIndexOf(n, numStaves) * 128;
+                int step = n.getPitchStep();
+                Accidental accidental = n.getAccidental();
+                for (int free = LOWEST_STEP; n.getMidiKey() >= 0 && free <= HIGHEST_STEP
+                        && soundingUntil[row + Pitch.midiKey(step, accidental)] > startMs[i]; free++) {
+                    step = free;
+                    accidental = Accidental.NONE;
+                }
+                Note copy = new Note(n.getX(), n.getY(), n.getDuration());
+                copy.setPitchStep(step);
+                copy.setAccidental(accidental);
+                if (copy.getMidiKey() >= 0) {
+                    soundingUntil[row + copy.getMidiKey()] = startMs[i] + DurationMs.of(n.getDuration());
+                }
+                page.addSymbol(copy);
+            }
+            out.add(page.snapshot());
+        }
+        return out;
+    }
+
+    // one staff row of quarter notes, wrapped over as many single-staff pages as it needs
+    static List<PageSnapshot> melody(int notes) {
+        List<PageSnapshot> out = new ArrayList<>();
+        ScorePage page = null;
+        int x = 0;
+        for (int i = 0; i < notes; i++) {
+            if (page == null || x > StaffLayout.LAST_X) {
+                if (page != null) out.add(page.snapshot());
+                page = new ScorePage(1);
+                x = StaffLayout.FIRST_X;
+            }
+            int step = 28 + i % 7;
+            Note n = new Note(x, StaffLayout.noteY(NoteDuration.QUARTER, step, 0), NoteDuration.QUARTER);
+            n.setPitchStep(step);
+            page.addSymbol(n);
+            x += 64;
+        }
+        if (page != null) out.add(page.snapshot());
+        return out;
+    }
+
+    // pages of 4 staves, each filled on its own with mixed notes, chords and rests
+    static List<PageSnapshot> generate(int pageCount, long seed) {
+        Random rnd = new Random(seed);
+        List<PageSnapshot> out = new ArrayList<>(pageCount);
+        for (int p = 0; p < pageCount; p++) {
+            ScorePage page = new ScorePage(Score.DEFAULT_STAVES);
+            for (int staff = 0; staff < Score.DEFAULT_STAVES; staff++) {
+                int x = StaffLayout.FIRST_X + rnd.nextInt(40);
+                while (x < StaffLayout.LAST_X) {
+                    NoteDuration d = DURATIONS[rnd.nextInt(4)];
+                    int voices = (rnd.nextInt(5) == 0) ? 2 : 1;
+                    for (int v = 0; v < voices; v++) {
+                        Symbol s;
+                        if (rnd.nextInt(8) == 0) {
+                            s = new Rest(x, StaffLayout.restY(d, staff), d);
+                            voices = 1;
+                        } else {
+                            int step = 26 + rnd.nextInt(10) + 2 * v;
+                            Note n = new Note(x, StaffLayout.noteY(d, step, staff), d);
+                            n.setPitchStep(step);
+                            if (rnd.nextInt(6) == 0) n.setAccidental(Accidental.SHARP);
+                            s = n;
+                        }
+                        page.addSymbol(s);
+                    }
+                    x += 16 << d.ordinal() >> 1;
+                }
+            }
+            out.add(page.snapshot());
+        }
+        return out;
+    }
+}
@@ -0,0 +1,119 @@
+package com.gt.music.bench;
+
+import com.gt.music.io.MusicXml;
+import com.gt.music.model.Note;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.Rest;
+import com.gt.music.model.Score;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.StaffLayout;
+import com.gt.music.model.Symbol;
+import com.gt.music.types.Accidental;
+import com.gt.music.types.NoteDuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Streaming MusicXML throughput and memory: exports a generated score to a temp file, then imports
+ * it back through a sink that drops every page, sampling the live heap as pages arrive.
+ * The peak should stay flat however many pages the file has.
+ *
+ * Usage: java com.gt.music.bench.MusicXmlBenchmark [pages] [rounds]
+ * Run with a fixed heap (e.g. -Xms512m -Xmx512m) for stable heap figures.
+ */
+public final class MusicXmlBenchmark {
+    private MusicXmlBenchmark() {
+    }
+
+    private static final NoteDuration[] DURATIONS = NoteDuration.values();
+
+    public static void main(String[] args) throws IOException {
+        int pageCount = (args.length > 0) ? Integer.parseInt(args[0]) : 2_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        List<PageSnapshot> pages = generate(pageCount, 42L);
+        long symbolCount = 0;
+        for (PageSnapshot p : pages) symbolCount += p.size();
+        Path file = Files.createTempFile("bench", "." + MusicXml.EXTENSION);
+        try {
+            long writeNs = Long.MAX_VALUE, readNs = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                long t0 = System.nanoTime();
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    MusicXml.write(pages, out);
+                }
+                long t1 = System.nanoTime();
+                writeNs = Math.min(writeNs, t1 - t0);
+
+                t0 = System.nanoTime();
+                try (InputStream in = Files.newInputStream(file)) {
+                    MusicXml.read(in, page -> { });
+                }
+                t1 = System.nanoTime();
+                readNs = Math.min(readNs, t1 - t0);
+            }
+
+            // untimed pass: live heap (after GC) at ten points through the file
+            long base = usedHeap();
+            long[] peak = { 0 };
+            int[] seen = { 0 };
+            int every = Math.max(1, pageCount / 10);
+            try (InputStream in = Files.newInputStream(file)) {
+                MusicXml.read(in, page -> {
+                    if (++seen[0] % every == 0) peak[0] = Math.max(peak[0], usedHeap() - base);
+                });
+            }
+            double mb = Files.size(file) / (1024.0 * 1024.0);
+            System.out.printf("pages / symbols : %,d / %,d%n", pageCount, symbolCount);
+            System.out.printf("file size       : %.1f MB%n", mb);
+            System.out.printf("export          : %8.1f ms (%.1f MB/s, %.0f symbols/ms)%n",
+                    writeNs / 1e6, mb / (writeNs / 1e9), symbolCount / (writeNs / 1e6));
+            System.out.printf("import          : %8.1f ms (%.1f MB/s, %.0f symbols/ms)%n",
+                    readNs / 1e6, mb / (readNs / 1e9), symbolCount / (readNs / 1e6));
+            System.out.printf("import live heap: peak %,d KB above baseline (pages dropped by the sink)%n", peak[0] / 1024);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // pages of 4 full staff rows of mixed notes and rests
+    private static List<PageSnapshot> generate(int pageCount, long seed) {
+        Random rnd = new Random(seed);
+        List<PageSnapshot> out = new ArrayList<>(pageCount);
+        for (int p = 0; p < pageCount; p++) {
+            ScorePage page = new ScorePage(Score.DEFAULT_STAVES);
+            for (int staff = 0; staff < Score.DEFAULT_STAVES; staff++) {
+                int x = StaffLayout.FIRST_X;
+                while (x < StaffLayout.LAST_X) {
+                    NoteDuration d = DURATIONS[rnd.nextInt(4)];
+                    Symbol s;
+                    if (rnd.nextInt(8) == 0) {
+                        s = new Rest(x, StaffLayout.restY(d, staff), d);
+                    } else {
+                        int step = 20 + rnd.nextInt(20);
+                        Note n = new Note(x, StaffLayout.noteY(d, step, staff), d);
+                        n.setPitchStep(step);
+                        if (rnd.nextInt(6) == 0) n.setAccidental(Accidental.SHARP);
+                        s = n;
+                    }
+                    page.addSymbol(s);
+                    x += 16 << d.ordinal() >> 1;
+                }
+            }
+            out.add(page.snapshot());
+        }
+        return out;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+}
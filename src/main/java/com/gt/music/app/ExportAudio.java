@@ -0,0 +1,46 @@
+package com.gt.music.app;
+
+import com.gt.music.io.ScoreFile;
+import com.gt.music.midi.WavRenderer;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.ScorePage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命令行离线渲染：不打开窗口、不需要声卡，把一个 .gtms 乐谱渲染成 WAV（同样的乐谱得到相同的文件）。
+ * <pre>
+ * java --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED -cp ... \
+ *     com.gt.music.app.ExportAudio score.gtms out.wav [threads]
+ * </pre>
+ */
+public class ExportAudio {
+    // same as the editor's playback
+    private static final int CHORD_TOLERANCE_PX = 10;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: ExportAudio <score." + ScoreFile.EXTENSION + "> <out.wav> [threads]");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+
+        try {
+            List<PageSnapshot> pages = new ArrayList<>();
+            for (ScorePage page : ScoreFile.openPages(Paths.get(args[0]))) {
+                pages.add(page.snapshot());
+            }
+            long t0 = System.nanoTime();
+            new WavRenderer(CHORD_TOLERANCE_PX, threads).write(pages, new File(args[1]));
+            System.out.printf("Rendered %d page(s) to %s in %.1f s%n", pages.size(), args[1], (System.nanoTime() - t0) / 1e9);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
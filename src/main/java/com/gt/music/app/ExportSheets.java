@@ -0,0 +1,47 @@
+package com.gt.music.app;
+
+import com.gt.music.io.ScoreFile;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.ScorePage;
+import com.gt.music.view.canvas.SheetExporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命令行批量导出：不打开窗口，把一个 .gtms 乐谱的每页渲染成 PNG / SVG。
+ * <pre>
+ * java -cp ... com.gt.music.app.ExportSheets score.gtms outDir [png|svg] [scale] [threads]
+ * </pre>
+ */
+public class ExportSheets {
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: ExportSheets <score." + ScoreFile.EXTENSION
+                    + "> <outDir> [png|svg] [scale] [threads]");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+        File outDir = new File(args[1]);
+        SheetExporter.Format format = (args.length > 2)
+                ? SheetExporter.Format.valueOf(args[2].toUpperCase()) : SheetExporter.Format.PNG;
+        double scale = (args.length > 3) ? Double.parseDouble(args[3]) : 1.0;
+        int threads = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+
+        try {
+            List<SheetExporter.Page> pages = new ArrayList<>();
+            for (ScorePage page : ScoreFile.openPages(Paths.get(args[0]))) {
+                PageSnapshot snapshot = page.snapshot();
+                pages.add(new SheetExporter.Page(snapshot.getNumStaves(), snapshot.getSymbols()));
+            }
+            List<File> files = new SheetExporter(scale).exportAll(pages, outDir, format, threads);
+            System.out.println("Exported " + files.size() + " page(s) to " + outDir);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
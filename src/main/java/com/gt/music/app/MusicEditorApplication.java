@@ -1,16 +1,24 @@
 package com.gt.music.app;
 
 import com.gt.music.controller.MusicEditorController;
+import com.gt.music.io.AutosaveJournal;
 import com.gt.music.model.MusicEditorModel;
 import com.gt.music.view.MusicEditorView;
 
 import javax.swing.*;
+import java.io.IOException;
 
 public class MusicEditorApplication {
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             //1.Create Model
             MusicEditorModel model = new MusicEditorModel();
+            //  Restore the last session from the autosave journal, then keep journaling edits
+            try {
+                AutosaveJournal.start(model.getScore(), AutosaveJournal.defaultDirectory());
+            } catch (IOException e) {
+                System.err.println("Autosave disabled: " + e);
+            }
             //2.Create View
             MusicEditorView view = new MusicEditorView(model);
             //3.Create Controller
@@ -1,38 +1,81 @@
 package com.gt.music.controller;
 
+import com.gt.music.io.MusicXml;
+import com.gt.music.io.ScoreFile;
 import com.gt.music.model.MusicEditorModel;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.ScoreEvent;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.Symbol;
 import com.gt.music.types.EditMode;
 import com.gt.music.types.NoteDuration;
 import com.gt.music.types.ToolType;
 import com.gt.music.view.MusicEditorView;
 import com.gt.music.view.canvas.MusicView;
+import com.gt.music.view.canvas.SheetExporter;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 
 import com.gt.music.midi.MIDI_Player;
-import com.gt.music.model.Symbol;
-import com.gt.music.model.playback.PlayEvent;
-import com.gt.music.model.playback.TimelineBuilder;
+import com.gt.music.midi.MidiFileExporter;
+import com.gt.music.midi.MidiFileImporter;
+import com.gt.music.midi.PitchAuditioner;
+import com.gt.music.midi.WavRenderer;
+import com.gt.music.model.playback.LatenessStats;
+import com.gt.music.model.playback.PageTimeline;
 import com.gt.music.model.playback.PlaybackEngine;
+import com.gt.music.model.playback.PlaybackPosition;
+import com.gt.music.model.playback.ScoreTimelineStream;
+import com.gt.music.model.playback.TimelineBuilder;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class MusicEditorController {
     private MusicEditorModel model;
     private MusicEditorView view;
 
-    private final MIDI_Player midi = new MIDI_Player();
+    //One player (its own MIDI channel and instrument) per staff, claimed as staves are first played
+    private final List<MIDI_Player> staffVoices = new ArrayList<>();
+    private final int[] staffPrograms = new int[TimelineBuilder.MAX_PARTS];
+    //Pitch preview while dragging notes: its own player and thread, started on first use
+    private PitchAuditioner auditioner;
+    //Notes within this many px in x play (and export) as one chord
+    private static final int CHORD_TOLERANCE_PX = 10;
+    //Playback hands notes to the synthesizer this far ahead, timestamped on its clock
+    private static final int PLAYBACK_LOOKAHEAD_MS = PlaybackEngine.DEFAULT_LOOKAHEAD_MS;
+    //Pages compiled ahead of the one playing
+    private static final int PLAYBACK_PAGES_AHEAD = 3;
     private final AtomicReference<Thread> playThreadRef = new AtomicReference<>(null);
     private PlaybackEngine currentEngine;
+    //Playhead: redrawn once per frame from the engine's position slot while playing
+    private static final int PLAYHEAD_FRAME_MS = 16;
+    private final Timer playheadTimer = new Timer(PLAYHEAD_FRAME_MS, e -> updatePlayhead());
+    private List<ScorePage> playingPages = new ArrayList<>();
+    private ScoreTimelineStream playingTimeline;
+    private MusicView playheadView;
+    private final List<Symbol> sounding = new ArrayList<>();
+    //Playback timelines of the pages played so far, kept up to date as they are edited
+    private final Map<ScorePage, PageTimeline> pageTimelines = new HashMap<>();
+    //File the score was last opened from / saved to (null until then)
+    private File currentFile;
 
     public MusicEditorController(MusicEditorModel model, MusicEditorView view) {
         this.model = model;
         this.view = view;
         addListeners();
+        model.getScore().addScoreListener(this::forgetTimelines);
         updateView();
     }
 
@@ -66,28 +109,44 @@ public class MusicEditorController {
             // 已在播则忽略
             if (playThreadRef.get() != null) return;
 
-            // 1) 取当前页符号（按阅读顺序）
-            List<Symbol> symbols = view.getActivePageSymbolsInReadingOrder();
-
-            // 2) 构建时间线（x 容差 10px 可按需微调）
-            List<PlayEvent> timeline = TimelineBuilder.build(symbols, 10);
+            // 1) 从当前页播到最后一页：当前页用增量维护的时间线，立即开始；后面的页在后台边播边编译
+            List<ScorePage> pages = model.getScore().getPages();
+            int from = model.getCurrentPageNumber() - 1;
+            ScoreTimelineStream timeline = new ScoreTimelineStream(timelineFor(pages.get(from)).snapshot(),
+                    pages.subList(from + 1, pages.size()), CHORD_TOLERANCE_PX, PLAYBACK_PAGES_AHEAD);
 
-            // 3) UI 状态 & 状态栏
+            // 2) UI 状态 & 状态栏
             view.getStatusBar().setText("Status: Playing...");
             view.getPlayButton().setEnabled(false);
             view.getStopButton().setEnabled(true);
 
-            // 4) 启动播放线程
-            currentEngine = new PlaybackEngine(timeline, midi, () -> {
-                // 播放自然结束时恢复 UI
-                view.getStatusBar().setText("Status: Ready");
+            // 3) 启动播放线程：每条 staff 一个声部，各用自己的通道和乐器
+            int staves = 1;
+            for (ScorePage page : pages.subList(from, pages.size())) staves = Math.max(staves, page.getNumStaves());
+            currentEngine = new PlaybackEngine(timeline, voicesFor(staves), () -> {
+                timeline.close();
+                stopPlayhead();
+                // 播放结束时恢复 UI，并报告本次的定时精度（或者中途出的错）
+                RuntimeException failure = currentEngine.getFailure();
+                LatenessStats stats = currentEngine.getLatenessStats();
+                if (failure != null) {
+                    view.getStatusBar().setText("Status: Playback failed: " + failure.getMessage());
+                } else {
+                    view.getStatusBar().setText((stats.getCount() == 0) ? "Status: Ready"
+                            : String.format("Status: Ready (timing: p99 %.2f ms, max %.2f ms late)",
+                                    stats.getPercentileNanos(0.99) / 1e6, stats.getMaxNanos() / 1e6));
+                }
                 view.getPlayButton().setEnabled(true);
                 view.getStopButton().setEnabled(false);
                 playThreadRef.set(null);
             });
+            currentEngine.setLookaheadMs(PLAYBACK_LOOKAHEAD_MS);
             Thread t = new Thread(currentEngine, "music-playback");
             playThreadRef.set(t);
             t.start();
+            playingPages = new ArrayList<>(pages.subList(from, pages.size()));
+            playingTimeline = timeline;
+            playheadTimer.start();
         });
 
         view.getStopButton().addActionListener(e -> {
@@ -125,6 +184,22 @@ public class MusicEditorController {
         view.getRestRButton().addMouseListener(toolHandler);
         view.getRestRButton().addMouseMotionListener(toolHandler);
 
+        //Add listener for undo/redo
+        view.getUndoMenuItem().addActionListener(e -> {
+            if (model.getHistory().undo()) {
+                view.getStatusBar().setText("Status: Undo.");
+                updateView();
+            }
+        });
+        view.getRedoMenuItem().addActionListener(e -> {
+            if (model.getHistory().redo()) {
+                view.getStatusBar().setText("Status: Redo.");
+                updateView();
+            }
+        });
+        model.getHistory().setOnChange(this::updateUndoRedoItems);
+        updateUndoRedoItems();
+
         //Add listener for new & delete staff operations
         view.getNewStaffButton().addActionListener(e -> {
             model.addStaff();
@@ -142,6 +217,7 @@ public class MusicEditorController {
             model.deleteStaff();
             updateView();
         });
+        view.getStaffInstrumentMenuItem().addActionListener(e -> chooseStaffInstrument());
 
         //Add listener for slider operations
         view.getDurationSlider().addChangeListener(e -> {
@@ -161,25 +237,19 @@ public class MusicEditorController {
         //Add listener for pages
         view.getNewPageButton().addActionListener(e -> {
             model.addNewPage();
-            view.addNewPageView(model);
             updateView();
         });
         view.getNewPageMenuItem().addActionListener(e -> {
             model.addNewPage();
-            view.addNewPageView(model);
             updateView();
         });
 
         view.getDeletePageButton().addActionListener(e -> {
-            int pageToDeleteIndex = model.getCurrentPageNumber() - 1;
             model.deleteCurrentPage();
-            view.deleteCurrentPageView(pageToDeleteIndex);
             updateView();
         });
         view.getDeletePageMenuItem().addActionListener(e -> {
-            int pageToDeleteIndex = model.getCurrentPageNumber() - 1;
             model.deleteCurrentPage();
-            view.deleteCurrentPageView(pageToDeleteIndex);
             updateView();
         });
 
@@ -201,6 +271,25 @@ public class MusicEditorController {
             updateView();
         });
 
+        view.getPageNavigator().setOnPageSelected(pageIndex -> {
+            model.goToPage(pageIndex);
+            updateView();
+        });
+
+        //Add listener for open/save
+        view.getOpenMenuItem().addActionListener(e -> openScore());
+        view.getSaveMenuItem().addActionListener(e -> saveScore(false));
+        view.getSaveAsMenuItem().addActionListener(e -> saveScore(true));
+
+        //Add listener for export
+        view.getExportPngMenuItem().addActionListener(e -> exportPages(SheetExporter.Format.PNG));
+        view.getExportSvgMenuItem().addActionListener(e -> exportPages(SheetExporter.Format.SVG));
+        view.getImportMusicXmlMenuItem().addActionListener(e -> importMusicXml());
+        view.getExportMusicXmlMenuItem().addActionListener(e -> exportMusicXml());
+        view.getExportMidiMenuItem().addActionListener(e -> exportMidi());
+        view.getImportMidiMenuItem().addActionListener(e -> importMidi());
+        view.getExportWavMenuItem().addActionListener(e -> exportWav());
+
         //Add listener for Menu-Exit
         view.getExitMenuItem().addActionListener(e -> {
             System.exit(0);
@@ -208,6 +297,359 @@ public class MusicEditorController {
     }
 
 
+    private JFileChooser scoreFileChooser() {
+        JFileChooser chooser = new JFileChooser(currentFile);
+        chooser.setFileFilter(new FileNameExtensionFilter("Music score (*." + ScoreFile.EXTENSION + ")",
+                ScoreFile.EXTENSION));
+        return chooser;
+    }
+
+    //Built on the first Play of a page, then maintained incrementally until the page goes away
+    private PageTimeline timelineFor(ScorePage page) {
+        PageTimeline timeline = pageTimelines.get(page);
+        if (timeline == null) {
+            timeline = PageTimeline.attach(page, CHORD_TOLERANCE_PX);
+            pageTimelines.put(page, timeline);
+        }
+        return timeline;
+    }
+
+    private void forgetTimelines(ScoreEvent e) {
+        if (e.getType() == ScoreEvent.Type.PAGE_REMOVED) {
+            PageTimeline timeline = pageTimelines.remove(e.getPage());
+            if (timeline != null) timeline.detach();
+        } else if (e.getType() == ScoreEvent.Type.SCORE_REPLACED) {
+            for (PageTimeline timeline : pageTimelines.values()) timeline.detach();
+            pageTimelines.clear();
+        }
+    }
+
+    //Players for staves 0..staves-1 (at most one per melodic channel; further staves share the last)
+    private MIDI_Player[] voicesFor(int staves) {
+        int n = Math.min(staves, TimelineBuilder.MAX_PARTS);
+        while (staffVoices.size() < n) {
+            MIDI_Player voice = new MIDI_Player();
+            voice.setInstrument(staffPrograms[staffVoices.size()]);
+            staffVoices.add(voice);
+        }
+        return staffVoices.subList(0, n).toArray(new MIDI_Player[0]);
+    }
+
+    /** Pick the General MIDI instrument one staff plays with; applies at once, also while playing. */
+    private void chooseStaffInstrument() {
+        int staves = Math.min(model.getStaves(), TimelineBuilder.MAX_PARTS);
+        String[] staffNames = new String[staves];
+        for (int i = 0; i < staves; i++) staffNames[i] = "Staff " + (i + 1);
+        JComboBox<String> staffBox = new JComboBox<>(staffNames);
+        JComboBox<String> programBox = new JComboBox<>(programNames());
+        staffBox.addActionListener(e -> programBox.setSelectedIndex(staffPrograms[staffBox.getSelectedIndex()]));
+        programBox.setSelectedIndex(staffPrograms[0]);
+
+        JPanel panel = new JPanel(new java.awt.GridLayout(2, 2, 6, 6));
+        panel.add(new JLabel("Staff:"));
+        panel.add(staffBox);
+        panel.add(new JLabel("Instrument:"));
+        panel.add(programBox);
+        if (JOptionPane.showConfirmDialog(view, panel, "Staff Instrument",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) return;
+
+        int staff = staffBox.getSelectedIndex();
+        int program = programBox.getSelectedIndex();
+        staffPrograms[staff] = program;
+        voicesFor(staff + 1)[staff].setInstrument(program);
+        view.getStatusBar().setText("Status: Staff " + (staff + 1) + " plays " + programBox.getSelectedItem());
+    }
+
+    //The 128 General MIDI programs, named from the default soundbank where it has them
+    private String[] programNames() {
+        String[] names = new String[128];
+        boolean[] named = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) names[i] = "Program " + (i + 1);
+        javax.sound.midi.Instrument[] instruments = voicesFor(1)[0].getInstruments();
+        if (instruments != null) {
+            for (javax.sound.midi.Instrument instrument : instruments) {
+                javax.sound.midi.Patch patch = instrument.getPatch();
+                int program = patch.getProgram();
+                // drum kits also sit in bank 0 and come after the melodic instruments: keep the first name
+                if (patch.getBank() == 0 && program < names.length && !named[program]) {
+                    names[program] = (program + 1) + " " + instrument.getName().trim();
+                    named[program] = true;
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * One frame of the playhead: work out the playing page and time from the engine's position,
+     * then move the cursor on the page view if that page is the one shown.
+     */
+    private void updatePlayhead() {
+        if (playingTimeline == null) return;   // a frame queued before playback ended
+        PlaybackPosition position = currentEngine.getPosition();
+        long nowMs = position.nowMs();
+        int index = (nowMs < 0) ? -1 : position.pageAt(nowMs);
+        MusicView shown = view.getMusicView();
+        if (playheadView != null && playheadView != shown) {
+            playheadView.clearPlayhead();
+            playheadView = null;
+        }
+        // the timeline this page is played from (later pages' are built by the compiler thread, not here)
+        PageTimeline.Snapshot timeline = (index < 0) ? null : playingTimeline.pageTimeline(index);
+        if (timeline == null || shown == null || shown.getPage() != playingPages.get(index)) {
+            if (playheadView != null) playheadView.clearPlayhead();
+            playheadView = null;
+            return;
+        }
+        long pageMs = nowMs - position.pageStartMs();
+        sounding.clear();
+        timeline.soundingAt(pageMs, sounding);
+        shown.setPlayhead(timeline.xAt(pageMs), sounding);
+        playheadView = shown;
+    }
+
+    private void stopPlayhead() {
+        playheadTimer.stop();
+        if (playheadView != null) playheadView.clearPlayhead();
+        playheadView = null;
+        playingPages = new ArrayList<>();
+        playingTimeline = null;
+    }
+
+    /** Open a score file; its pages are only read from disk when first shown, played or exported. */
+    private void openScore() {
+        JFileChooser chooser = scoreFileChooser();
+        if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        try {
+            model.getScore().replacePages(ScoreFile.openPages(file.toPath()));
+        } catch (IOException | RuntimeException ex) {
+            view.getStatusBar().setText("Status: Open failed: " + ex.getMessage());
+            return;
+        }
+        currentFile = file;
+        // before updateView: a first page that cannot be read replaces this with its error
+        view.getStatusBar().setText("Status: Opened " + file.getName()
+                + " (" + model.getPageCount() + " page(s))");
+        updateView();
+        updateUndoRedoItems();
+    }
+
+    /** Snapshot the score on the EDT, then encode and write it on a background thread. */
+    private void saveScore(boolean askForFile) {
+        File file = currentFile;
+        if (askForFile || file == null) {
+            JFileChooser chooser = scoreFileChooser();
+            if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) return;
+            file = chooser.getSelectedFile();
+            if (!file.getName().contains(".")) {
+                file = new File(file.getParentFile(), file.getName() + "." + ScoreFile.EXTENSION);
+            }
+        }
+        final File target = file;
+        currentFile = target;
+        ScoreFile.SaveJob job = ScoreFile.prepareSave(model.getScore(), target.toPath());
+        view.getStatusBar().setText("Status: Saving " + target.getName() + "...");
+
+        Thread t = new Thread(() -> {
+            String result;
+            try {
+                job.writeTo(target.toPath());
+                result = "Status: Saved " + job.getPageCount() + " page(s) to " + target.getName();
+            } catch (IOException ex) {
+                result = "Status: Save failed: " + ex.getMessage();
+            }
+            final String message = result;
+            SwingUtilities.invokeLater(() -> view.getStatusBar().setText(message));
+        }, "score-save");
+        t.setDaemon(true);
+        t.start();
+    }
+
+
+    private JFileChooser musicXmlChooser() {
+        JFileChooser chooser = new JFileChooser(currentFile);
+        chooser.setFileFilter(new FileNameExtensionFilter("MusicXML (*.musicxml, *.xml)",
+                MusicXml.EXTENSION, "xml"));
+        return chooser;
+    }
+
+    /** Parse on a background thread (pages are not part of the score yet), swap them in on the EDT. */
+    private void importMusicXml() {
+        JFileChooser chooser = musicXmlChooser();
+        if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        view.getStatusBar().setText("Status: Importing " + file.getName() + "...");
+
+        Thread t = new Thread(() -> {
+            try {
+                List<ScorePage> pages = MusicXml.readPages(file.toPath());
+                SwingUtilities.invokeLater(() -> {
+                    model.getScore().replacePages(pages);
+                    currentFile = null;   // imported, not a score file: Save asks where to
+                    updateView();
+                    updateUndoRedoItems();
+                    view.getStatusBar().setText("Status: Imported " + pages.size() + " page(s) from " + file.getName());
+                });
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> view.getStatusBar().setText("Status: Import failed: " + ex.getMessage()));
+            }
+        }, "musicxml-import");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Snapshot every page and stream the XML out on a background thread. */
+    private void exportMusicXml() {
+        JFileChooser chooser = musicXmlChooser();
+        if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File chosen = chooser.getSelectedFile();
+        File file = chosen.getName().contains(".")
+                ? chosen : new File(chosen.getParentFile(), chosen.getName() + "." + MusicXml.EXTENSION);
+
+        List<ScorePage> scorePages = new ArrayList<>(model.getScore().getPages());
+        view.getStatusBar().setText("Status: Exporting MusicXML...");
+
+        Thread t = new Thread(() -> {
+            String result;
+            List<PageSnapshot> pages = snapshots(scorePages);
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                MusicXml.write(pages, out);
+                result = "Status: Exported " + pages.size() + " page(s) to " + file.getName();
+            } catch (IOException ex) {
+                result = "Status: MusicXML export failed: " + ex.getMessage();
+            }
+            final String message = result;
+            SwingUtilities.invokeLater(() -> view.getStatusBar().setText(message));
+        }, "musicxml-export");
+        t.setDaemon(true);
+        t.start();
+    }
+
+
+    /** Quantize and lay out a MIDI file on a background thread, swap the pages in on the EDT. */
+    private void importMidi() {
+        JFileChooser chooser = new JFileChooser(currentFile);
+        chooser.setFileFilter(new FileNameExtensionFilter("MIDI file (*.mid)", "mid", "midi"));
+        if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        view.getStatusBar().setText("Status: Importing " + file.getName() + "...");
+
+        Thread t = new Thread(() -> {
+            try {
+                List<ScorePage> pages = MidiFileImporter.readPages(file);
+                SwingUtilities.invokeLater(() -> {
+                    model.getScore().replacePages(pages);
+                    currentFile = null;
+                    updateView();
+                    updateUndoRedoItems();
+                    view.getStatusBar().setText("Status: Imported " + pages.size() + " page(s) from " + file.getName());
+                });
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> view.getStatusBar().setText("Status: Import failed: " + ex.getMessage()));
+            }
+        }, "midi-import");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Whole score (page after page) as a type 1 MIDI file, one track per staff, built off the EDT. */
+    private void exportMidi() {
+        JFileChooser chooser = new JFileChooser(currentFile);
+        chooser.setFileFilter(new FileNameExtensionFilter("MIDI file (*.mid)", "mid", "midi"));
+        if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File chosen = chooser.getSelectedFile();
+        File file = chosen.getName().contains(".") ? chosen : new File(chosen.getParentFile(), chosen.getName() + ".mid");
+
+        List<ScorePage> scorePages = new ArrayList<>(model.getScore().getPages());
+        view.getStatusBar().setText("Status: Exporting MIDI...");
+
+        Thread t = new Thread(() -> {
+            String result;
+            List<PageSnapshot> pages = snapshots(scorePages);
+            try {
+                new MidiFileExporter(CHORD_TOLERANCE_PX, 0).write(pages, 1, file);
+                result = "Status: Exported " + pages.size() + " page(s) to " + file.getName();
+            } catch (IOException ex) {
+                result = "Status: MIDI export failed: " + ex.getMessage();
+            }
+            final String message = result;
+            SwingUtilities.invokeLater(() -> view.getStatusBar().setText(message));
+        }, "midi-export");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Whole score (page after page) rendered offline to a WAV file, off the EDT; needs no sound card. */
+    private void exportWav() {
+        JFileChooser chooser = new JFileChooser(currentFile);
+        chooser.setFileFilter(new FileNameExtensionFilter("WAV audio (*.wav)", "wav"));
+        if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File chosen = chooser.getSelectedFile();
+        File file = chosen.getName().contains(".") ? chosen : new File(chosen.getParentFile(), chosen.getName() + ".wav");
+
+        List<ScorePage> scorePages = new ArrayList<>(model.getScore().getPages());
+        view.getStatusBar().setText("Status: Rendering audio...");
+
+        Thread t = new Thread(() -> {
+            String result;
+            List<PageSnapshot> pages = snapshots(scorePages);
+            try {
+                new WavRenderer(CHORD_TOLERANCE_PX, 0).write(pages, file);
+                result = "Status: Rendered " + pages.size() + " page(s) to " + file.getName();
+            } catch (IOException ex) {
+                result = "Status: Audio export failed: " + ex.getMessage();
+            }
+            final String message = result;
+            SwingUtilities.invokeLater(() -> view.getStatusBar().setText(message));
+        }, "wav-export");
+        t.setDaemon(true);
+        t.start();
+    }
+
+
+    /**
+     * Snapshot of every page, taken on the export thread: pages still waiting in the score file are
+     * decoded there rather than on the EDT (as the playback compiler does).
+     */
+    private static List<PageSnapshot> snapshots(List<ScorePage> pages) {
+        List<PageSnapshot> snapshots = new ArrayList<>(pages.size());
+        for (ScorePage page : pages) snapshots.add(page.snapshot());
+        return snapshots;
+    }
+
+    /** Ask for a folder, then render every page to it on a background thread. */
+    private void exportPages(SheetExporter.Format format) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export pages as " + format.name());
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) return;
+        File outDir = chooser.getSelectedFile();
+
+        List<ScorePage> scorePages = new ArrayList<>(model.getScore().getPages());
+        view.getStatusBar().setText("Status: Exporting " + scorePages.size() + " page(s)...");
+
+        Thread t = new Thread(() -> {
+            String result;
+            // immutable snapshot per page; rendering never touches live pages or views
+            List<SheetExporter.Page> pages = new ArrayList<>();
+            for (PageSnapshot snapshot : snapshots(scorePages)) {
+                pages.add(new SheetExporter.Page(snapshot.getNumStaves(), snapshot.getSymbols()));
+            }
+            try {
+                List<File> files = new SheetExporter(1.0).exportAll(pages, outDir, format, 0);
+                result = "Status: Exported " + files.size() + " page(s) to " + outDir;
+            } catch (IOException ex) {
+                result = "Status: Export failed: " + ex.getMessage();
+            }
+            final String message = result;
+            SwingUtilities.invokeLater(() -> view.getStatusBar().setText(message));
+        }, "sheet-export");
+        t.setDaemon(true);
+        t.start();
+    }
+
+
     private void updateView() {
         //Get current status of page information
         int currentPageNumber = model.getCurrentPageNumber();
@@ -217,15 +659,21 @@ public class MusicEditorController {
         // Display the correct page
         view.displayPage(currentPageIndex);
 
-        // Update the number of staves (on a new page)
+        // The page view follows its ScorePage (staves, symbols) on its own
         MusicView currentMusicView = view.getMusicView();
         if (currentMusicView != null) {
-            currentMusicView.setNumStaves(model.getStaves());
-
             // Show pitch
             currentMusicView.setOnPitchCalculated(pitch -> {
                 view.getStatusBar().setText("Pitch: " + pitch);
             });
+            // Hear the pitch while dragging, with the instrument of the staff it is on
+            currentMusicView.setOnPitchAudition((staff, key) -> {
+                if (auditioner == null) {
+                    if (key < 0) return;
+                    auditioner = new PitchAuditioner(new MIDI_Player());
+                }
+                auditioner.audition(staffPrograms[Math.min(staff, staffPrograms.length - 1)], key);
+            });
         }
 
         //Update page label
@@ -259,6 +707,12 @@ public class MusicEditorController {
     }
 
 
+    private void updateUndoRedoItems() {
+        view.getUndoMenuItem().setEnabled(model.getHistory().canUndo());
+        view.getRedoMenuItem().setEnabled(model.getHistory().canRedo());
+    }
+
+
     /**
      * Inner class to handle streamlined tool selection via mouse drag on radio buttons.
      */
@@ -0,0 +1,549 @@
+package com.gt.music.io;
+
+import com.gt.music.model.Note;
+import com.gt.music.model.Score;
+import com.gt.music.model.ScoreEvent;
+import com.gt.music.model.ScoreListener;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.Symbol;
+import com.gt.music.types.Accidental;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Crash recovery: every finished edit of the score is appended to a journal as a small record,
+ * and the journal is periodically compacted into a {@link ScoreFile} snapshot.
+ *
+ * <pre>
+ * dir/snapshot-N.gtms : the whole score at the moment generation N started
+ * dir/journal-N.log   : edits since then, each framed as i32 length | payload | i32 crc32(payload)
+ * </pre>
+ *
+ * Records are encoded on the EDT (a few bytes each, symbols addressed by page index + paint-order
+ * index) and handed to one background writer, which drains everything queued so far, writes it in one
+ * go and forces it to disk once per batch (group commit). Compaction is queued like a record: the EDT
+ * takes O(1) page snapshots, the writer writes snapshot-(N+1), starts journal-(N+1) and only then
+ * deletes generation N, so a crash at any point leaves one complete generation to recover from.
+ * Replay stops at the first torn or corrupt record.
+ *
+ * The directory belongs to one running editor at a time: {@link #start} holds a lock on
+ * dir/autosave.lock until {@link #close}, and a second instance gets no autosave instead of
+ * recovering (and compacting away) the files of the first.
+ */
+public final class AutosaveJournal implements ScoreListener {
+    /** Journal size after which the next finished edit triggers a compaction. */
+    public static final long COMPACT_BYTES = 1 << 20;
+
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.gtms");
+    private static final Pattern JOURNAL_NAME = Pattern.compile("journal-(\\d+)\\.log");
+    private static final String LOCK_NAME = "autosave.lock";
+    // directories locked by this JVM: a second channel on the lock file must not even be opened,
+    // closing it would drop the process-wide lock (POSIX record locks)
+    private static final Set<Path> LOCKED = new HashSet<>();
+
+    // record types
+    private static final int ADD = 1;
+    private static final int REMOVE = 2;
+    private static final int SET = 3;
+    private static final int STAVES = 4;
+    private static final int PAGE_ADD = 5;
+    private static final int PAGE_REMOVE = 6;
+
+    private final Score score;
+    private final Path dir;
+    private final FileLock lock;
+
+    // EDT state
+    private int generation;
+    private long bytesSinceCompaction;
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    // symbol changed by adjusting events (a drag) whose final state is not journaled yet
+    private ScorePage dirtyPage;
+    private Symbol dirtySymbol;
+
+    // shared with the writer, guarded by queue
+    private final ArrayDeque<Object> queue = new ArrayDeque<>();   // byte[] record or Compaction
+    private long enqueued;
+    private long committed;
+    private boolean closed;
+
+    // writer state
+    private final Thread writer;
+    private FileChannel journal;
+
+    private static final class Compaction {
+        final int generation;
+        final ScoreFile.SaveJob job;
+
+        Compaction(int generation, ScoreFile.SaveJob job) {
+            this.generation = generation;
+            this.job = job;
+        }
+    }
+
+    private AutosaveJournal(Score score, Path dir, FileLock lock, int generation) {
+        this.score = score;
+        this.dir = dir;
+        this.lock = lock;
+        this.generation = generation;
+        this.writer = new Thread(this::writeLoop, "autosave-journal");
+        this.writer.setDaemon(true);
+    }
+
+    /** ~/.gtmusic/autosave, or the directory named by the gtmusic.autosave.dir system property. */
+    public static Path defaultDirectory() {
+        String custom = System.getProperty("gtmusic.autosave.dir");
+        if (custom != null) return Paths.get(custom);
+        return Paths.get(System.getProperty("user.home"), ".gtmusic", "autosave");
+    }
+
+    /**
+     * Recover the last autosaved state into the score (if there is one), then journal every further
+     * edit. Call on the EDT before any view is built on the score.
+     *
+     * @throws IOException also when another running editor already journals into dir
+     */
+    public static AutosaveJournal start(Score score, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        dir = dir.toRealPath();
+        FileLock lock = lock(dir);
+        int generation;
+        try {
+            generation = latestGeneration(dir);
+        } catch (IOException | RuntimeException e) {
+            release(dir, lock);
+            throw e;
+        }
+        if (generation > 0) {
+            try {
+                List<ScorePage> pages = recover(dir, generation);
+                if (!pages.isEmpty()) score.replacePages(pages);
+            } catch (IOException | RuntimeException e) {
+                // unreadable snapshot: start from the blank score, the next generation replaces it
+                System.err.println("Autosave could not be recovered: " + e);
+            }
+        }
+        AutosaveJournal j = new AutosaveJournal(score, dir, lock, generation);
+        score.addScoreListener(j);
+        j.writer.start();
+        // start a fresh generation right away: the journal tail (torn or not) is folded into it
+        j.compact();
+        Runtime.getRuntime().addShutdownHook(new Thread(j::close, "autosave-shutdown"));
+        return j;
+    }
+
+    // held until close; the lock goes away with the process too, so a crash never leaves it stuck
+    private static FileLock lock(Path dir) throws IOException {
+        synchronized (LOCKED) {
+            if (!LOCKED.add(dir)) throw new IOException(dir + " is in use by another running editor");
+        }
+        FileLock lock = null;
+        try {
+            FileChannel ch = FileChannel.open(dir.resolve(LOCK_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                lock = ch.tryLock();
+            } finally {
+                if (lock == null) ch.close();
+            }
+            if (lock == null) throw new IOException(dir + " is in use by another running editor");
+            return lock;
+        } finally {
+            if (lock == null) {
+                synchronized (LOCKED) {
+                    LOCKED.remove(dir);
+                }
+            }
+        }
+    }
+
+    private static void release(Path dir, FileLock lock) {
+        synchronized (LOCKED) {
+            if (!lock.channel().isOpen()) return;
+            try {
+                lock.channel().close();   // also releases the lock
+            } catch (IOException ignored) {
+            }
+            LOCKED.remove(dir);
+        }
+    }
+
+    // ---------------- recording (EDT) ----------------
+
+    @Override
+    public void scoreChanged(ScoreEvent e) {
+        ScoreEvent.Type type = e.getType();
+        if (type == ScoreEvent.Type.SCORE_REPLACED) {
+            dirtySymbol = null;
+            compact();
+            return;
+        }
+        if (e.isAdjusting()) {
+            // drag frames: remember the symbol, journal only where it ends up
+            if (e.getSymbol() != dirtySymbol) flushDirty();
+            dirtyPage = e.getPage();
+            dirtySymbol = e.getSymbol();
+            return;
+        }
+        ScorePage page = e.getPage();
+        switch (type) {
+            case SYMBOL_MOVED:
+            case PITCH_CHANGED:
+            case ACCIDENTAL_CHANGED:
+                if (e.getSymbol() != dirtySymbol) flushDirty();
+                dirtySymbol = null;
+                recordSet(page, e.getSymbol());
+                break;
+            case SYMBOL_ADDED:
+                flushDirty();
+                startRecord(ADD).putPage(page).varint(e.getIndex());
+                scratch = ScoreFile.encodeSymbols(Collections.singletonList(e.getSymbol()), scratch);
+                endRecord();
+                break;
+            case SYMBOL_REMOVED:
+                flushDirty();
+                startRecord(REMOVE).putPage(page).varint(e.getIndex());
+                endRecord();
+                break;
+            case STAVES_CHANGED:
+                flushDirty();
+                startRecord(STAVES).putPage(page).varint(page.getNumStaves());
+                endRecord();
+                break;
+            case PAGE_ADDED:
+                flushDirty();
+                startRecord(PAGE_ADD).varint(e.getIndex()).varint(page.getNumStaves());
+                scratch = ScoreFile.encodeSymbols(page.snapshot().getSymbols(), scratch);
+                endRecord();
+                break;
+            case PAGE_REMOVED:
+                flushDirty();
+                startRecord(PAGE_REMOVE).varint(e.getIndex());
+                endRecord();
+                break;
+            default:
+                return;
+        }
+        if (bytesSinceCompaction >= COMPACT_BYTES) compact();
+    }
+
+    private void flushDirty() {
+        if (dirtySymbol != null) {
+            Symbol s = dirtySymbol;
+            dirtySymbol = null;
+            recordSet(dirtyPage, s);
+        }
+    }
+
+    // full state of one symbol (position, pitch, accidental); skipped if it is no longer on the page
+    private void recordSet(ScorePage page, Symbol s) {
+        int index = page.indexOf(s);
+        if (index < 0 || score.indexOf(page) < 0) return;
+        startRecord(SET).putPage(page).varint(index).zigzag(s.getX()).zigzag(s.getY());
+        if (s instanceof Note) {
+            Note n = (Note) s;
+            zigzag(n.getPitchStep()).varint(n.getAccidental().ordinal());
+        } else {
+            zigzag(0).varint(0);
+        }
+        endRecord();
+    }
+
+    private AutosaveJournal startRecord(int type) {
+        scratch.clear();
+        scratch.position(4);
+        scratch.put((byte) type);
+        return this;
+    }
+
+    private AutosaveJournal putPage(ScorePage page) {
+        return varint(score.indexOf(page));
+    }
+
+    private AutosaveJournal varint(int v) {
+        ensure(5);
+        ScoreFile.writeVarint(scratch, v);
+        return this;
+    }
+
+    private AutosaveJournal zigzag(int v) {
+        ensure(5);
+        ScoreFile.writeZigzag(scratch, v);
+        return this;
+    }
+
+    private void ensure(int extra) {
+        if (scratch.remaining() >= extra) return;
+        ByteBuffer bigger = ByteBuffer.allocate(scratch.capacity() * 2 + extra);
+        scratch.flip();
+        bigger.put(scratch);
+        scratch = bigger;
+    }
+
+    // frame the payload written after the 4-byte length slot and queue it
+    private void endRecord() {
+        ensure(4);
+        int payload = scratch.position() - 4;
+        CRC32 crc = new CRC32();
+        crc.update(scratch.array(), 4, payload);
+        scratch.putInt(0, payload);
+        scratch.putInt((int) crc.getValue());
+        byte[] frame = new byte[scratch.position()];
+        System.arraycopy(scratch.array(), 0, frame, 0, frame.length);
+        bytesSinceCompaction += frame.length;
+        enqueue(frame);
+    }
+
+    /** Fold the journal into a new snapshot generation (cheap here: page snapshots are O(1)). */
+    public void compact() {
+        flushDirty();
+        generation++;
+        bytesSinceCompaction = 0;
+        enqueue(new Compaction(generation, ScoreFile.prepareSave(score)));
+    }
+
+    private void enqueue(Object item) {
+        synchronized (queue) {
+            if (closed) return;
+            queue.add(item);
+            enqueued++;
+            queue.notifyAll();
+        }
+    }
+
+    /** Block until everything queued so far is on disk (or the writer has stopped). */
+    public void flush() throws InterruptedException {
+        synchronized (queue) {
+            long target = enqueued;
+            while (committed < target && writer.isAlive()) queue.wait(100);
+        }
+    }
+
+    /** Write out what is queued, then stop journaling. */
+    public void close() {
+        score.removeScoreListener(this);
+        synchronized (queue) {
+            closed = true;
+            queue.notifyAll();
+        }
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writer.isAlive()) release(dir, lock);
+    }
+
+    // ---------------- writer thread ----------------
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        try {
+            while (true) {
+                synchronized (queue) {
+                    while (queue.isEmpty() && !closed) queue.wait();
+                    if (queue.isEmpty()) break;
+                    batch.addAll(queue);
+                    queue.clear();
+                }
+                commit(batch);
+                synchronized (queue) {
+                    committed += batch.size();
+                    queue.notifyAll();
+                }
+                batch.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Autosave stopped: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (queue) {
+                closed = true;
+                queue.clear();
+                queue.notifyAll();
+            }
+            try {
+                if (journal != null) journal.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // one write + one fsync for all the records of a batch (compactions split it)
+    private void commit(List<Object> batch) throws IOException {
+        List<byte[]> pending = new ArrayList<>();
+        for (Object item : batch) {
+            if (item instanceof byte[]) {
+                pending.add((byte[]) item);
+            } else {
+                append(pending);
+                pending.clear();
+                switchGeneration((Compaction) item);
+            }
+        }
+        append(pending);
+    }
+
+    private void append(List<byte[]> frames) throws IOException {
+        if (frames.isEmpty() || journal == null) return;
+        int total = 0;
+        for (byte[] f : frames) total += f.length;
+        ByteBuffer out = ByteBuffer.allocate(total);
+        for (byte[] f : frames) out.put(f);
+        out.flip();
+        while (out.hasRemaining()) journal.write(out);
+        journal.force(false);
+    }
+
+    private void switchGeneration(Compaction c) throws IOException {
+        c.job.writeTo(dir.resolve("snapshot-" + c.generation + ".gtms"));
+        if (journal != null) journal.close();
+        journal = FileChannel.open(dir.resolve("journal-" + c.generation + ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        journal.force(true);
+        deleteGenerationsBefore(c.generation);
+    }
+
+    private void deleteGenerationsBefore(int keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                int gen = generationOf(f);
+                if (gen >= 0 && gen < keep) {
+                    try {
+                        Files.deleteIfExists(f);
+                    } catch (IOException ignored) {
+                        // still mapped on some platforms; the next compaction tries again
+                    }
+                }
+            }
+        }
+    }
+
+    // ---------------- recovery ----------------
+
+    private static int generationOf(Path f) {
+        String name = f.getFileName().toString();
+        Matcher m = SNAPSHOT_NAME.matcher(name);
+        if (!m.matches()) m = JOURNAL_NAME.matcher(name);
+        return m.matches() ? Integer.parseInt(m.group(1)) : -1;
+    }
+
+    // highest generation with a complete snapshot, 0 if none
+    private static int latestGeneration(Path dir) throws IOException {
+        int latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-*.gtms")) {
+            for (Path f : files) latest = Math.max(latest, generationOf(f));
+        }
+        return latest;
+    }
+
+    /** Snapshot of a generation with its journal replayed on top (untouched pages stay unloaded). */
+    static List<ScorePage> recover(Path dir, int generation) throws IOException {
+        List<ScorePage> pages = new ArrayList<>(ScoreFile.openPages(dir.resolve("snapshot-" + generation + ".gtms")));
+        Path log = dir.resolve("journal-" + generation + ".log");
+        if (!Files.exists(log)) return pages;
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(log));
+        CRC32 crc = new CRC32();
+        while (in.remaining() >= 8) {
+            int length = in.getInt();
+            if (length <= 0 || length > in.remaining() - 4) break;
+            crc.reset();
+            crc.update(in.array(), in.position(), length);
+            if (in.getInt(in.position() + length) != (int) crc.getValue()) break;
+            ByteBuffer record = in.slice();
+            record.limit(length);
+            try {
+                apply(pages, record);
+            } catch (RuntimeException e) {
+                // BufferUnderflow / IndexOutOfBounds: the record does not fit the state, stop here
+                break;
+            }
+            in.position(in.position() + length + 4);
+        }
+        return pages;
+    }
+
+    private static void apply(List<ScorePage> pages, ByteBuffer in) {
+        int type = in.get();
+        switch (type) {
+            case ADD: {
+                int p = ScoreFile.readVarint(in);
+                ScorePage page = pages.get(p);
+                int index = ScoreFile.readVarint(in);
+                Symbol s = ScoreFile.decodePage(in).get(0);
+                if (index == page.size()) page.addSymbol(s);
+                else pages.set(p, withInserted(page, index, s));
+                break;
+            }
+            case REMOVE: {
+                ScorePage page = pages.get(ScoreFile.readVarint(in));
+                page.removeSymbol(page.getSymbols().get(ScoreFile.readVarint(in)));
+                break;
+            }
+            case SET: {
+                ScorePage page = pages.get(ScoreFile.readVarint(in));
+                Symbol s = page.getSymbols().get(ScoreFile.readVarint(in));
+                int x = ScoreFile.readZigzag(in);
+                int y = ScoreFile.readZigzag(in);
+                int step = ScoreFile.readZigzag(in);
+                int accidental = ScoreFile.readVarint(in);
+                page.moveSymbol(s, x, y, false);
+                if (s instanceof Note) {
+                    page.setPitchStep((Note) s, step, false);
+                    page.setAccidental((Note) s, Accidental.values()[accidental]);
+                }
+                break;
+            }
+            case STAVES:
+                pages.get(ScoreFile.readVarint(in)).setNumStaves(ScoreFile.readVarint(in));
+                break;
+            case PAGE_ADD: {
+                int index = ScoreFile.readVarint(in);
+                ScorePage page = new ScorePage(ScoreFile.readVarint(in));
+                for (Symbol s : ScoreFile.decodePage(in)) page.addSymbol(s);
+                pages.add(index, page);
+                break;
+            }
+            case PAGE_REMOVE:
+                pages.remove(ScoreFile.readVarint(in));
+                break;
+            default:
+                throw new BufferUnderflowException();
+        }
+    }
+
+    /*
+     * A symbol added before the end (an undone delete put back in its place). Ids follow paint
+     * order, and the recovered page numbers its symbols afresh, so there is no id to give it between
+     * its neighbours: the page is rebuilt with it in place and every symbol numbered in paint order,
+     * which keeps the index of every later record pointing at the same symbol.
+     */
+    private static ScorePage withInserted(ScorePage page, int index, Symbol s) {
+        List<Symbol> symbols = new ArrayList<>(page.getSymbols());
+        symbols.add(index, s);
+        ScorePage rebuilt = new ScorePage(page.getNumStaves());
+        for (Symbol copy : ScoreFile.decodePage(ScoreFile.encodePage(symbols, ByteBuffer.allocate(256)))) {
+            rebuilt.addSymbol(copy);
+        }
+        return rebuilt;
+    }
+}
@@ -0,0 +1,605 @@
+package com.gt.music.io;
+
+import com.gt.music.model.DurationMs;
+import com.gt.music.model.Note;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.Pitch;
+import com.gt.music.model.Rest;
+import com.gt.music.model.Score;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.StaffLayout;
+import com.gt.music.model.Symbol;
+import com.gt.music.model.playback.TimelineBuilder;
+import com.gt.music.types.Accidental;
+import com.gt.music.types.NoteDuration;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * MusicXML (score-partwise) import and export with StAX: no DOM is ever built.
+ *
+ * The staves of a page are simultaneous parts, as in playback, and pages follow each other in time.
+ * Export writes one part with a {@code <staff>} per staff row: every measure holds each staff's
+ * notes in turn (placed with {@code <backup>} / {@code <forward>}) at the times playback gives them
+ * ({@link TimelineBuilder#startTimes}), in 4/4 measures, and every page starts a new page. Import
+ * puts every staff of every part on its own staff and lays the notes out with {@link PartLayout}:
+ * time becomes x on a shared axis, and a page ends at the right margin or wherever the file asks for
+ * a new page. A file written here imports back with the same timing, staves and pages.
+ *
+ * A file with one part (what export writes) streams: memory is bounded by one page plus one
+ * measure whatever the file size. Partwise files list each part's whole time line in turn, so a
+ * file with several parts keeps its notes (a few fields each) until the last part is read.
+ */
+public final class MusicXml {
+    private MusicXml() {
+    }
+
+    public static final String EXTENSION = "musicxml";
+
+    /** Notes of a page this close in x are one column, as in playback. */
+    public static final int CHORD_TOLERANCE_PX = 10;
+
+    private static final int DIVISIONS = 4;                   // per quarter: a sixteenth is 1
+    private static final int MEASURE_DIVISIONS = 4 * DIVISIONS;
+    private static final int DIVISION_MS = DurationMs.of(NoteDuration.QUARTER) / DIVISIONS;
+    private static final String[] TYPE_NAMES = { "16th", "eighth", "quarter", "half", "whole" };
+
+    // ================ import ================
+
+    /** Read a whole file into pages (convenience over {@link #read(InputStream, Consumer)}). */
+    public static List<ScorePage> readPages(Path file) throws IOException {
+        List<ScorePage> pages = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            read(in, pages::add);
+        }
+        return pages;
+    }
+
+    /**
+     * Stream a score-partwise document, handing each finished page to the sink in order.
+     * @return number of symbols imported
+     */
+    public static long read(InputStream in, Consumer<ScorePage> sink) throws IOException {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        // never fetch the MusicXML DTD from the network, never expand external entities
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        f.setProperty(XMLInputFactory.IS_COALESCING, true);
+        XMLStreamReader r = null;
+        try {
+            r = f.createXMLStreamReader(new BufferedInputStream(in, 1 << 16));
+            Importer importer = new Importer(sink);
+            importer.run(r);
+            return importer.layout.getSymbolCount();
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new IOException("Not a readable MusicXML score: " + e.getMessage(), e);
+        } finally {
+            if (r != null) {
+                try {
+                    r.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    /** One note / rest: start in divisions within its measure, then in sixteenths from the beginning. */
+    private static final class Event {
+        final long start;
+        final int staff;
+        final boolean rest;
+        final int pitchStep;
+        final Accidental accidental;
+        final NoteDuration duration;
+
+        Event(long start, int staff, boolean rest, int pitchStep, Accidental accidental, NoteDuration duration) {
+            this.start = start;
+            this.staff = staff;
+            this.rest = rest;
+            this.pitchStep = pitchStep;
+            this.accidental = accidental;
+            this.duration = duration;
+        }
+
+        Event at(long newStart) {
+            return new Event(newStart, staff, rest, pitchStep, accidental, duration);
+        }
+    }
+
+    private static final class Importer {
+        final PartLayout layout;
+
+        private int partCount;     // score-parts in the part-list
+        private int part = -1;
+        private int partBase;      // first staff of the current part
+        private int partStaves;    // staves the current part uses so far
+        private double measureStart;   // in quarters from the beginning of the part
+        private int divisions = 1;
+        // measure being read
+        private final List<Event> measure = new ArrayList<>();
+        private int time;          // cursor in divisions
+        private int measureLength; // furthest point reached
+        private boolean newPage;
+        private int declaredStaves;    // <staves> of this measure, 0 if none
+        private int lastStart;
+        // several parts: everything, in start order per part, and the page breaks of the first part
+        private final List<Event> buffered = new ArrayList<>();
+        private final List<Long> pageBreaks = new ArrayList<>();
+
+        Importer(Consumer<ScorePage> sink) {
+            this.layout = new PartLayout(1, sink);
+        }
+
+        void run(XMLStreamReader r) throws XMLStreamException {
+            while (r.hasNext()) {
+                if (r.next() != XMLStreamConstants.START_ELEMENT) continue;
+                String name = r.getLocalName();
+                if (name.equals("score-timewise")) {
+                    throw new XMLStreamException("score-timewise is not supported");
+                } else if (name.equals("score-part")) {
+                    partCount++;
+                    skipElement(r);
+                } else if (name.equals("part")) {
+                    startPart();
+                } else if (name.equals("measure")) {
+                    readMeasure(r);
+                }
+            }
+            if (streaming()) {
+                layout.finish();
+                return;
+            }
+            // stable: at equal times the earlier part keeps its place
+            buffered.sort(Comparator.comparingLong(e -> e.start));
+            layout.setStaves(partBase + partStaves);
+            int nextBreak = 0;
+            for (Event e : buffered) {
+                while (nextBreak < pageBreaks.size() && pageBreaks.get(nextBreak) <= e.start) {
+                    layout.pageBreak(pageBreaks.get(nextBreak++));
+                }
+                place(e);
+            }
+            layout.finish();
+        }
+
+        private boolean streaming() {
+            return partCount <= 1;
+        }
+
+        private void startPart() {
+            if (part >= 0) partBase += Math.max(1, partStaves);
+            part++;
+            partStaves = 0;
+            measureStart = 0;
+            divisions = 1;
+        }
+
+        private void readMeasure(XMLStreamReader r) throws XMLStreamException {
+            measure.clear();
+            time = 0;
+            measureLength = 0;
+            newPage = false;
+            declaredStaves = 0;
+            int depth = 1;
+            while (depth > 0) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    continue;
+                }
+                if (ev != XMLStreamConstants.START_ELEMENT) continue;
+                switch (r.getLocalName()) {
+                    case "divisions":
+                        divisions = Math.max(1, parseInt(r.getElementText(), 1));
+                        break;
+                    case "staves":
+                        declaredStaves = Math.max(1, parseInt(r.getElementText(), 1));
+                        partStaves = Math.max(partStaves, declaredStaves);
+                        break;
+                    case "print":
+                        newPage |= "yes".equals(r.getAttributeValue(null, "new-page"));
+                        skipElement(r);
+                        break;
+                    case "note":
+                        readNote(r);
+                        break;
+                    case "backup":
+                        time = Math.max(0, time - readDuration(r));
+                        break;
+                    case "forward":
+                        time += readDuration(r);
+                        measureLength = Math.max(measureLength, time);
+                        break;
+                    case "attributes":
+                        depth++;  // descend: divisions and staves live inside
+                        break;
+                    default:
+                        skipElement(r);
+                        break;
+                }
+            }
+            endMeasure();
+        }
+
+        private void readNote(XMLStreamReader r) throws XMLStreamException {
+            boolean rest = false, chord = false, grace = false;
+            char letter = 0;
+            int octave = 4, alter = 0, duration = 0, staff = 1;
+            String type = null;
+            int depth = 1;
+            while (depth > 0) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    continue;
+                }
+                if (ev != XMLStreamConstants.START_ELEMENT) continue;
+                switch (r.getLocalName()) {
+                    case "pitch":
+                    case "unpitched":
+                        depth++;
+                        break;
+                    case "rest":
+                        rest = true;
+                        skipElement(r);
+                        break;
+                    case "chord":
+                        chord = true;
+                        skipElement(r);
+                        break;
+                    case "grace":
+                        grace = true;
+                        skipElement(r);
+                        break;
+                    case "step":
+                        String s = r.getElementText().trim();
+                        letter = s.isEmpty() ? 0 : Character.toUpperCase(s.charAt(0));
+                        break;
+                    case "alter":
+                        alter = (int) Math.round(parseDouble(r.getElementText()));
+                        break;
+                    case "octave":
+                        octave = parseInt(r.getElementText(), 4);
+                        break;
+                    case "duration":
+                        duration = parseInt(r.getElementText(), 0);
+                        break;
+                    case "type":
+                        type = r.getElementText().trim();
+                        break;
+                    case "staff":
+                        staff = Math.max(1, parseInt(r.getElementText(), 1));
+                        break;
+                    default:
+                        skipElement(r);
+                        break;
+                }
+            }
+            if (grace) return;   // no time of its own, nothing to place
+            int start = chord ? lastStart : time;
+            if (!chord) {
+                lastStart = time;
+                time += duration;
+                measureLength = Math.max(measureLength, time);
+            }
+            partStaves = Math.max(partStaves, staff);
+            NoteDuration d = (type != null) ? durationOfType(type) : durationOfLength(duration, divisions);
+            int step = (rest || letter == 0) ? Pitch.NONE : Pitch.step(letter, octave);
+            Accidental acc = (alter > 0) ? Accidental.SHARP : (alter < 0) ? Accidental.FLAT : Accidental.NONE;
+            measure.add(new Event(start, partBase + staff - 1, rest, step, acc, d));
+        }
+
+        private int readDuration(XMLStreamReader r) throws XMLStreamException {
+            int d = 0;
+            int depth = 1;
+            while (depth > 0) {
+                int ev = r.next();
+                if (ev == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                } else if (ev == XMLStreamConstants.START_ELEMENT) {
+                    if (r.getLocalName().equals("duration")) d = parseInt(r.getElementText(), 0);
+                    else skipElement(r);
+                }
+            }
+            return d;
+        }
+
+        /*
+         * The measure's notes get their time from the beginning (in sixteenths) and go to the layout
+         * in time order, straight away for a single part. Only new-page breaks are kept: rows are
+         * parts here, so new-system hints have nothing to say about the layout.
+         */
+        private void endMeasure() {
+            long at = sixteenthsAt(0);
+            if (newPage && part == 0) {
+                if (streaming()) layout.pageBreak(at);
+                else pageBreaks.add(at);
+            }
+            // after the break: a new staff count belongs to the page it starts
+            if (declaredStaves > 0 && streaming()) layout.setStaves(declaredStaves);
+            List<Event> timed = new ArrayList<>(measure.size());
+            for (Event e : measure) timed.add(e.at(sixteenthsAt(e.start)));
+            timed.sort(Comparator.comparingLong(e -> e.start));
+            if (streaming()) {
+                for (Event e : timed) place(e);
+            } else {
+                buffered.addAll(timed);
+            }
+            measureStart += (double) measureLength / divisions;
+        }
+
+        private long sixteenthsAt(long divisionsIntoMeasure) {
+            return Math.round((measureStart + (double) divisionsIntoMeasure / divisions) * 4);
+        }
+
+        private void place(Event e) {
+            if (e.rest) {
+                layout.addRest(e.start, e.staff, e.duration);
+            } else {
+                layout.addNote(e.start, e.staff, e.duration, e.pitchStep, e.accidental);
+            }
+        }
+    }
+
+    private static void skipElement(XMLStreamReader r) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int ev = r.next();
+            if (ev == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (ev == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    private static int parseInt(String s, int fallback) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static double parseDouble(String s) {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static NoteDuration durationOfType(String type) {
+        switch (type) {
+            case "whole":
+            case "breve":
+            case "long":
+            case "maxima":
+                return NoteDuration.WHOLE;
+            case "half":
+                return NoteDuration.HALF;
+            case "quarter":
+                return NoteDuration.QUARTER;
+            case "eighth":
+                return NoteDuration.EIGHTH;
+            default:
+                return NoteDuration.SIXTEENTH;   // 16th and shorter
+        }
+    }
+
+    // nearest duration for a note without <type>
+    static NoteDuration durationOfLength(int duration, int divisions) {
+        double quarters = (double) duration / divisions;
+        if (quarters >= 3) return NoteDuration.WHOLE;
+        if (quarters >= 1.5) return NoteDuration.HALF;
+        if (quarters >= 0.75) return NoteDuration.QUARTER;
+        if (quarters >= 0.375) return NoteDuration.EIGHTH;
+        return NoteDuration.SIXTEENTH;
+    }
+
+    // ================ export ================
+
+    /** Snapshot every page (O(1) each) and write them. */
+    public static void write(Score score, Path file) throws IOException {
+        List<PageSnapshot> pages = new ArrayList<>(score.getPageCount());
+        for (ScorePage page : score.getPages()) pages.add(page.snapshot());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(pages, out);
+        }
+    }
+
+    /** Stream the pages out as one MusicXML part (the stream is flushed, not closed). */
+    public static void write(List<PageSnapshot> pages, OutputStream out) throws IOException {
+        try {
+            BufferedOutputStream buffered = new BufferedOutputStream(out, 1 << 16);
+            XMLStreamWriter w = XMLOutputFactory.newInstance().createXMLStreamWriter(buffered, "UTF-8");
+            new Exporter(w).run(pages);
+            w.close();
+            buffered.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("MusicXML export failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Exporter {
+        private final XMLStreamWriter w;
+        private int measureNumber;
+        private int staves;
+        private int pos;     // position in the open measure, divisions
+
+        Exporter(XMLStreamWriter w) {
+            this.w = w;
+        }
+
+        void run(List<PageSnapshot> pages) throws XMLStreamException {
+            w.writeStartDocument("UTF-8", "1.0");
+            w.writeCharacters("\n");
+            w.writeDTD("<!DOCTYPE score-partwise PUBLIC \"-//Recordare//DTD MusicXML 4.0 Partwise//EN\""
+                    + " \"http://www.musicxml.org/dtds/partwise.dtd\">");
+            w.writeCharacters("\n");
+            w.writeStartElement("score-partwise");
+            w.writeAttribute("version", "4.0");
+            w.writeStartElement("part-list");
+            w.writeStartElement("score-part");
+            w.writeAttribute("id", "P1");
+            leaf("part-name", "Music");
+            w.writeEndElement();
+            w.writeEndElement();
+            w.writeStartElement("part");
+            w.writeAttribute("id", "P1");
+
+            for (PageSnapshot page : pages) writePage(page);
+
+            w.writeEndElement();   // part
+            w.writeEndElement();   // score-partwise
+            w.writeEndDocument();
+        }
+
+        /*
+         * The page's symbols get their start times from the same walk playback uses, then the page
+         * is cut into 4/4 measures (the last one as long as what is left). In each measure every
+         * staff writes its symbols in turn, each one moved to its time with backup / forward.
+         */
+        private void writePage(PageSnapshot page) throws XMLStreamException {
+            int numStaves = page.getNumStaves();
+            List<Symbol> symbols = new ArrayList<>(page.getSymbols());
+            long[] startMs = TimelineBuilder.startTimes(symbols, CHORD_TOLERANCE_PX);
+            long end = startMs[symbols.size()] / DIVISION_MS;
+
+            // per staff, in time order: indexes into symbols
+            List<List<Integer>> byStaff = new ArrayList<>(numStaves);
+            for (int i = 0; i < numStaves; i++) byStaff.add(new ArrayList<>());
+            for (int i = 0; i < symbols.size(); i++) {
+                byStaff.get(StaffLayout.staffIndexOf(symbols.get(i), numStaves)).add(i);
+            }
+            int[] next = new int[numStaves];
+
+            long measureStart = 0;
+            do {
+                int length = (int) Math.min(MEASURE_DIVISIONS, end - measureStart);
+                openMeasure(measureStart == 0, numStaves);
+                for (int staff = 0; staff < numStaves; staff++) {
+                    List<Integer> row = byStaff.get(staff);
+                    long chordAt = -1;
+                    while (next[staff] < row.size()) {
+                        int i = row.get(next[staff]);
+                        long at = startMs[i] / DIVISION_MS;
+                        if (at >= measureStart + length && measureStart + length < end) break;
+                        Symbol s = symbols.get(i);
+                        boolean chord = s instanceof Note && at == chordAt;
+                        if (!chord) moveTo((int) (at - measureStart));
+                        writeNote(s, staff, length - (int) (at - measureStart), chord);
+                        chordAt = (s instanceof Note) ? at : -1;
+                        next[staff]++;
+                    }
+                }
+                moveTo(length);
+                closeMeasure();
+                measureStart += length;
+            } while (measureStart < end);
+        }
+
+        // backup / forward to a position in the open measure
+        private void moveTo(int target) throws XMLStreamException {
+            if (target == pos) return;
+            w.writeStartElement(target < pos ? "backup" : "forward");
+            leaf("duration", String.valueOf(Math.abs(target - pos)));
+            w.writeEndElement();
+            pos = target;
+        }
+
+        /*
+         * A note longer than what is left of the measure keeps its type (so it imports back as the
+         * same note) but only sounds to the bar line: the editor has no ties to carry it over.
+         */
+        private void writeNote(Symbol s, int staff, int room, boolean chord) throws XMLStreamException {
+            NoteDuration d = (s.getDuration() != null) ? s.getDuration() : NoteDuration.QUARTER;
+            int length = Math.max(1, Math.min(DIVISIONS * 4 >> (4 - d.ordinal()), room));
+            w.writeStartElement("note");
+            if (chord) w.writeEmptyElement("chord");
+            if (s instanceof Note) {
+                Note n = (Note) s;
+                int step = n.getPitchStep();
+                if (Pitch.isValid(step)) {
+                    w.writeStartElement("pitch");
+                    leaf("step", String.valueOf(Pitch.letter(step)));
+                    if (n.getAccidental() == Accidental.SHARP) leaf("alter", "1");
+                    else if (n.getAccidental() == Accidental.FLAT) leaf("alter", "-1");
+                    leaf("octave", String.valueOf(Pitch.octave(step)));
+                    w.writeEndElement();
+                } else {
+                    w.writeEmptyElement("unpitched");
+                }
+            } else {
+                w.writeEmptyElement("rest");
+            }
+            leaf("duration", String.valueOf(length));
+            leaf("voice", String.valueOf(staff + 1));
+            leaf("type", TYPE_NAMES[d.ordinal()]);
+            if (s instanceof Note && ((Note) s).getAccidental() != Accidental.NONE) {
+                leaf("accidental", ((Note) s).getAccidental() == Accidental.SHARP ? "sharp" : "flat");
+            }
+            leaf("staff", String.valueOf(staff + 1));
+            w.writeEndElement();
+            if (!chord) pos += length;
+        }
+
+        private void openMeasure(boolean newPage, int numStaves) throws XMLStreamException {
+            measureNumber++;
+            w.writeStartElement("measure");
+            w.writeAttribute("number", String.valueOf(measureNumber));
+            if (newPage) {
+                w.writeEmptyElement("print");
+                w.writeAttribute("new-page", "yes");
+            }
+            if (measureNumber == 1 || numStaves != staves) {
+                w.writeStartElement("attributes");
+                if (measureNumber == 1) {
+                    leaf("divisions", String.valueOf(DIVISIONS));
+                    w.writeStartElement("key");
+                    leaf("fifths", "0");
+                    w.writeEndElement();
+                    w.writeStartElement("time");
+                    leaf("beats", "4");
+                    leaf("beat-type", "4");
+                    w.writeEndElement();
+                }
+                leaf("staves", String.valueOf(numStaves));
+                for (int staff = 1; staff <= numStaves; staff++) {
+                    w.writeStartElement("clef");
+                    w.writeAttribute("number", String.valueOf(staff));
+                    leaf("sign", "G");
+                    leaf("line", "2");
+                    w.writeEndElement();
+                }
+                w.writeEndElement();
+                staves = numStaves;
+            }
+            pos = 0;
+        }
+
+        private void closeMeasure() throws XMLStreamException {
+            w.writeEndElement();
+            w.writeCharacters("\n");
+        }
+
+        private void leaf(String name, String text) throws XMLStreamException {
+            w.writeStartElement(name);
+            w.writeCharacters(text);
+            w.writeEndElement();
+        }
+    }
+}
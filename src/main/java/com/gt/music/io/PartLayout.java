@@ -0,0 +1,287 @@
+package com.gt.music.io;
+
+import com.gt.music.model.DurationMs;
+import com.gt.music.model.Note;
+import com.gt.music.model.Rest;
+import com.gt.music.model.Score;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.StaffLayout;
+import com.gt.music.model.Symbol;
+import com.gt.music.model.playback.TimelineBuilder;
+import com.gt.music.types.Accidental;
+import com.gt.music.types.NoteDuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Lays imported music out the way playback reads a page ({@link TimelineBuilder#startTimes}):
+ * every part gets its own staff, all staves of a page share one time axis left to right, and when
+ * the next column no longer fits the staff width the page goes to the sink and the next page
+ * continues the same time line on the same staves. Playback starts the next page only once every
+ * note of the previous one has stopped, so a full page is cut before the last column where nothing
+ * was still sounding and the columns after it move over to the next page. Only if notes overlap
+ * across the whole page does the cut fall where the least is still sounding, and the rest of the
+ * music is delayed by that much.
+ *
+ * Notes that start together, in any part, become one column at one x; a column lasts as long as its
+ * shortest note, and silence before the next column is filled with rests. A rest the file asks for
+ * gets its own column only where nothing else starts (playback would otherwise play it before the
+ * notes next to it); elsewhere it only keeps the time line going to its end.
+ *
+ * Times are in sixteenths from the beginning of the file (silence before the first note becomes
+ * rests too) and must arrive in non-decreasing order.
+ */
+public final class PartLayout {
+    public static final int PX_PER_QUARTER = 64;
+    /** Narrowest column: sixteenth sprites never overlap and columns stay apart beyond chord tolerance. */
+    public static final int MIN_COLUMN_PX = 28;
+    /** Staves per page at most, like playback's parts; further parts share the last staff. */
+    public static final int MAX_STAVES = TimelineBuilder.MAX_PARTS;
+
+    private static final int SIXTEENTH_MS = DurationMs.of(NoteDuration.SIXTEENTH);
+    private static final NoteDuration[] LONGEST_FIRST = {
+            NoteDuration.WHOLE, NoteDuration.HALF, NoteDuration.QUARTER, NoteDuration.EIGHTH, NoteDuration.SIXTEENTH
+    };
+
+    /** One note or rest of the column being collected. */
+    private static final class Event {
+        final int staff;
+        final boolean rest;
+        final int pitchStep;
+        final Accidental accidental;
+        final NoteDuration duration;
+
+        Event(int staff, boolean rest, int pitchStep, Accidental accidental, NoteDuration duration) {
+            this.staff = staff;
+            this.rest = rest;
+            this.pitchStep = pitchStep;
+            this.accidental = accidental;
+            this.duration = duration;
+        }
+    }
+
+    private final Consumer<ScorePage> sink;
+    private int staves;
+    private long symbols;
+
+    private ScorePage page;
+    private int x;
+    private boolean pageEmitted;
+
+    private int cutCount = -1;     // symbols on the page before the best column to cut at
+    private int cutX;
+    private long cutOverhang;      // how long notes before that column still sound after it starts
+
+    private final List<Event> column = new ArrayList<>();
+    private long columnStart;
+    private long cursor;           // time the laid-out columns reach
+    private long soundEnd;         // time the last note laid out so far stops
+    private long restEnd = -1;     // furthest end of a rest the file asked for
+    private int restStaff;
+    private long shift;            // added to incoming times after a page break re-synchronised them
+
+    public PartLayout(int staves, Consumer<ScorePage> sink) {
+        this.sink = sink;
+        this.staves = clampStaves(staves);
+    }
+
+    /** Length of a duration in sixteenths. */
+    public static int sixteenths(NoteDuration d) {
+        return DurationMs.of(d) / SIXTEENTH_MS;
+    }
+
+    /** Staff count of the pages from now on; the page being filled grows (or, while empty, shrinks) too. */
+    public void setStaves(int count) {
+        staves = clampStaves(count);
+        if (page != null && (page.size() == 0 || staves > page.getNumStaves())) page.setNumStaves(staves);
+    }
+
+    public void addNote(long start, int staff, NoteDuration duration, int pitchStep, Accidental accidental) {
+        add(start, new Event(staffFor(staff), false, pitchStep, accidental, duration));
+    }
+
+    public void addRest(long start, int staff, NoteDuration duration) {
+        Event e = new Event(staffFor(staff), true, 0, Accidental.NONE, duration);
+        add(start, e);
+        if (columnStart + sixteenths(duration) > restEnd) {
+            restEnd = columnStart + sixteenths(duration);
+            restStaff = e.staff;
+        }
+    }
+
+    /**
+     * The file starts a new page at this time. What was laid out so far ends the current page
+     * (rests the file asked for are kept up to their end) and the new page starts exactly where
+     * playback of the previous one ends, so rounding never drifts past a page break.
+     */
+    public void pageBreak(long start) {
+        flushColumn();
+        fillTo(false);
+        finishPage();
+        startPage();
+        restEnd = -1;
+        cursor = Math.max(cursor, soundEnd);
+        shift = cursor - start;
+    }
+
+    /** Lay out what is left and hand over the last page (a blank one if nothing was imported). */
+    public void finish() {
+        flushColumn();
+        fillTo(false);
+        finishPage();
+        if (!pageEmitted) sink.accept(new ScorePage(Score.DEFAULT_STAVES));
+    }
+
+    /** Symbols placed so far, rests included. */
+    public long getSymbolCount() {
+        return symbols;
+    }
+
+    private void add(long start, Event e) {
+        start += shift;
+        if (column.isEmpty() || start != columnStart) {
+            flushColumn();
+            columnStart = start;
+        }
+        column.add(e);
+    }
+
+    private void flushColumn() {
+        if (column.isEmpty()) return;
+        Event first = column.get(0);
+        fillTo(true);
+
+        NoteDuration shortest = null;
+        int columnX = -1;
+        long sounds = 0;
+        for (Event e : column) {
+            if (e.rest) continue;
+            if (columnX < 0) {
+                columnX = reserve();
+                sounds = Math.max(cursor, columnStart); // playback starts it no earlier than the cursor
+            }
+            Note n = new Note(columnX, StaffLayout.noteY(e.duration, e.pitchStep, e.staff), e.duration);
+            n.setPitchStep(e.pitchStep);
+            n.setAccidental(e.accidental);
+            place(n);
+            if (n.getMidiKey() >= 0) soundEnd = Math.max(soundEnd, sounds + sixteenths(e.duration));
+            if (shortest == null || e.duration.ordinal() < shortest.ordinal()) shortest = e.duration;
+        }
+        if (shortest != null) {
+            // like playback, the column lasts as long as its shortest note
+            cursor = sounds + sixteenths(shortest);
+            advance(shortest);
+        } else if (columnStart >= cursor) {
+            // only rests start here: the shortest one is the column
+            Event rest = first;
+            for (Event e : column) {
+                if (e.duration.ordinal() < rest.duration.ordinal()) rest = e;
+            }
+            placeRest(rest.duration, rest.staff);
+            cursor = columnStart + sixteenths(rest.duration);
+        }
+        column.clear();
+    }
+
+    // silence from the cursor up to the column (or the end of the rests asked for) becomes rests, longest first
+    private void fillTo(boolean toColumn) {
+        // re-read every time: a page turn may delay both
+        while ((toColumn ? columnStart : restEnd) > cursor) {
+            long gap = (toColumn ? columnStart : restEnd) - cursor;
+            NoteDuration d = NoteDuration.SIXTEENTH;
+            for (NoteDuration c : LONGEST_FIRST) {
+                if (sixteenths(c) <= gap) {
+                    d = c;
+                    break;
+                }
+            }
+            placeRest(d, toColumn ? column.get(0).staff : restStaff);
+            cursor += sixteenths(d);
+        }
+    }
+
+    private void placeRest(NoteDuration d, int staff) {
+        place(new Rest(reserve(), StaffLayout.restY(d, staff), d));
+        advance(d);
+    }
+
+    private void place(Symbol s) {
+        page.addSymbol(s);
+        symbols++;
+    }
+
+    // x of the next column, continuing on a new page if it does not fit
+    private int reserve() {
+        if (page == null) startPage();
+        if (x > StaffLayout.FIRST_X && x + MIN_COLUMN_PX > StaffLayout.LAST_X) turnPage();
+        long overhang = Math.max(0, soundEnd - cursor);
+        if (page.size() > 0 && (cutCount < 0 || overhang <= cutOverhang)) {
+            cutCount = page.size();
+            cutX = x;
+            cutOverhang = overhang;
+        }
+        return x;
+    }
+
+    private void turnPage() {
+        ScorePage full = page;
+        int fullX = x;
+        int cut = cutCount;
+        long delay = cutOverhang;
+        startPage();
+        if (soundEnd <= cursor || cut <= 0) {
+            // nothing sounds past the margin, or nowhere to cut: turn here
+            delay = Math.max(0, soundEnd - cursor);
+        } else {
+            // the columns after the cut go over, keeping their spacing
+            List<Symbol> tail = new ArrayList<>(full.getSymbols().subList(cut, full.size()));
+            for (Symbol s : tail) {
+                full.removeSymbol(s);
+                s.setX(s.getX() - cutX + StaffLayout.FIRST_X);
+                page.addSymbol(s);
+            }
+            x = fullX - cutX + StaffLayout.FIRST_X;
+        }
+        if (delay > 0) {
+            // playback holds the next page until the last note stops
+            cursor += delay;
+            soundEnd += delay;
+            columnStart += delay;
+            shift += delay;
+            if (restEnd >= 0) restEnd += delay;
+        }
+        emit(full);
+    }
+
+    private void advance(NoteDuration d) {
+        x += Math.max(MIN_COLUMN_PX, sixteenths(d) * PX_PER_QUARTER / 4);
+    }
+
+    private void startPage() {
+        page = new ScorePage(staves);
+        x = StaffLayout.FIRST_X;
+        cutCount = -1;
+    }
+
+    private void finishPage() {
+        if (page == null) return;
+        emit(page);
+        page = null;
+    }
+
+    private void emit(ScorePage p) {
+        sink.accept(p);
+        pageEmitted = true;
+    }
+
+    private int staffFor(int staff) {
+        if (staff >= staves) setStaves(staff + 1);
+        return Math.max(0, Math.min(staff, staves - 1));
+    }
+
+    private static int clampStaves(int count) {
+        return Math.max(1, Math.min(count, MAX_STAVES));
+    }
+}
@@ -0,0 +1,398 @@
+package com.gt.music.io;
+
+import com.gt.music.model.Note;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.Rest;
+import com.gt.music.model.Score;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.Symbol;
+import com.gt.music.types.Accidental;
+import com.gt.music.types.NoteDuration;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary score file (*.gtms).
+ *
+ * <pre>
+ * header   : "GTMS" | u8 version | 3 bytes reserved | i32 pageCount
+ * pages    : one block per page, back to back
+ *            varint symbolCount, then per symbol (in paint order):
+ *              u8  bits 0-2 duration ordinal (7 = none), bit 3 rest, bits 4-5 accidental ordinal
+ *              zigzag varint x - previous x, zigzag varint y - previous y
+ *              notes only: zigzag varint pitch step - previous note's pitch step
+ * page tbl : per page i64 block offset | i32 block length | i32 staff count
+ * trailer  : i64 offset of the page table (last, so the file can be written as one stream)
+ * </pre>
+ *
+ * {@link #open} memory-maps the file and returns a score whose pages are decoded on first use;
+ * only the page table is read up front. Saving copies the bytes of pages that were never loaded
+ * straight from the mapping, without decoding them.
+ */
+public final class ScoreFile {
+    private ScoreFile() {
+    }
+
+    public static final String EXTENSION = "gtms";
+
+    private static final byte[] MAGIC = { 'G', 'T', 'M', 'S' };
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int TRAILER_BYTES = 8;
+    private static final int TABLE_ENTRY_BYTES = 16;
+
+    private static final int NO_DURATION = 7;
+    private static final int REST_FLAG = 1 << 3;
+    private static final NoteDuration[] DURATIONS = NoteDuration.values();
+    private static final Accidental[] ACCIDENTALS = Accidental.values();
+
+    // ---------------- open ----------------
+
+    /** Map the file and build a score of lazily loaded pages. */
+    public static Score open(Path file) throws IOException {
+        Score score = new Score();
+        score.replacePages(openPages(file));
+        return score;
+    }
+
+    /** The pages of a file, all still unloaded (see {@link ScorePage#lazy}). */
+    public static List<ScorePage> openPages(Path file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        try {
+            ByteBuffer in = map.duplicate();
+            for (byte b : MAGIC) {
+                if (in.get() != b) throw new IOException(file + " is not a score file");
+            }
+            int version = in.get() & 0xFF;
+            if (version != VERSION) throw new IOException("Unsupported score file version " + version);
+            in.position(in.position() + 3);
+            int pageCount = in.getInt();
+            if (map.capacity() < HEADER_BYTES + TRAILER_BYTES) throw new BufferUnderflowException();
+            long tableOffset = in.getLong(map.capacity() - TRAILER_BYTES);
+            if (pageCount < 0 || tableOffset < HEADER_BYTES
+                    || tableOffset + (long) pageCount * TABLE_ENTRY_BYTES != map.capacity() - TRAILER_BYTES) {
+                throw new IOException(file + ": bad page table");
+            }
+
+            List<ScorePage> pages = new ArrayList<>(pageCount);
+            in.position((int) tableOffset);
+            for (int i = 0; i < pageCount; i++) {
+                long offset = in.getLong();
+                int length = in.getInt();
+                int numStaves = in.getInt();
+                if (offset < HEADER_BYTES || length < 0 || offset + length > tableOffset) {
+                    throw new IOException(file + ": bad entry for page " + (i + 1));
+                }
+                pages.add(ScorePage.lazy(numStaves, new MappedPage(map, (int) offset, length, i, file)));
+            }
+            return pages;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    /** One encoded page inside a mapped file (or inside a heap copy of it, then file is null). */
+    private static final class MappedPage implements ScorePage.Source {
+        private final ByteBuffer map;
+        private final int offset;
+        private final int length;
+        private final int index;
+        private final Path file;
+
+        MappedPage(ByteBuffer map, int offset, int length, int index, Path file) {
+            this.map = map;
+            this.offset = offset;
+            this.length = length;
+            this.index = index;
+            this.file = file;
+        }
+
+        /** The same page block copied to the heap, so it no longer needs the mapping. */
+        MappedPage copy() {
+            ByteBuffer heap = ByteBuffer.allocate(length);
+            heap.put(bytes());
+            heap.flip();
+            return new MappedPage(heap, 0, length, index, null);
+        }
+
+        ByteBuffer bytes() {
+            ByteBuffer b = map.duplicate();
+            b.position(offset);
+            b.limit(offset + length);
+            return b.slice();
+        }
+
+        @Override
+        public List<Symbol> load() {
+            try {
+                return decodePage(bytes());
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new UncheckedIOException(new IOException("Corrupt score page " + (index + 1), e));
+            }
+        }
+    }
+
+    static List<Symbol> decodePage(ByteBuffer in) {
+        int count = readVarint(in);
+        List<Symbol> out = new ArrayList<>(Math.min(count, in.remaining()));
+        int x = 0, y = 0, step = 0;
+        for (int i = 0; i < count; i++) {
+            int head = in.get() & 0xFF;
+            int d = head & 0x7;
+            NoteDuration duration = (d == NO_DURATION) ? null : DURATIONS[d];
+            x += readZigzag(in);
+            y += readZigzag(in);
+            if ((head & REST_FLAG) != 0) {
+                out.add(new Rest(x, y, duration));
+            } else {
+                step += readZigzag(in);
+                Note n = new Note(x, y, duration);
+                n.setPitchStep(step);
+                n.setAccidental(ACCIDENTALS[(head >> 4) & 0x3]);
+                out.add(n);
+            }
+        }
+        return out;
+    }
+
+    // ---------------- save ----------------
+
+    /** Write the score to a file (temp file + rename, so a failed save never truncates the old one). */
+    public static void write(Score score, Path file) throws IOException {
+        prepareSave(score, file).writeTo(file);
+    }
+
+    /** {@link #prepareSave(Score, Path)} for a target that no page of the score is mapped from. */
+    public static SaveJob prepareSave(Score score) {
+        return prepareSave(score, null);
+    }
+
+    /**
+     * Capture what to save, on the EDT: an O(1) snapshot of every loaded page, the raw mapped bytes
+     * of every unloaded one. The returned job can then be written from any thread.
+     *
+     * Saving over the file the pages are still mapped from (plain Save after Open) would replace a
+     * mapped file, which Windows refuses. So the pending pages of that file get a heap copy of their
+     * bytes (no decoding) as their new source first, and nothing refers to the old mapping any more.
+     */
+    public static SaveJob prepareSave(Score score, Path target) {
+        List<Object> pages = new ArrayList<>(score.getPageCount());
+        List<Integer> staves = new ArrayList<>(score.getPageCount());
+        boolean detached = false;
+        for (ScorePage page : score.getPages()) {
+            ScorePage.Source pending = page.getPendingSource();
+            if (pending instanceof MappedPage && isSameFile(((MappedPage) pending).file, target)) {
+                MappedPage copy = ((MappedPage) pending).copy();
+                if (page.replacePendingSource(pending, copy)) {
+                    pending = copy;
+                    detached = true;
+                }
+            }
+            pages.add(pending instanceof MappedPage ? pending : page.snapshot());
+            staves.add(page.getNumStaves());
+        }
+        return new SaveJob(pages, staves, detached);
+    }
+
+    private static boolean isSameFile(Path mapped, Path target) {
+        if (mapped == null || target == null) return false;
+        try {
+            return Files.exists(target) && Files.isSameFile(mapped, target);
+        } catch (IOException e) {
+            return mapped.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize());
+        }
+    }
+
+    public static final class SaveJob {
+        private final List<Object> pages;   // PageSnapshot or MappedPage
+        private final List<Integer> staves;
+        // the target was mapped by the score (see prepareSave); its mapping goes away only with its buffer
+        private final boolean replacesMappedFile;
+
+        private SaveJob(List<Object> pages, List<Integer> staves, boolean replacesMappedFile) {
+            this.pages = pages;
+            this.staves = staves;
+            this.replacesMappedFile = replacesMappedFile;
+        }
+
+        public int getPageCount() {
+            return pages.size();
+        }
+
+        public void writeTo(Path file) throws IOException {
+            Path dir = file.toAbsolutePath().getParent();
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(tmp)) {
+                    writeTo(os);
+                }
+                try {
+                    replace(tmp, file);
+                } catch (FileSystemException e) {
+                    if (!replacesMappedFile) throw e;
+                    // the old MappedByteBuffer is unreachable now but only unmapped once collected
+                    System.gc();
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    replace(tmp, file);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private static void replace(Path tmp, Path file) throws IOException {
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        /** Write the whole file to a stream (not closed). */
+        public void writeTo(OutputStream os) throws IOException {
+            int n = pages.size();
+            long[] offsets = new long[n];
+            int[] lengths = new int[n];
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.write(new byte[3]);
+            out.writeInt(n);
+
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            long pos = HEADER_BYTES;
+            for (int i = 0; i < n; i++) {
+                Object page = pages.get(i);
+                ByteBuffer block;
+                if (page instanceof MappedPage) {
+                    block = ((MappedPage) page).bytes();
+                } else {
+                    buf = encodePage(((PageSnapshot) page).getSymbols(), buf);
+                    block = buf;
+                }
+                offsets[i] = pos;
+                lengths[i] = block.remaining();
+                writeBuffer(out, block);
+                pos += lengths[i];
+            }
+            for (int i = 0; i < n; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                out.writeInt(staves.get(i));
+            }
+            out.writeLong(pos);
+            out.flush();
+        }
+    }
+
+    /** Encode one page's symbols; returns a buffer (possibly a grown copy of buf) flipped for reading. */
+    static ByteBuffer encodePage(List<? extends Symbol> symbols, ByteBuffer buf) {
+        buf.clear();
+        buf = encodeSymbols(symbols, buf);
+        buf.flip();
+        return buf;
+    }
+
+    /** Append a page block (count + symbols) at buf's position; returns buf or a grown copy, not flipped. */
+    static ByteBuffer encodeSymbols(List<? extends Symbol> symbols, ByteBuffer buf) {
+        buf = ensure(buf, 5);
+        writeVarint(buf, symbols.size());
+        int x = 0, y = 0, step = 0;
+        for (Symbol s : symbols) {
+            buf = ensure(buf, 1 + 3 * 5);
+            NoteDuration duration = s.getDuration();
+            int head = (duration == null) ? NO_DURATION : duration.ordinal();
+            boolean rest = !(s instanceof Note);
+            if (rest) {
+                head |= REST_FLAG;
+            } else {
+                head |= ((Note) s).getAccidental().ordinal() << 4;
+            }
+            buf.put((byte) head);
+            writeZigzag(buf, s.getX() - x);
+            writeZigzag(buf, s.getY() - y);
+            x = s.getX();
+            y = s.getY();
+            if (!rest) {
+                int p = ((Note) s).getPitchStep();
+                writeZigzag(buf, p - step);
+                step = p;
+            }
+        }
+        return buf;
+    }
+
+    // ---------------- helpers ----------------
+
+    private static void writeBuffer(DataOutputStream out, ByteBuffer b) throws IOException {
+        if (b.hasArray()) {
+            out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+        } else {
+            byte[] chunk = new byte[Math.min(8192, b.remaining())];
+            while (b.hasRemaining()) {
+                int k = Math.min(chunk.length, b.remaining());
+                b.get(chunk, 0, k);
+                out.write(chunk, 0, k);
+            }
+        }
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buf, int extra) {
+        if (buf.remaining() >= extra) return buf;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + extra));
+        buf.flip();
+        bigger.put(buf);
+        return bigger;
+    }
+
+    static void writeVarint(ByteBuffer out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    static int readVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get() & 0xFF;
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    static void writeZigzag(ByteBuffer out, int v) {
+        writeVarint(out, (v << 1) ^ (v >> 31));
+    }
+
+    static int readZigzag(ByteBuffer in) {
+        int v = readVarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -8,16 +8,28 @@ package com.gt.music.midi;
 import javax.sound.midi.*;
 import java.util.HashMap;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class MIDI_Player {
 
-    private static Receiver receiver = null;
-    private final ShortMessage[] onMessages;
-    private final ShortMessage[] offMessages;
+    private static volatile Receiver receiver = null;
+    private static volatile MidiDevice device = null;   // owner of receiver, for its clock; null if unknown
+    public static final int DEFAULT_VELOCITY = 120;
+    // note-on messages for all 128 keys, one row per velocity; the default row is built up front,
+    // others on first use, so the hot path is an array index and send
+    private final AtomicReferenceArray<ShortMessage[]> onMessages = new AtomicReferenceArray<>(128);
+    private final ShortMessage[] offMessages = new ShortMessage[128];
     private HashMap<String, Integer> noteIndexes;
-    private static final boolean[] channelsInUse = { false, false, false, false, false, false, false, false, false, false,
-        false, false, false, false, false, false };
-    private int channel = -1;
+    // channels claimed by open players, one bit each; claimed and freed by compare-and-set, so players
+    // created or closed on different threads never share a channel. Channel 10 (index 9) is General
+    // MIDI percussion and is never handed out.
+    private static final AtomicInteger channelsInUse = new AtomicInteger();
+    private static final int PERCUSSION_CHANNEL = 9;
+    public static final int MELODIC_CHANNELS = 15;
+    private final int channel;
+    private final boolean ownsChannel;    // false when all channels were taken and this player shares channel 0
+    private volatile boolean closed;
     private Instrument[] instruments;
     int instrumentNum = 0;
     static boolean debug = false;
@@ -27,40 +39,17 @@ public class MIDI_Player {
     }
 
     public MIDI_Player() {
-        if (receiver == null) {
-            try {
-                receiver = MidiSystem.getReceiver();
-            } catch (MidiUnavailableException e) {
-                e.printStackTrace();
-            }
-        }
+        openReceiver();
 
-        int j = 0;
-        while (j < 16) {
-            if (!channelsInUse[j]) {
-                channel = j;
-                channelsInUse[j] = true;
-                break;
-            }
-            j++;
-        }
-        if (channel == -1) {
-            channel = 0;
-        }
+        int claimed = claimChannel();
+        ownsChannel = claimed >= 0;
+        channel = ownsChannel ? claimed : 0;
 
-	// 4 octaves (= 48 notes), starting on note 48 (C3)
-        onMessages = new ShortMessage[48];
-        offMessages = new ShortMessage[48];
+        // every MIDI key (C-1 .. G9), so nothing in range is dropped
         try {
-            for (int i = 0; i < 48; i++) {
-                ShortMessage onMsg = new ShortMessage();
-                onMsg.setMessage(ShortMessage.NOTE_ON, channel, 51 + i, 120);
-                onMessages[i] = onMsg;
-
-                ShortMessage offMsg = new ShortMessage();
-                offMsg.setMessage(ShortMessage.NOTE_OFF, channel, 51 + i, 120);
-                offMessages[i] = offMsg;
-            }
+            onMessages.set(DEFAULT_VELOCITY, messageRow(ShortMessage.NOTE_ON, DEFAULT_VELOCITY));
+            ShortMessage[] off = messageRow(ShortMessage.NOTE_OFF, 0);
+            System.arraycopy(off, 0, offMessages, 0, off.length);
             ShortMessage instrumentMsg = new ShortMessage();
             instrumentMsg.setMessage(ShortMessage.PROGRAM_CHANGE, channel, 0, 0);
             receiver.send(instrumentMsg, -1);
@@ -69,10 +58,10 @@ public class MIDI_Player {
         }
 
         noteIndexes = new HashMap<>();
-	int index = 48; // C3
+	int index = 0; // C-1
         String[] notes = { "C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B" };
-	for (int h = 3 ; h < 7 ; h++) {  // Octave 3 through Octave 7
-            for (int i = 0; i < 12; i++) {
+	for (int h = -1 ; h < 10 ; h++) {  // Octave -1 through Octave 9
+            for (int i = 0; i < 12 && index < 128; i++) {
                 noteIndexes.put(notes[i] + h, index);
 		if (debug) System.out.print("Added note: " + notes[i] + h + ": " + index);
 		if (notes[i].endsWith("#")) {
@@ -86,6 +75,42 @@ public class MIDI_Player {
         }
     }
 
+    private static synchronized void openReceiver() {
+        if (receiver != null) return;
+        try {
+            receiver = MidiSystem.getReceiver();
+            if (receiver instanceof MidiDeviceReceiver) {
+                device = ((MidiDeviceReceiver) receiver).getMidiDevice();
+            }
+        } catch (MidiUnavailableException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // lowest free melodic channel, or -1 if all are taken
+    private static int claimChannel() {
+        while (true) {
+            int used = channelsInUse.get();
+            int free = ~used & 0xFFFF & ~(1 << PERCUSSION_CHANNEL);
+            if (free == 0) return -1;
+            int bit = Integer.lowestOneBit(free);
+            if (channelsInUse.compareAndSet(used, used | bit)) return Integer.numberOfTrailingZeros(bit);
+        }
+    }
+
+    private static void releaseChannel(int channel) {
+        int bit = 1 << channel;
+        while (true) {
+            int used = channelsInUse.get();
+            if (channelsInUse.compareAndSet(used, used & ~bit)) return;
+        }
+    }
+
+    /** The MIDI channel (0-15) this player sends on. */
+    public int getChannel() {
+        return channel;
+    }
+
     // Convert note to a canonical form. Basically this is toUpperCase but we can't use that since
     // the symbol for a flat is "b".
     public String canonicalize(String s) {
@@ -100,8 +125,52 @@ public class MIDI_Player {
 	}
     }
 
+    private ShortMessage[] messageRow(int command, int velocity) throws InvalidMidiDataException {
+        ShortMessage[] row = new ShortMessage[128];
+        for (int key = 0; key < 128; key++) {
+            row[key] = new ShortMessage(command, channel, key, velocity);
+        }
+        return row;
+    }
+
+    /**
+     * Start a note: key is a MIDI key number (C4 = 60), velocity 1..127 (0 stops it, as in MIDI).
+     * timestampUs is on the device clock ({@link #getDeviceMicroseconds()}), or -1 for now.
+     */
+    public void noteOn(int key, int velocity, long timestampUs) {
+        if ((key & ~0x7F) != 0) return;
+        if (velocity <= 0) {
+            noteOff(key, timestampUs);
+            return;
+        }
+        int v = Math.min(velocity, 127);
+        ShortMessage[] row = onMessages.get(v);
+        if (row == null) {
+            try {
+                row = messageRow(ShortMessage.NOTE_ON, v);
+            } catch (InvalidMidiDataException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!onMessages.compareAndSet(v, null, row)) row = onMessages.get(v);
+        }
+        receiver.send(row[key], timestampUs);
+    }
+
+    public void noteOn(int key, int velocity) {
+        noteOn(key, velocity, -1);
+    }
+
+    public void noteOff(int key, long timestampUs) {
+        if ((key & ~0x7F) != 0) return;
+        receiver.send(offMessages[key], timestampUs);
+    }
+
+    public void noteOff(int key) {
+        noteOff(key, -1);
+    }
+
     public void playMidiSound(int noteIndex) {
-        receiver.send(onMessages[noteIndex-48], -1);
+        noteOn(noteIndex, DEFAULT_VELOCITY, -1);
     }
     public void playMidiSound(String noteName) {
 	noteName = canonicalize(noteName);
@@ -114,7 +183,15 @@ public class MIDI_Player {
     }
 
     public void stopMidiSound(int noteIndex) {
-        receiver.send(offMessages[noteIndex-48], -1);
+        noteOff(noteIndex, -1);
+    }
+
+    /**
+     * Current time of the receiving device's clock in microseconds, or -1 if the device does not
+     * keep one (then timestamps are ignored and messages take effect on arrival).
+     */
+    public long getDeviceMicroseconds() {
+        return (device == null) ? -1 : device.getMicrosecondPosition();
     }
     public void stopMidiSound(String noteName) {
 	noteName = canonicalize(noteName);
@@ -137,15 +214,16 @@ public class MIDI_Player {
             return instruments;
         }
     }
+    /** General MIDI program (0-127) for this player's channel; other numbers are ignored. */
     public void setInstrument(int instrumentNumber) {
+        if (instrumentNumber < 0 || instrumentNumber >= 128) return;
         instrumentNum = instrumentNumber;
         ShortMessage instrumentMsg = new ShortMessage();
         try {
-            if (instrumentNumber >= 0 && instrumentNumber < 128) {
-                instrumentMsg.setMessage(ShortMessage.PROGRAM_CHANGE, channel, instrumentNumber, 0);
-            }
+            instrumentMsg.setMessage(ShortMessage.PROGRAM_CHANGE, channel, instrumentNumber, 0);
         } catch (InvalidMidiDataException e) {
             e.printStackTrace();
+            return;
         }
         receiver.send(instrumentMsg, -1);
     }
@@ -153,9 +231,21 @@ public class MIDI_Player {
         return getInstruments()[instrumentNum].getName();
     }
 
+    /**
+     * Silence this player's channel and give it back to the pool; the shared receiver stays open.
+     * Safe to call more than once.
+     */
     public void close() {
-        //receiver.close();
-        channelsInUse[channel] = false;
+        if (closed) return;
+        closed = true;
+        if (!ownsChannel) return;    // channel 0 belongs to whoever claimed it
+        try {
+            // nothing this player started may keep sounding on the channel's next owner
+            receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, 123, 0), -1);   // all notes off
+        } catch (InvalidMidiDataException e) {
+            e.printStackTrace();
+        }
+        releaseChannel(channel);
     }
 	
 	public static void main(String[] args) {
@@ -164,7 +254,7 @@ public class MIDI_Player {
 		
 		System.out.println("Current instrument is " + player.getInstrumentName());
 		System.out.println("Enter valid note symbols (e.g., either C4 or G#5), one per line");
-		System.out.println("The range of notes is C3 - B6.");
+		System.out.println("The range of notes is C-1 - G9.");
 		System.out.println("Hit Ctrl-D to end.");
 		while (scanner.hasNextLine()) {
 			String s = scanner.nextLine();
@@ -0,0 +1,184 @@
+package com.gt.music.midi;
+
+import com.gt.music.model.DurationMs;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.playback.PackedTimeline;
+import com.gt.music.model.playback.TimelineBuilder;
+import com.gt.music.types.NoteDuration;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 整份乐谱（所有页，按页顺序首尾相接）导出为标准 MIDI 文件，不需要实时播放。
+ * 时间线与播放完全相同（{@link TimelineBuilder}）；PPQ 480，速度按 DurationMs 的四分音符 400 ms
+ * 写成 tempo 400000 µs/四分音符，所以每个毫秒时刻都能精确换算成整数 tick。
+ *
+ * 和播放一样，每条 staff 是一个声部，各用自己的通道（跳过打击乐通道 9，{@link #channelOf}）。
+ * type 1：track 0 放速度/拍号，之后每个声部一个 track（各页依次接在里面）；type 0：全部事件合成一个 track。
+ * 各页的时间线和 MidiEvent 在线程池里并行生成，最后按页序装进 Sequence。
+ */
+public final class MidiFileExporter {
+    public static final int PPQ = 480;
+    public static final int QUARTER_MS = DurationMs.of(NoteDuration.QUARTER);
+    public static final int TEMPO_US_PER_QUARTER = QUARTER_MS * 1000;
+
+    private static final int DRUM_CHANNEL = 9;
+    private static final int VELOCITY = 100;
+
+    private final int chordTolerancePx;
+    private final int threads;
+
+    /**
+     * @param chordTolerancePx 与播放相同的和弦 x 容差
+     * @param threads 工作线程数；&lt;= 0 表示使用全部 CPU 核
+     */
+    public MidiFileExporter(int chordTolerancePx, int threads) {
+        this.chordTolerancePx = chordTolerancePx;
+        this.threads = threads;
+    }
+
+    public static long msToTicks(long ms) {
+        return ms * PPQ / QUARTER_MS;
+    }
+
+    /** 声部（staff）的 MIDI 通道：和播放时 MIDI_Player 领通道的顺序一样，跳过打击乐通道 */
+    public static int channelOf(int part) {
+        return (part < DRUM_CHANNEL) ? part : part + 1;
+    }
+
+    /** 把 pages 渲染成 Sequence 后用 MidiSystem.write 写成 type 0 或 1 的 .mid */
+    public void write(List<PageSnapshot> pages, int fileType, File file) throws IOException {
+        Sequence sequence = toSequence(pages, fileType);
+        boolean supported = false;
+        for (int t : MidiSystem.getMidiFileTypes(sequence)) supported |= (t == fileType);
+        if (!supported) throw new IOException("MIDI file type " + fileType + " is not supported here");
+        MidiSystem.write(sequence, fileType, file);
+    }
+
+    public Sequence toSequence(List<PageSnapshot> pages, int fileType) throws IOException {
+        if (fileType != 0 && fileType != 1) throw new IllegalArgumentException("MIDI file type must be 0 or 1");
+
+        // 1) 并行：每页的时间线（毫秒，页内从 0 开始）和时长
+        PackedTimeline[] timelines = new PackedTimeline[pages.size()];
+        List<Callable<Void>> jobs = new ArrayList<>(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            final int page = i;
+            jobs.add(() -> {
+                timelines[page] = TimelineBuilder.pack(pages.get(page), chordTolerancePx, 0);
+                return null;
+            });
+        }
+        runAll(jobs);
+
+        // 2) 每页的起点 = 前面各页时长之和
+        long[] offsets = new long[pages.size()];
+        for (int i = 1; i < pages.size(); i++) offsets[i] = offsets[i - 1] + timelines[i - 1].getEndMs();
+
+        // 3) 并行：换算成 tick 并生成 MidiEvent
+        // one slot per page, filled in place (set never changes the list's structure)
+        List<List<MidiEvent>> events = new ArrayList<>(Collections.nCopies(pages.size(), (List<MidiEvent>) null));
+        jobs.clear();
+        for (int i = 0; i < pages.size(); i++) {
+            final int page = i;
+            jobs.add(() -> {
+                events.set(page, toMidiEvents(timelines[page], offsets[page]));
+                timelines[page] = null;
+                return null;
+            });
+        }
+        runAll(jobs);
+
+        int parts = 1;
+        for (PageSnapshot page : pages) parts = Math.max(parts, Math.min(page.getNumStaves(), TimelineBuilder.MAX_PARTS));
+
+        // 4) 装进 Sequence（Track.add 在按时间追加时是 O(1)；每个声部的事件按页序、页内按时间到达）
+        try {
+            Sequence sequence = new Sequence(Sequence.PPQ, PPQ);
+            Track conductor = sequence.createTrack();
+            conductor.add(meta(0x03, "Score".getBytes(StandardCharsets.US_ASCII), 0));
+            conductor.add(meta(0x51, new byte[]{
+                    (byte) (TEMPO_US_PER_QUARTER >> 16), (byte) (TEMPO_US_PER_QUARTER >> 8), (byte) TEMPO_US_PER_QUARTER }, 0));
+            conductor.add(meta(0x58, new byte[]{ 4, 2, 24, 8 }, 0));   // 4/4
+            Track[] tracks = new Track[parts];
+            for (int part = 0; part < parts; part++) {
+                tracks[part] = (fileType == 1) ? sequence.createTrack() : conductor;
+                if (fileType == 1) {
+                    tracks[part].add(meta(0x03, ("Staff " + (part + 1)).getBytes(StandardCharsets.US_ASCII), 0));
+                }
+                tracks[part].add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, channelOf(part), 0, 0), 0));
+            }
+            for (int i = 0; i < pages.size(); i++) {
+                for (MidiEvent e : events.get(i)) {
+                    int part = partOf(((ShortMessage) e.getMessage()).getChannel());
+                    tracks[Math.min(part, parts - 1)].add(e);
+                }
+                events.set(i, null);
+            }
+            return sequence;
+        } catch (InvalidMidiDataException e) {
+            throw new IOException("MIDI export failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static List<MidiEvent> toMidiEvents(PackedTimeline timeline, long offsetMs) throws InvalidMidiDataException {
+        List<MidiEvent> out = new ArrayList<>(timeline.size());
+        for (int i = 0; i < timeline.size(); i++) {
+            long e = timeline.get(i);
+            long tick = msToTicks(offsetMs + PackedTimeline.atMs(e));
+            boolean on = PackedTimeline.isNoteOn(e);
+            out.add(new MidiEvent(new ShortMessage(on ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF,
+                    channelOf(PackedTimeline.channel(e)), PackedTimeline.key(e), on ? VELOCITY : 0), tick));
+        }
+        return out;
+    }
+
+    private static int partOf(int channel) {
+        return (channel < DRUM_CHANNEL) ? channel : channel - 1;
+    }
+
+    private static MidiEvent meta(int type, byte[] data, long tick) throws InvalidMidiDataException {
+        return new MidiEvent(new MetaMessage(type, data, data.length), tick);
+    }
+
+    private void runAll(List<Callable<Void>> jobs) throws IOException {
+        if (jobs.isEmpty()) return;
+        int n = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        n = Math.min(n, jobs.size());
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "midi-export-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (Future<Void> f : pool.invokeAll(jobs)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("MIDI export interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("MIDI export failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
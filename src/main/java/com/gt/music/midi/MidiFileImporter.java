@@ -0,0 +1,221 @@
+package com.gt.music.midi;
+
+import com.gt.music.io.PartLayout;
+import com.gt.music.model.DurationMs;
+import com.gt.music.model.Pitch;
+import com.gt.music.model.ScorePage;
+import com.gt.music.types.NoteDuration;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * 标准 MIDI 文件导入为可编辑的乐谱：配对 note-on/off，量化后交给 {@link PartLayout} 排版。
+ *
+ * 声部：和播放一样，每条 staff 是一个同时发声的声部。有音的 (track, 通道) 按 track、再按通道的顺序
+ * 各占一条 staff（最多 {@link PartLayout#MAX_STAVES} 条，多出的合用最后一条），所有 staff 共用一条
+ * 从左到右的时间轴，排到右边界就接着下一页，所以导出再导入的乐谱播放起来节奏不变。
+ *
+ * 时值：把 tick 按“四分音符 = DurationMs.of(QUARTER)”换成毫秒，再用 {@link DurationMs#nearest} 反查
+ * NoteDuration（与文件的速度无关，记谱看拍不看秒）。起点量化到十六分音符网格，同一起点的音成为一列，
+ * 两列之间的空隙用休止补齐（在量化误差内与原文件一致）。
+ * 音高：黑键记成升号；超出 MusicView 音高表 (G3..D6) 的音按八度折进表内，保持音名不变。
+ *
+ * 每个 track 边读边配对，已结束的音放在按起点排序的小堆里，没有更早开始、仍在发声的音时就可以交出；
+ * 各 track 按起点归并后排版，排满的页立刻交给 sink，所以除了 Sequence 本身，内存只跟“同时发声的音”
+ * 和当前页有关。打击乐通道 (10) 跳过。
+ */
+public final class MidiFileImporter {
+    private MidiFileImporter() {
+    }
+
+    private static final int DRUM_CHANNEL = 9;
+    private static final int QUARTER_MS = DurationMs.of(NoteDuration.QUARTER);
+    private static final int LOWEST_STEP = Pitch.step('G', 3);
+    private static final int HIGHEST_STEP = Pitch.step('D', 6);
+
+    public static List<ScorePage> readPages(File file) throws IOException {
+        List<ScorePage> pages = new ArrayList<>();
+        read(file, pages::add);
+        return pages;
+    }
+
+    /** @return number of notes imported */
+    public static long read(File file, Consumer<ScorePage> sink) throws IOException {
+        Sequence sequence;
+        try {
+            sequence = MidiSystem.getSequence(file);
+        } catch (InvalidMidiDataException e) {
+            throw new IOException("Not a readable MIDI file: " + e.getMessage(), e);
+        }
+        return read(sequence, sink);
+    }
+
+    public static long read(Sequence sequence, Consumer<ScorePage> sink) {
+        // ticks per quarter; SMPTE files have no beat, take half a second as one
+        double ticksPerQuarter = (sequence.getDivisionType() == Sequence.PPQ)
+                ? sequence.getResolution()
+                : sequence.getDivisionType() * sequence.getResolution() * 0.5;
+        Track[] tracks = sequence.getTracks();
+        int[][] parts = new int[tracks.length][];
+        int partCount = assignParts(tracks, parts);
+        PartLayout layout = new PartLayout(partCount, sink);
+
+        // every track in start order, merged by start (ties: earlier track first)
+        PriorityQueue<TrackReader> readers = new PriorityQueue<>(Math.max(1, tracks.length),
+                Comparator.<TrackReader>comparingLong(r -> r.peek().start).thenComparingInt(r -> r.index));
+        for (int i = 0; i < tracks.length; i++) {
+            TrackReader r = new TrackReader(tracks[i], i, parts[i]);
+            if (r.peek() != null) readers.add(r);
+        }
+        long notes = 0;
+        while (!readers.isEmpty()) {
+            TrackReader r = readers.poll();
+            Played p = r.poll();
+            if (r.peek() != null) readers.add(r);
+            int step = Pitch.stepForKey(p.key);
+            if (step == Pitch.NONE) continue;
+            while (step < LOWEST_STEP) step += 7;
+            while (step > HIGHEST_STEP) step -= 7;
+            NoteDuration d = DurationMs.nearest((p.end - p.start) * QUARTER_MS / ticksPerQuarter);
+            layout.addNote(Math.round(p.start * 4 / ticksPerQuarter), p.part, d, step, Pitch.accidentalForKey(p.key));
+            notes++;
+        }
+        layout.finish();
+        return notes;
+    }
+
+    /*
+     * One staff per (track, channel) that plays a note, in track then channel order; parts[track][channel]
+     * is its staff, -1 where nothing plays. Returns the number of staves.
+     */
+    private static int assignParts(Track[] tracks, int[][] parts) {
+        int count = 0;
+        for (int t = 0; t < tracks.length; t++) {
+            boolean[] plays = new boolean[16];
+            for (int i = 0; i < tracks[t].size(); i++) {
+                MidiMessage m = tracks[t].get(i).getMessage();
+                if (!(m instanceof ShortMessage)) continue;
+                ShortMessage sm = (ShortMessage) m;
+                if (sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() > 0 && sm.getChannel() != DRUM_CHANNEL) {
+                    plays[sm.getChannel()] = true;
+                }
+            }
+            parts[t] = new int[16];
+            for (int channel = 0; channel < 16; channel++) parts[t][channel] = plays[channel] ? count++ : -1;
+        }
+        return count;
+    }
+
+    /** 一个已结束的音（tick） */
+    private static final class Played {
+        final long start;
+        final long end;
+        final int key;
+        final int part;
+
+        Played(long start, long end, int key, int part) {
+            this.start = start;
+            this.end = end;
+            this.key = key;
+            this.part = part;
+        }
+    }
+
+    /** 一个 track 里已结束的音，按起点顺序一个个取出；只往前读到能确定下一个音为止 */
+    private static final class TrackReader {
+        final int index;
+        private final Track track;
+        private final int[] parts;
+        private int next;
+        private long lastTick;
+
+        private final long[] openSince = new long[16 * 128];
+        private final TreeMap<Long, Integer> openStarts = new TreeMap<>();   // multiset of start ticks still sounding
+        private final PriorityQueue<Played> done = new PriorityQueue<>((a, b) ->
+                (a.start != b.start) ? Long.compare(a.start, b.start) : Integer.compare(a.key, b.key));
+
+        TrackReader(Track track, int index, int[] parts) {
+            this.track = track;
+            this.index = index;
+            this.parts = parts;
+            Arrays.fill(openSince, -1);
+        }
+
+        /** 下一个音，没有了返回 null */
+        Played peek() {
+            while (!ready() && next < track.size()) read(track.get(next++));
+            if (!ready() && next == track.size()) closeOpenNotes();
+            return done.peek();
+        }
+
+        Played poll() {
+            peek();
+            return done.poll();
+        }
+
+        // everything that started before the earliest still-sounding note can be laid out now
+        private boolean ready() {
+            return !done.isEmpty() && (openStarts.isEmpty() || done.peek().start < openStarts.firstKey());
+        }
+
+        private void read(MidiEvent event) {
+            MidiMessage m = event.getMessage();
+            if (!(m instanceof ShortMessage)) return;
+            ShortMessage sm = (ShortMessage) m;
+            int command = sm.getCommand();
+            if (command != ShortMessage.NOTE_ON && command != ShortMessage.NOTE_OFF) return;
+            if (sm.getChannel() == DRUM_CHANNEL) return;
+
+            long tick = event.getTick();
+            lastTick = tick;
+            int slot = sm.getChannel() * 128 + sm.getData1();
+            boolean on = command == ShortMessage.NOTE_ON && sm.getData2() > 0;
+            // a note-off, or a repeated note-on of a key that is still down, ends the sounding note
+            if (openSince[slot] >= 0) {
+                long start = openSince[slot];
+                openSince[slot] = -1;
+                release(openStarts, start);
+                done.add(new Played(start, tick, sm.getData1(), parts[sm.getChannel()]));
+            }
+            if (on) {
+                openSince[slot] = tick;
+                openStarts.merge(tick, 1, Integer::sum);
+            }
+        }
+
+        // notes never switched off end with the track
+        private void closeOpenNotes() {
+            if (openStarts.isEmpty()) return;
+            for (int slot = 0; slot < openSince.length; slot++) {
+                if (openSince[slot] >= 0) {
+                    done.add(new Played(openSince[slot], Math.max(lastTick, openSince[slot] + 1), slot % 128,
+                            parts[slot / 128]));
+                    openSince[slot] = -1;
+                }
+            }
+            openStarts.clear();
+        }
+    }
+
+    private static void release(TreeMap<Long, Integer> multiset, long key) {
+        Integer n = multiset.get(key);
+        if (n == null) return;
+        if (n == 1) multiset.remove(key);
+        else multiset.put(key, n - 1);
+    }
+}
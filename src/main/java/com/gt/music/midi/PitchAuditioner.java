@@ -0,0 +1,87 @@
+package com.gt.music.midi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 拖动音符时试听音高：一个专用的 MIDI_Player（自己的通道，不会截断正在播放的乐谱）和一个专用线程 "pitch-audition"。
+ *
+ * EDT 调 {@link #audition} 只是把 (乐器, 键号) 写进一个单槽并 unpark 试听线程，不阻塞、不分配，拖动不会卡。
+ * 试听线程醒来取最新的请求：先关掉上一个音，再发新音（立即发，不带时间戳）。
+ * 防抖：上一个音刚响不到 {@link #DEBOUNCE_MS} 时不马上换，等到间隔满了只发这期间最新的那个音，
+ * 快速扫过很多音高时不会连成一串；停下后第一个变化则立刻发声。
+ */
+public final class PitchAuditioner {
+    /** 两次发声之间至少间隔这么久 */
+    public static final int DEBOUNCE_MS = 30;
+    // a little softer than playback, it is only a preview
+    private static final int VELOCITY = 100;
+    private static final long NO_REQUEST = Long.MIN_VALUE;
+
+    private final MIDI_Player voice;
+    private final AtomicLong request = new AtomicLong(NO_REQUEST);   // program << 8 | (key & 0xFF), latest wins
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public PitchAuditioner(MIDI_Player voice) {
+        this.voice = voice;
+        this.thread = new Thread(this::run, "pitch-audition");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * 试听 key（MIDI 键号），用 General MIDI 乐器 program；key &lt; 0 表示停下。可以从 EDT 频繁调用，
+     * 相同的请求不会重复发声。
+     */
+    public void audition(int program, int key) {
+        request.set(((long) (program & 0x7F) << 8) | (key & 0xFF));
+        LockSupport.unpark(thread);
+    }
+
+    /** 停下正在响的音并结束试听线程；试听用的 MIDI_Player 由调用方关闭 */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        int sounding = -1;
+        int program = -1;
+        long lastOnNs = 0;
+        while (!closed) {
+            long r = request.getAndSet(NO_REQUEST);
+            if (r == NO_REQUEST) {
+                LockSupport.park(this);
+                continue;
+            }
+            int key = (int) r & 0xFF;
+            if (key > 127) key = -1;
+            int prog = (int) (r >>> 8) & 0x7F;
+            if (key == sounding && (key < 0 || prog == program)) continue;
+
+            if (key >= 0 && sounding >= 0) {
+                long waitNs = lastOnNs + DEBOUNCE_MS * 1_000_000L - System.nanoTime();
+                if (waitNs > 0) {
+                    // not yet: put it back unless something newer came in, and look again when the window ends
+                    request.compareAndSet(NO_REQUEST, r);
+                    LockSupport.parkNanos(this, waitNs);
+                    continue;
+                }
+            }
+
+            if (sounding >= 0) voice.noteOff(sounding);
+            if (key >= 0) {
+                if (prog != program) {
+                    voice.setInstrument(prog);
+                    program = prog;
+                }
+                voice.noteOn(key, VELOCITY);
+                lastOnNs = System.nanoTime();
+            }
+            sounding = key;
+        }
+        if (sounding >= 0) voice.noteOff(sounding);
+    }
+}
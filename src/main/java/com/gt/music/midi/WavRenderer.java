@@ -0,0 +1,306 @@
+package com.gt.music.midi;
+
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.playback.PackedTimeline;
+import com.gt.music.model.playback.TimelineBuilder;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 不经过声卡、比实时快地把整份乐谱渲染成 WAV（44.1 kHz、16 bit、立体声）。
+ *
+ * 用 Java 自带的软件合成器（Gervill）的 AudioSynthesizer.openStream：合成器在我们读流时才计算，
+ * 设备时钟就是已读的采样数，所以把整段的事件带上时间戳一次发进去、再按需要的长度读出即可。
+ * 每页是独立的一段，在线程池里各用一个新开的合成器并行渲染（每段多渲染 TAIL_MS 的余音），
+ * 再按页序把各段叠加到各自的起点上、限幅后写出；同时在渲染的段数有上限，内存不随乐谱长度增长。
+ * 每段都从全新的合成器开始、与线程调度无关，所以同样的乐谱总是得到逐字节相同的文件。
+ *
+ * AudioSynthesizer 在 com.sun.media.sound 里，Java 9 以上需要
+ * --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED。
+ */
+public final class WavRenderer {
+    public static final int SAMPLE_RATE = 44100;
+    /** 每段最后一个音之后多渲染的长度，让释音和混响自然结束 */
+    public static final long TAIL_MS = 2000;
+
+    private static final int CHANNELS = 2;
+    private static final int BYTES_PER_FRAME = 2 * CHANNELS;
+    private static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, CHANNELS, true, false);
+
+    private final int chordTolerancePx;
+    private final int threads;
+
+    /**
+     * @param chordTolerancePx 与播放相同的和弦 x 容差
+     * @param threads 工作线程数；&lt;= 0 表示使用全部 CPU 核
+     */
+    public WavRenderer(int chordTolerancePx, int threads) {
+        this.chordTolerancePx = chordTolerancePx;
+        this.threads = threads;
+    }
+
+    /** 按页序首尾相接渲染 pages，写成 WAV 文件 */
+    public void write(List<PageSnapshot> pages, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            write(pages, out);
+        }
+    }
+
+    public void write(List<PageSnapshot> pages, OutputStream out) throws IOException {
+        int n = poolSize(pages.size());
+        ExecutorService pool = newPool(n);
+        try {
+            // 1) 并行编译各页的时间线（页内从 0 开始），得到每页的起点
+            List<Future<PackedTimeline>> compiled = new ArrayList<>(pages.size());
+            for (PageSnapshot page : pages) {
+                compiled.add(pool.submit(() -> TimelineBuilder.pack(page.getSymbols(), chordTolerancePx, 0)));
+            }
+            List<PackedTimeline> segments = new ArrayList<>(pages.size());
+            for (Future<PackedTimeline> f : compiled) segments.add(get(f));
+            // 2) 并行渲染、按序叠加
+            render(segments, pool, n, out);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 渲染首尾相接的若干段，写成 WAV；每段的时刻从 0 开始，{@link PackedTimeline#getEndMs()} 是它的长度。
+     */
+    public void writeSegments(List<PackedTimeline> segments, OutputStream out) throws IOException {
+        int n = poolSize(segments.size());
+        ExecutorService pool = newPool(n);
+        try {
+            render(segments, pool, n, out);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static long frameAt(long ms) {
+        return ms * SAMPLE_RATE / 1000;
+    }
+
+    private void render(List<PackedTimeline> segments, ExecutorService pool, int workers, OutputStream out) throws IOException {
+        long[] startMs = new long[segments.size() + 1];
+        for (int i = 0; i < segments.size(); i++) startMs[i + 1] = startMs[i] + segments.get(i).getEndMs();
+        long totalFrames = frameAt(startMs[segments.size()] + TAIL_MS);
+        writeHeader(out, totalFrames);
+
+        Mixer mixer = new Mixer(out);
+        Deque<Future<short[]>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            // keep at most two segments per worker rendering or waiting to be mixed
+            while (next < segments.size() && inFlight.size() < 2 * workers) {
+                final int segment = next++;
+                inFlight.add(pool.submit(() -> renderSegment(segments.get(segment), startMs[segment])));
+            }
+            mixer.add(frameAt(startMs[i]), get(inFlight.poll()));
+        }
+        mixer.finish(totalFrames);
+    }
+
+    /** 一段的 PCM（交错的立体声样本），从 frameAt(startMs) 开始，含余音 */
+    private static short[] renderSegment(PackedTimeline timeline, long startMs) throws IOException {
+        if (timeline.size() == 0) return new short[0];   // silence; the mixer pads it
+        long firstFrame = frameAt(startMs);
+        int frames = (int) (frameAt(startMs + timeline.getEndMs() + TAIL_MS) - firstFrame);
+        short[] pcm = new short[frames * CHANNELS];
+
+        Synthesizer synth;
+        try {
+            synth = MidiSystem.getSynthesizer();
+        } catch (MidiUnavailableException e) {
+            throw new IOException("No MIDI synthesizer: " + e.getMessage(), e);
+        }
+        try (AudioInputStream in = openStream(synth)) {
+            Receiver receiver = synth.getReceiver();
+            // the stream starts at firstFrame, which can be up to a frame before startMs
+            long shiftUs = startMs * 1000 - firstFrame * 1_000_000L / SAMPLE_RATE;
+            for (int i = 0; i < timeline.size(); i++) {
+                long e = timeline.get(i);
+                boolean on = PackedTimeline.isNoteOn(e);
+                ShortMessage m = new ShortMessage(on ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF,
+                        PackedTimeline.channel(e), PackedTimeline.key(e), on ? PackedTimeline.velocity(e) : 0);
+                receiver.send(m, shiftUs + PackedTimeline.atMs(e) * 1000);
+            }
+            byte[] buf = new byte[8192 * BYTES_PER_FRAME];
+            int samples = 0;
+            while (samples < pcm.length) {
+                int want = Math.min(buf.length, (pcm.length - samples) * 2);
+                int read = readFully(in, buf, want);
+                if (read <= 0) break;
+                for (int b = 0; b + 1 < read; b += 2) {
+                    pcm[samples++] = (short) ((buf[b] & 0xFF) | (buf[b + 1] << 8));
+                }
+            }
+            return pcm;
+        } catch (MidiUnavailableException | InvalidMidiDataException e) {
+            throw new IOException("Rendering failed: " + e.getMessage(), e);
+        } finally {
+            synth.close();
+        }
+    }
+
+    private static int readFully(AudioInputStream in, byte[] buf, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int r = in.read(buf, n, len - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+
+    private static Method openStream;
+
+    private static synchronized AudioInputStream openStream(Synthesizer synth) throws IOException, MidiUnavailableException {
+        try {
+            if (openStream == null) {
+                Class<?> audioSynth = Class.forName("com.sun.media.sound.AudioSynthesizer");
+                if (!audioSynth.isInstance(synth)) {
+                    throw new IOException("The default synthesizer (" + synth.getDeviceInfo().getName()
+                            + ") cannot render offline");
+                }
+                openStream = audioSynth.getMethod("openStream", AudioFormat.class, Map.class);
+            }
+            return (AudioInputStream) openStream.invoke(synth, FORMAT, null);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IOException("The Java software synthesizer is not available", e);
+        } catch (IllegalAccessException e) {
+            throw new IOException("Offline rendering needs --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED", e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof MidiUnavailableException) throw (MidiUnavailableException) e.getCause();
+            throw new IOException("Could not open the synthesizer: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * 按起点顺序收到各段，叠加进一个从 written 开始的累加缓冲；下一段的起点之前的帧不会再变，
+     * 限幅后立即写出。
+     */
+    private static final class Mixer {
+        private final OutputStream out;
+        private int[] acc = new int[0];      // interleaved samples from frame `written`
+        private long written;
+        private final byte[] bytes = new byte[8192 * BYTES_PER_FRAME];
+
+        Mixer(OutputStream out) {
+            this.out = out;
+        }
+
+        void add(long startFrame, short[] pcm) throws IOException {
+            flushTo(startFrame);   // the buffer now starts at this segment
+            if (acc.length < pcm.length) acc = Arrays.copyOf(acc, pcm.length);
+            for (int i = 0; i < pcm.length; i++) acc[i] += pcm[i];
+        }
+
+        void finish(long totalFrames) throws IOException {
+            flushTo(totalFrames);
+            out.flush();
+        }
+
+        // write frames [written, frame) and drop them from the buffer
+        private void flushTo(long frame) throws IOException {
+            int samples = (int) (frame - written) * CHANNELS;
+            if (samples <= 0) return;
+            for (int i = 0; i < samples; ) {
+                int n = 0;
+                for (; n + 1 < bytes.length && i < samples; i++) {
+                    int v = (i < acc.length) ? Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, acc[i])) : 0;
+                    bytes[n++] = (byte) v;
+                    bytes[n++] = (byte) (v >> 8);
+                }
+                out.write(bytes, 0, n);
+            }
+            acc = (samples < acc.length) ? Arrays.copyOfRange(acc, samples, acc.length) : new int[0];
+            written = frame;
+        }
+    }
+
+    private static void writeHeader(OutputStream out, long frames) throws IOException {
+        long dataBytes = frames * BYTES_PER_FRAME;
+        if (dataBytes + 36 > 0xFFFFFFFFL) throw new IOException("Score too long for a WAV file");
+        byte[] h = new byte[44];
+        putAscii(h, 0, "RIFF");
+        putInt(h, 4, (int) (36 + dataBytes));
+        putAscii(h, 8, "WAVE");
+        putAscii(h, 12, "fmt ");
+        putInt(h, 16, 16);
+        putShort(h, 20, 1);                                   // PCM
+        putShort(h, 22, CHANNELS);
+        putInt(h, 24, SAMPLE_RATE);
+        putInt(h, 28, SAMPLE_RATE * BYTES_PER_FRAME);
+        putShort(h, 32, BYTES_PER_FRAME);
+        putShort(h, 34, 16);
+        putAscii(h, 36, "data");
+        putInt(h, 40, (int) dataBytes);
+        out.write(h);
+    }
+
+    private static void putAscii(byte[] b, int at, String s) {
+        for (int i = 0; i < s.length(); i++) b[at + i] = (byte) s.charAt(i);
+    }
+
+    private static void putInt(byte[] b, int at, int v) {
+        putShort(b, at, v);
+        putShort(b, at + 2, v >>> 16);
+    }
+
+    private static void putShort(byte[] b, int at, int v) {
+        b[at] = (byte) v;
+        b[at + 1] = (byte) (v >>> 8);
+    }
+
+    private int poolSize(int jobs) {
+        int n = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(n, jobs));
+    }
+
+    private static ExecutorService newPool(int n) {
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "wav-render-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static <T> T get(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Rendering interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Rendering failed: " + e.getCause(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.gt.music.model;
+
+import com.gt.music.types.Accidental;
+import com.gt.music.types.NoteDuration;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Optional struct-of-arrays store for very large pages (generated scores with 100k+ symbols).
+ * One row per symbol, kept in parallel primitive arrays instead of one Note/Rest object each:
+ * x, y (int), duration ordinal, pitch step (see {@link Pitch}), accidental ordinal and kind (byte).
+ * That is 12 bytes per symbol, against ~36 bytes for a Note plus its ArrayList slot.
+ *
+ * Rows are read through flyweight views that extend {@link Note} / {@link Rest}, so existing
+ * code written against the Symbol API (painter, timeline builder, ...) works unchanged.
+ * Views address a row index: they stay valid until a row before them is removed.
+ */
+public final class ColumnarPage {
+    public static final byte KIND_NOTE = 0;
+    public static final byte KIND_REST = 1;
+
+    private static final NoteDuration[] DURATIONS = NoteDuration.values();
+    private static final Accidental[] ACCIDENTALS = Accidental.values();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int[] xs;
+    private int[] ys;
+    private byte[] durations;
+    private byte[] pitchSteps;   // Pitch.NONE (-1) .. Pitch.MAX_STEP (69)
+    private byte[] accidentals;
+    private byte[] kinds;
+
+    public ColumnarPage() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ColumnarPage(int capacity) {
+        capacity = Math.max(1, capacity);
+        xs = new int[capacity];
+        ys = new int[capacity];
+        durations = new byte[capacity];
+        pitchSteps = new byte[capacity];
+        accidentals = new byte[capacity];
+        kinds = new byte[capacity];
+    }
+
+    /** Copy an object list into a new columnar page (symbols other than Note/Rest are skipped). */
+    public static ColumnarPage fromSymbols(List<? extends Symbol> symbols) {
+        ColumnarPage page = new ColumnarPage(symbols.size());
+        for (Symbol s : symbols) page.add(s);
+        return page;
+    }
+
+    /** Materialize every row as a plain, independent Note/Rest object. */
+    public List<Symbol> toSymbols() {
+        List<Symbol> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == KIND_NOTE) {
+                Note n = new Note(xs[i], ys[i], durationAt(i));
+                n.setPitchStep(pitchSteps[i]);
+                n.setAccidental(accidentalAt(i));
+                out.add(n);
+            } else {
+                out.add(new Rest(xs[i], ys[i], durationAt(i)));
+            }
+        }
+        return out;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ---- append / remove ----
+
+    /** @return the new row index, or -1 if the symbol is neither a Note nor a Rest */
+    public int add(Symbol s) {
+        if (s instanceof Note) {
+            Note n = (Note) s;
+            return addNote(n.getX(), n.getY(), n.getDuration(), n.getPitchStep(), n.getAccidental());
+        }
+        if (s instanceof Rest) {
+            return addRest(s.getX(), s.getY(), s.getDuration());
+        }
+        return -1;
+    }
+
+    public int addNote(int x, int y, NoteDuration duration, int pitchStep, Accidental accidental) {
+        int row = appendRow(x, y, duration, KIND_NOTE);
+        pitchSteps[row] = (byte) (Pitch.isValid(pitchStep) ? pitchStep : Pitch.NONE);
+        accidentals[row] = (byte) (accidental == null ? Accidental.NONE : accidental).ordinal();
+        return row;
+    }
+
+    public int addRest(int x, int y, NoteDuration duration) {
+        int row = appendRow(x, y, duration, KIND_REST);
+        pitchSteps[row] = Pitch.NONE;
+        accidentals[row] = (byte) Accidental.NONE.ordinal();
+        return row;
+    }
+
+    /** Remove one row; later rows shift down by one (so views past it move to the next symbol). */
+    public void remove(int row) {
+        checkRow(row);
+        int tail = size - row - 1;
+        if (tail > 0) {
+            System.arraycopy(xs, row + 1, xs, row, tail);
+            System.arraycopy(ys, row + 1, ys, row, tail);
+            System.arraycopy(durations, row + 1, durations, row, tail);
+            System.arraycopy(pitchSteps, row + 1, pitchSteps, row, tail);
+            System.arraycopy(accidentals, row + 1, accidentals, row, tail);
+            System.arraycopy(kinds, row + 1, kinds, row, tail);
+        }
+        size--;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Drop spare capacity once a page has been fully loaded. */
+    public void trimToSize() {
+        if (size == xs.length) return;
+        resize(Math.max(1, size));
+    }
+
+    // ---- column access (no allocation) ----
+
+    public int x(int row) { checkRow(row); return xs[row]; }
+    public int y(int row) { checkRow(row); return ys[row]; }
+    public byte kind(int row) { checkRow(row); return kinds[row]; }
+    public boolean isNote(int row) { checkRow(row); return kinds[row] == KIND_NOTE; }
+    public NoteDuration duration(int row) { checkRow(row); return durationAt(row); }
+    public int pitchStep(int row) { checkRow(row); return pitchSteps[row]; }
+    public Accidental accidental(int row) { checkRow(row); return accidentalAt(row); }
+
+    /** @return MIDI key of a note row, -1 for rests and unpitched notes */
+    public int midiKey(int row) {
+        checkRow(row);
+        if (kinds[row] != KIND_NOTE) return -1;
+        return Pitch.midiKey(pitchSteps[row], accidentalAt(row));
+    }
+
+    public void setX(int row, int x) { checkRow(row); xs[row] = x; }
+    public void setY(int row, int y) { checkRow(row); ys[row] = y; }
+
+    /** Ignored for rest rows, like a Rest has no pitch. */
+    public void setPitchStep(int row, int pitchStep) {
+        checkRow(row);
+        if (kinds[row] != KIND_NOTE) return;
+        pitchSteps[row] = (byte) (Pitch.isValid(pitchStep) ? pitchStep : Pitch.NONE);
+    }
+
+    /** Ignored for rest rows. */
+    public void setAccidental(int row, Accidental accidental) {
+        checkRow(row);
+        if (kinds[row] != KIND_NOTE) return;
+        accidentals[row] = (byte) (accidental == null ? Accidental.NONE : accidental).ordinal();
+    }
+
+    // ---- flyweight views ----
+
+    /** A view of one row; a new small object each call, backed by the arrays (no copy). */
+    public Symbol view(int row) {
+        checkRow(row);
+        return (kinds[row] == KIND_NOTE) ? new NoteView(this, row) : new RestView(this, row);
+    }
+
+    /** Read-only list of views, for code that takes a List&lt;Symbol&gt;. Copy it before sorting. */
+    public List<Symbol> asList() {
+        return new AbstractList<Symbol>() {
+            @Override
+            public Symbol get(int index) {
+                return view(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Visit every row through two reused cursors (one Note, one Rest): nothing is allocated per row.
+     * The visitor must not keep the Symbol it is given past the call.
+     */
+    public void forEach(Consumer<? super Symbol> visitor) {
+        NoteView note = new NoteView(this, 0);
+        RestView rest = new RestView(this, 0);
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == KIND_NOTE) {
+                note.row = i;
+                visitor.accept(note);
+            } else {
+                rest.row = i;
+                visitor.accept(rest);
+            }
+        }
+    }
+
+    /** Note view of a row; every getter/setter reads or writes the arrays. */
+    public static final class NoteView extends Note {
+        private final ColumnarPage page;
+        private int row;
+
+        private NoteView(ColumnarPage page, int row) {
+            super(0, 0, null);
+            this.page = page;
+            this.row = row;
+        }
+
+        public ColumnarPage getPage() { return page; }
+        public int getRow() { return row; }
+
+        @Override public int getX() { return page.x(row); }
+        @Override public void setX(int x) { page.setX(row, x); }
+        @Override public int getY() { return page.y(row); }
+        @Override public void setY(int y) { page.setY(row, y); }
+        @Override public NoteDuration getDuration() { return page.duration(row); }
+        @Override public int getPitchStep() { return page.pitchStep(row); }
+        @Override public void setPitchStep(int pitchStep) { page.setPitchStep(row, pitchStep); }
+        @Override public Accidental getAccidental() { return page.accidental(row); }
+        @Override public void setAccidental(Accidental a) { page.setAccidental(row, a); }
+    }
+
+    /** Rest view of a row. */
+    public static final class RestView extends Rest {
+        private final ColumnarPage page;
+        private int row;
+
+        private RestView(ColumnarPage page, int row) {
+            super(0, 0, null);
+            this.page = page;
+            this.row = row;
+        }
+
+        public ColumnarPage getPage() { return page; }
+        public int getRow() { return row; }
+
+        @Override public int getX() { return page.x(row); }
+        @Override public void setX(int x) { page.setX(row, x); }
+        @Override public int getY() { return page.y(row); }
+        @Override public void setY(int y) { page.setY(row, y); }
+        @Override public NoteDuration getDuration() { return page.duration(row); }
+    }
+
+    // ---- internals ----
+
+    private int appendRow(int x, int y, NoteDuration duration, byte kind) {
+        if (size == xs.length) resize(xs.length + (xs.length >> 1) + 1);
+        int row = size++;
+        xs[row] = x;
+        ys[row] = y;
+        durations[row] = (byte) (duration == null ? -1 : duration.ordinal());
+        kinds[row] = kind;
+        return row;
+    }
+
+    private void resize(int capacity) {
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        pitchSteps = Arrays.copyOf(pitchSteps, capacity);
+        accidentals = Arrays.copyOf(accidentals, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+    }
+
+    private NoteDuration durationAt(int row) {
+        byte d = durations[row];
+        return (d < 0) ? null : DURATIONS[d];
+    }
+
+    private Accidental accidentalAt(int row) {
+        return ACCIDENTALS[accidentals[row]];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        }
+    }
+}
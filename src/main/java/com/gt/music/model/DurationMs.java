@@ -15,4 +15,18 @@ public final class DurationMs {
             default:         return 400; // 兜底
         }
     }
+
+    /** of 的反函数：最接近 ms 的时值（按比例比较，400 与 800 的分界是 566 而不是 600） */
+    public static NoteDuration nearest(double ms){
+        NoteDuration best = NoteDuration.QUARTER;
+        double bestDist = Double.MAX_VALUE;
+        for (NoteDuration d : NoteDuration.values()){
+            double dist = Math.abs(Math.log(Math.max(ms, 1) / of(d)));
+            if (dist < bestDist){
+                bestDist = dist;
+                best = d;
+            }
+        }
+        return best;
+    }
 }
@@ -0,0 +1,441 @@
+package com.gt.music.model;
+
+import com.gt.music.types.Accidental;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo/redo for a {@link Score}, recorded from its {@link ScoreEvent}s.
+ *
+ * Each undo step is an entry holding compact deltas: symbol id plus the changed field (old/new),
+ * or an insert/delete record that keeps the removed symbol. No page snapshots are taken.
+ * Events marked adjusting (drag frames) stay in the open entry, and repeated moves / pitch changes
+ * of one symbol fold into a single delta, so a whole drag costs one small entry.
+ * {@link #beginGroup()} / {@link #endGroup()} bracket multi-step edits (press..release, scratch-out).
+ *
+ * The history is bounded by an approximate byte budget: the oldest entries are dropped first.
+ * EDT only, like the score itself.
+ */
+public class EditHistory implements ScoreListener {
+    public static final long DEFAULT_BUDGET_BYTES = 4L * 1024 * 1024;
+
+    // rough retained sizes (compressed oops) used for the budget
+    private static final int ENTRY_BYTES = 48;
+    private static final int DELTA_BYTES = 40;
+    private static final int SYMBOL_BYTES = 40;
+
+    private final Score score;
+    private final Deque<Entry> undoStack = new ArrayDeque<>();
+    private final Deque<Entry> redoStack = new ArrayDeque<>();
+    private Entry open = null;
+    private int groupDepth = 0;
+    private boolean replaying = false;
+    private long budgetBytes;
+    private long usedBytes = 0;
+    private Runnable onChange;
+
+    public EditHistory(Score score) {
+        this(score, DEFAULT_BUDGET_BYTES);
+    }
+
+    public EditHistory(Score score, long budgetBytes) {
+        this.score = score;
+        this.budgetBytes = Math.max(1, budgetBytes);
+        score.addScoreListener(this);
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = Math.max(1, budgetBytes);
+        evictOverBudget();
+        changed();
+    }
+
+    // approximate bytes held by undo + redo entries
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getUndoCount() {
+        return undoStack.size() + (open != null && !open.isNoop() ? 1 : 0);
+    }
+
+    public int getRedoCount() {
+        return redoStack.size();
+    }
+
+    public boolean canUndo() {
+        return getUndoCount() > 0;
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    // called whenever undo/redo availability may have changed (e.g. to enable menu items)
+    public void setOnChange(Runnable callback) {
+        this.onChange = callback;
+    }
+
+    /** Everything until the matching {@link #endGroup()} becomes one undo step. Nestable. */
+    public void beginGroup() {
+        groupDepth++;
+    }
+
+    public void endGroup() {
+        if (groupDepth == 0) return;
+        if (--groupDepth == 0) closeOpenEntry();
+    }
+
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        open = null;
+        usedBytes = 0;
+        changed();
+    }
+
+    public boolean undo() {
+        closeOpenEntry();
+        Entry e = undoStack.pollLast();
+        if (e == null) return false;
+        replaying = true;
+        try {
+            for (int i = e.deltas.size() - 1; i >= 0; i--) e.deltas.get(i).undo(score);
+        } finally {
+            replaying = false;
+        }
+        redoStack.addLast(e);
+        changed();
+        return true;
+    }
+
+    public boolean redo() {
+        Entry e = redoStack.pollLast();
+        if (e == null) return false;
+        replaying = true;
+        try {
+            for (Delta d : e.deltas) d.redo(score);
+        } finally {
+            replaying = false;
+        }
+        undoStack.addLast(e);
+        changed();
+        return true;
+    }
+
+    // RECORDING
+    @Override
+    public void scoreChanged(ScoreEvent e) {
+        if (replaying) return;
+        if (e.getType() == ScoreEvent.Type.SCORE_REPLACED) {
+            // a different document: nothing before this point can be undone into it
+            groupDepth = 0;
+            clear();
+            return;
+        }
+        Delta d = toDelta(e);
+        if (d == null) return;
+
+        if (!redoStack.isEmpty()) {
+            for (Entry r : redoStack) usedBytes -= r.bytes;
+            redoStack.clear();
+        }
+        if (open == null) {
+            open = new Entry();
+            usedBytes += ENTRY_BYTES;
+        }
+        usedBytes += open.add(d);
+
+        if (!e.isAdjusting() && groupDepth == 0) closeOpenEntry();
+    }
+
+    private Delta toDelta(ScoreEvent e) {
+        ScorePage page = e.getPage();
+        Symbol s = e.getSymbol();
+        switch (e.getType()) {
+            case PAGE_ADDED:
+                return new PageDelta(page, e.getIndex(), true);
+            case PAGE_REMOVED:
+                return new PageDelta(page, e.getIndex(), false);
+            case STAVES_CHANGED:
+                return new StavesDelta(page, e.getOldNumStaves(), page.getNumStaves());
+            case SYMBOL_ADDED:
+                return new SymbolDelta(page, s, e.getIndex(), true);
+            case SYMBOL_REMOVED:
+                return new SymbolDelta(page, s, e.getIndex(), false);
+            case SYMBOL_MOVED:
+                return new MoveDelta(page, s.getId(), e.getOldX(), e.getOldY(), s.getX(), s.getY());
+            case PITCH_CHANGED:
+                return new PitchDelta(page, s.getId(), e.getOldPitchStep(), ((Note) s).getPitchStep());
+            case ACCIDENTAL_CHANGED:
+                return new AccidentalDelta(page, s.getId(), e.getOldAccidental(), ((Note) s).getAccidental());
+            default:
+                return null;
+        }
+    }
+
+    private void closeOpenEntry() {
+        Entry e = open;
+        if (e == null) return;
+        open = null;
+        if (e.isNoop()) {
+            // e.g. a click on a note, or a drag that ended where it started
+            usedBytes -= e.bytes + ENTRY_BYTES;
+        } else {
+            e.bytes += ENTRY_BYTES;
+            undoStack.addLast(e);
+            evictOverBudget();
+        }
+        changed();
+    }
+
+    private void evictOverBudget() {
+        // oldest undo steps go first, then the redo steps furthest from the present
+        while (usedBytes > budgetBytes && undoStack.size() > 1) {
+            usedBytes -= undoStack.pollFirst().bytes;
+        }
+        while (usedBytes > budgetBytes && !redoStack.isEmpty()) {
+            usedBytes -= redoStack.pollFirst().bytes;
+        }
+    }
+
+    private void changed() {
+        if (onChange != null) onChange.run();
+    }
+
+    // ---- entries and deltas ----
+
+    private static final class Entry {
+        final List<Delta> deltas = new ArrayList<>(2);
+        long bytes;
+
+        /** @return bytes added (0 when the delta was folded into an earlier one) */
+        long add(Delta d) {
+            for (int i = deltas.size() - 1; i >= 0; i--) {
+                Delta prev = deltas.get(i);
+                if (prev.absorb(d)) return 0;
+                if (prev.blocksMerge(d)) break;
+            }
+            deltas.add(d);
+            bytes += d.bytes();
+            return d.bytes();
+        }
+
+        boolean isNoop() {
+            for (Delta d : deltas) {
+                if (!d.isNoop()) return false;
+            }
+            return true;
+        }
+    }
+
+    private abstract static class Delta {
+        abstract void undo(Score score);
+        abstract void redo(Score score);
+
+        int bytes() {
+            return DELTA_BYTES;
+        }
+
+        boolean isNoop() {
+            return false;
+        }
+
+        // fold a later change of the same field of the same symbol into this one
+        boolean absorb(Delta later) {
+            return false;
+        }
+
+        // structural changes (insert/delete, pages) stop the backwards merge search
+        boolean blocksMerge(Delta later) {
+            return true;
+        }
+    }
+
+    // a symbol inserted (inserted=true) or deleted; keeps the symbol object so it can be put back
+    private static final class SymbolDelta extends Delta {
+        final ScorePage page;
+        final Symbol symbol;
+        final int index;
+        final boolean inserted;
+
+        SymbolDelta(ScorePage page, Symbol symbol, int index, boolean inserted) {
+            this.page = page;
+            this.symbol = symbol;
+            this.index = index;
+            this.inserted = inserted;
+        }
+
+        @Override void undo(Score score) { apply(!inserted); }
+        @Override void redo(Score score) { apply(inserted); }
+
+        private void apply(boolean insert) {
+            if (insert) page.insertSymbol(Math.min(index, page.size()), symbol);
+            else page.removeSymbol(symbol);
+        }
+
+        @Override int bytes() { return DELTA_BYTES + SYMBOL_BYTES; }
+    }
+
+    // a field change of one symbol, addressed by id
+    private abstract static class FieldDelta extends Delta {
+        final ScorePage page;
+        final int id;
+
+        FieldDelta(ScorePage page, int id) {
+            this.page = page;
+            this.id = id;
+        }
+
+        Symbol target() {
+            return page.findById(id);
+        }
+
+        boolean sameField(Delta later) {
+            return later.getClass() == getClass() && ((FieldDelta) later).page == page && ((FieldDelta) later).id == id;
+        }
+
+        @Override
+        boolean blocksMerge(Delta later) {
+            // moves, pitch and accidental changes are independent, so the search may pass over them
+            return !(later instanceof FieldDelta);
+        }
+    }
+
+    private static final class MoveDelta extends FieldDelta {
+        final int oldX, oldY;
+        int newX, newY;
+
+        MoveDelta(ScorePage page, int id, int oldX, int oldY, int newX, int newY) {
+            super(page, id);
+            this.oldX = oldX;
+            this.oldY = oldY;
+            this.newX = newX;
+            this.newY = newY;
+        }
+
+        @Override void undo(Score score) { moveTo(oldX, oldY); }
+        @Override void redo(Score score) { moveTo(newX, newY); }
+
+        private void moveTo(int x, int y) {
+            Symbol s = target();
+            if (s != null) page.moveSymbol(s, x, y, false);
+        }
+
+        @Override boolean isNoop() { return oldX == newX && oldY == newY; }
+
+        @Override
+        boolean absorb(Delta later) {
+            if (!sameField(later)) return false;
+            newX = ((MoveDelta) later).newX;
+            newY = ((MoveDelta) later).newY;
+            return true;
+        }
+    }
+
+    private static final class PitchDelta extends FieldDelta {
+        final int oldStep;
+        int newStep;
+
+        PitchDelta(ScorePage page, int id, int oldStep, int newStep) {
+            super(page, id);
+            this.oldStep = oldStep;
+            this.newStep = newStep;
+        }
+
+        @Override void undo(Score score) { set(oldStep); }
+        @Override void redo(Score score) { set(newStep); }
+
+        private void set(int step) {
+            Symbol s = target();
+            if (s instanceof Note) page.setPitchStep((Note) s, step, false);
+        }
+
+        @Override boolean isNoop() { return oldStep == newStep; }
+
+        @Override
+        boolean absorb(Delta later) {
+            if (!sameField(later)) return false;
+            newStep = ((PitchDelta) later).newStep;
+            return true;
+        }
+    }
+
+    private static final class AccidentalDelta extends FieldDelta {
+        final Accidental oldAcc;
+        Accidental newAcc;
+
+        AccidentalDelta(ScorePage page, int id, Accidental oldAcc, Accidental newAcc) {
+            super(page, id);
+            this.oldAcc = oldAcc;
+            this.newAcc = newAcc;
+        }
+
+        @Override void undo(Score score) { set(oldAcc); }
+        @Override void redo(Score score) { set(newAcc); }
+
+        private void set(Accidental a) {
+            Symbol s = target();
+            if (s instanceof Note) page.setAccidental((Note) s, a);
+        }
+
+        @Override boolean isNoop() { return oldAcc == newAcc; }
+
+        @Override
+        boolean absorb(Delta later) {
+            if (!sameField(later)) return false;
+            newAcc = ((AccidentalDelta) later).newAcc;
+            return true;
+        }
+    }
+
+    private static final class StavesDelta extends Delta {
+        final ScorePage page;
+        final int oldCount;
+        final int newCount;
+
+        StavesDelta(ScorePage page, int oldCount, int newCount) {
+            this.page = page;
+            this.oldCount = oldCount;
+            this.newCount = newCount;
+        }
+
+        @Override void undo(Score score) { page.setNumStaves(oldCount); }
+        @Override void redo(Score score) { page.setNumStaves(newCount); }
+    }
+
+    // a page added (added=true) or removed; keeps the page (and so its symbols) while in history
+    private static final class PageDelta extends Delta {
+        final ScorePage page;
+        final int index;
+        final boolean added;
+
+        PageDelta(ScorePage page, int index, boolean added) {
+            this.page = page;
+            this.index = index;
+            this.added = added;
+        }
+
+        @Override void undo(Score score) { apply(score, !added); }
+        @Override void redo(Score score) { apply(score, added); }
+
+        private void apply(Score score, boolean add) {
+            if (add) {
+                score.insertPage(Math.min(index, score.getPageCount()), page);
+            } else {
+                int i = score.indexOf(page);
+                if (i >= 0 && score.getPageCount() > 1) score.removePage(i);
+            }
+        }
+
+        // an unloaded page only holds its (memory-mapped) source
+        @Override int bytes() { return DELTA_BYTES + (page.isLoaded() ? page.size() * SYMBOL_BYTES : 0); }
+    }
+}
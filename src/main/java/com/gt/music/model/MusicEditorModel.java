@@ -4,11 +4,11 @@ import com.gt.music.types.EditMode;
 import com.gt.music.types.NoteDuration;
 import com.gt.music.types.ToolType;
 
-import java.util.ArrayList;
-
 public class MusicEditorModel {
-    //Use ArrayList to store numStaves of each page
-    private ArrayList<Integer> stavesPerPage;
+    //The document: pages, staves and symbols
+    private final Score score;
+    //Undo/redo of everything done to the score
+    private final EditHistory history;
     //0-based index for the current page
     private int currentPage;
 
@@ -17,19 +17,39 @@ public class MusicEditorModel {
     private EditMode currentMode;
 
     public MusicEditorModel() {
-        //Initialize page list
-        this.stavesPerPage = new ArrayList<>();
-        this.stavesPerPage.add(4);//Default value
+        //Initialize with one page of default staves
+        this.score = new Score();
         this.currentPage = 0; //First page
+        this.history = new EditHistory(score);
+        //Keep the current page valid when pages come and go (e.g. undo of "New Page")
+        score.addScoreListener(e -> {
+            if (e.getType() == ScoreEvent.Type.PAGE_REMOVED && currentPage >= getPageCount()) {
+                currentPage = getPageCount() - 1;
+            } else if (e.getType() == ScoreEvent.Type.SCORE_REPLACED) {
+                currentPage = 0;
+            }
+        });
 
         this.currentTool = ToolType.NOTE;
         this.currentDuration = NoteDuration.QUARTER;
     }
 
+    public Score getScore() {
+        return score;
+    }
+
+    public EditHistory getHistory() {
+        return history;
+    }
+
+    public ScorePage getCurrentPage() {
+        return score.getPage(currentPage);
+    }
+
 
     //PAGE MANAGE
     public int getPageCount() {
-        return stavesPerPage.size();
+        return score.getPageCount();
     }
 
     public int getCurrentPageNumber() {
@@ -37,22 +57,22 @@ public class MusicEditorModel {
     }
 
     public void addNewPage() {
-        stavesPerPage.add(4);
+        score.addPage(new ScorePage(Score.DEFAULT_STAVES));
         currentPage = getPageCount() - 1;
     }
 
     public void deleteCurrentPage() {
         if (getPageCount() > 1) {
-            stavesPerPage.remove(currentPage);
-
-            if (currentPage >= getPageCount()) {
-                currentPage = getPageCount() - 1;
+            int removed = currentPage;
+            if (currentPage >= getPageCount() - 1) {
+                currentPage = getPageCount() - 2;
             }
+            score.removePage(removed);
         }
     }
 
     public void nextPage() {
-        if (currentPage <= getPageCount() - 1) {
+        if (currentPage < getPageCount() - 1) {
             currentPage++;
         }
     }
@@ -63,20 +83,27 @@ public class MusicEditorModel {
         }
     }
 
+    //Jump to a page by 0-based index (e.g. from the page navigator)
+    public void goToPage(int pageIndex) {
+        if (pageIndex >= 0 && pageIndex < getPageCount()) {
+            currentPage = pageIndex;
+        }
+    }
+
 
     //STAVES MANAGE
     public int getStaves() {
-        return stavesPerPage.get(currentPage);
+        return getCurrentPage().getNumStaves();
     }
 
     public void addStaff() {
-        stavesPerPage.set(currentPage, getStaves() + 1);
+        getCurrentPage().setNumStaves(getStaves() + 1);
     }
 
     public void deleteStaff() {
-        int numStave = stavesPerPage.get(currentPage);
+        int numStave = getStaves();
         if (numStave > 1) {
-            stavesPerPage.set(currentPage, numStave - 1);
+            getCurrentPage().setNumStaves(numStave - 1);
         }
     }
 
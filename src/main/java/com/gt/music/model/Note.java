@@ -3,20 +3,33 @@ import com.gt.music.types.Accidental;
 import com.gt.music.types.NoteDuration;
 
 public class Note extends Symbol {
-    private String pitch;
+    // diatonic step (see Pitch), Pitch.NONE until the note is placed on a staff
+    private int pitchStep = Pitch.NONE;
     private Accidental accidental = Accidental.NONE;
 
     public Note(int x, int y, NoteDuration duration) {
         super(x, y, duration);
-        this.pitch = "";
     }
 
-    // pitch
+    // pitch (numeric)
+    public int getPitchStep() {
+        return pitchStep;
+    }
+    public void setPitchStep(int pitchStep) {
+        this.pitchStep = Pitch.isValid(pitchStep) ? pitchStep : Pitch.NONE;
+    }
+
+    // MIDI key of pitch + accidental, -1 if not playable
+    public int getMidiKey() {
+        return Pitch.midiKey(getPitchStep(), getAccidental());
+    }
+
+    // pitch (display name), eg "G4"; "" when no pitch
     public String getPitch() {
-        return pitch;
+        return Pitch.name(getPitchStep());
     }
     public void setPitch(String pitch) {
-        this.pitch = pitch;
+        setPitchStep(Pitch.parseStep(pitch));
     }
 
     // Accidental
@@ -29,12 +42,12 @@ public class Note extends Symbol {
     // show accidental in status bar
     public String getDisplayPitchWithAccidentalSymbol() {
         // eg "G4♯" / "G4♭" / "G4"
-        return getPitch() + accidental.toSymbol();
+        return getPitch() + getAccidental().toSymbol();
     }
     public String getDisplayPitchWithAccidentalText() {
         // eg "G4 Sharp" / "G4 Flat" / "G4"
-        String t = accidental.toText();
+        String t = getAccidental().toText();
         return t.isEmpty() ? getPitch() : (getPitch() + " " + t);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package com.gt.music.model;
+
+import com.gt.music.types.Accidental;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Immutable state of a {@link ScorePage} at one point in time, from {@link ScorePage#snapshot()}.
+ * Taking one is O(1) (the page publishes a new persistent tree on every edit), and it can be read
+ * from any thread while the EDT keeps editing: no locks, no copying.
+ *
+ * Its symbols are frozen copies; their setters throw UnsupportedOperationException.
+ */
+public final class PageSnapshot {
+    private final int numStaves;
+    private final int revision;
+    private final PersistentSymbolTree symbols;
+    private final List<Symbol> symbolList;
+
+    PageSnapshot(int numStaves, int revision, PersistentSymbolTree symbols) {
+        this.numStaves = numStaves;
+        this.revision = revision;
+        this.symbols = symbols;
+        this.symbolList = new AbstractList<Symbol>() {
+            @Override
+            public Symbol get(int index) {
+                return symbols.getAt(index);
+            }
+
+            @Override
+            public int size() {
+                return symbols.size();
+            }
+
+            @Override
+            public Iterator<Symbol> iterator() {
+                return symbols.iterator();
+            }
+        };
+    }
+
+    public int getNumStaves() {
+        return numStaves;
+    }
+
+    // the page revision this snapshot was taken at (see ScorePage#getRevision)
+    public int getRevision() {
+        return revision;
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    /**
+     * Read-only list in id order, which is the paint order ({@link ScorePage#insertSymbol} only
+     * appends new ids and puts kept ones back between their neighbours). get(i) is O(log n),
+     * iteration is linear.
+     */
+    public List<Symbol> getSymbols() {
+        return symbolList;
+    }
+
+    public Symbol findById(int id) {
+        return symbols.get(id);
+    }
+
+    /** A new list sorted left to right (the order playback reads a page in). */
+    public List<Symbol> symbolsInReadingOrder() {
+        List<Symbol> out = new ArrayList<>(symbolList);
+        out.sort(Comparator.comparingInt(Symbol::getX));
+        return out;
+    }
+
+    // ---- frozen symbols ----
+
+    /** Immutable copy of a live symbol (id kept), or null for unknown symbol types. */
+    static Symbol freeze(Symbol s) {
+        if (s instanceof Note) return new FrozenNote((Note) s);
+        if (s instanceof Rest) return new FrozenRest(s);
+        return null;
+    }
+
+    private static final class FrozenNote extends Note {
+        FrozenNote(Note src) {
+            super(src.getX(), src.getY(), src.getDuration());
+            super.setPitchStep(src.getPitchStep());
+            super.setAccidental(src.getAccidental());
+            assignId(src.getId());
+        }
+
+        @Override public void setX(int x) { throw frozen(); }
+        @Override public void setY(int y) { throw frozen(); }
+        @Override public void setPitchStep(int pitchStep) { throw frozen(); }
+        @Override public void setAccidental(Accidental a) { throw frozen(); }
+    }
+
+    private static final class FrozenRest extends Rest {
+        FrozenRest(Symbol src) {
+            super(src.getX(), src.getY(), src.getDuration());
+            assignId(src.getId());
+        }
+
+        @Override public void setX(int x) { throw frozen(); }
+        @Override public void setY(int y) { throw frozen(); }
+    }
+
+    private static UnsupportedOperationException frozen() {
+        return new UnsupportedOperationException("symbols of a PageSnapshot are immutable");
+    }
+}
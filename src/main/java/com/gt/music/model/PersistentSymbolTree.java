@@ -0,0 +1,168 @@
+package com.gt.music.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable AVL tree from symbol id to symbol, with subtree sizes for positional access.
+ * put/remove copy only the O(log n) nodes on the search path and share everything else,
+ * so keeping every old version alive (one per snapshot) costs almost nothing.
+ * ScorePage keeps ids growing in paint order, so in-order traversal is the page's paint order.
+ */
+final class PersistentSymbolTree implements Iterable<Symbol> {
+    static final PersistentSymbolTree EMPTY = new PersistentSymbolTree(null);
+
+    private static final class Node {
+        final int key;
+        final Symbol value;
+        final Node left, right;
+        final int height, size;
+
+        Node(int key, Symbol value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private final Node root;
+
+    private PersistentSymbolTree(Node root) {
+        this.root = root;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    Symbol get(int key) {
+        Node n = root;
+        while (n != null) {
+            if (key < n.key) n = n.left;
+            else if (key > n.key) n = n.right;
+            else return n.value;
+        }
+        return null;
+    }
+
+    /** @return the index-th symbol in id order (0-based) */
+    Symbol getAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        }
+        Node n = root;
+        while (true) {
+            int leftSize = size(n.left);
+            if (index < leftSize) {
+                n = n.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                n = n.right;
+            } else {
+                return n.value;
+            }
+        }
+    }
+
+    PersistentSymbolTree put(int key, Symbol value) {
+        return new PersistentSymbolTree(put(root, key, value));
+    }
+
+    PersistentSymbolTree remove(int key) {
+        if (get(key) == null) return this;
+        return new PersistentSymbolTree(remove(root, key));
+    }
+
+    @Override
+    public Iterator<Symbol> iterator() {
+        return new Iterator<Symbol>() {
+            private final Deque<Node> stack = new ArrayDeque<>();
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node n) {
+                for (; n != null; n = n.left) stack.push(n);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Symbol next() {
+                if (stack.isEmpty()) throw new NoSuchElementException();
+                Node n = stack.pop();
+                pushLeft(n.right);
+                return n.value;
+            }
+        };
+    }
+
+    // ---- AVL internals ----
+
+    private static int height(Node n) {
+        return (n == null) ? 0 : n.height;
+    }
+
+    private static int size(Node n) {
+        return (n == null) ? 0 : n.size;
+    }
+
+    private static Node put(Node n, int key, Symbol value) {
+        if (n == null) return new Node(key, value, null, null);
+        if (key < n.key) return balance(n.key, n.value, put(n.left, key, value), n.right);
+        if (key > n.key) return balance(n.key, n.value, n.left, put(n.right, key, value));
+        return new Node(key, value, n.left, n.right);
+    }
+
+    private static Node remove(Node n, int key) {
+        if (key < n.key) return balance(n.key, n.value, remove(n.left, key), n.right);
+        if (key > n.key) return balance(n.key, n.value, n.left, remove(n.right, key));
+        if (n.left == null) return n.right;
+        if (n.right == null) return n.left;
+        Node min = n.right;
+        while (min.left != null) min = min.left;
+        return balance(min.key, min.value, n.left, removeMin(n.right));
+    }
+
+    private static Node removeMin(Node n) {
+        if (n.left == null) return n.right;
+        return balance(n.key, n.value, removeMin(n.left), n.right);
+    }
+
+    private static Node balance(int key, Symbol value, Node left, Node right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) >= height(left.right)) {
+                return rotateRight(key, value, left, right);
+            }
+            Node newLeft = rotateLeft(left.key, left.value, left.left, left.right);
+            return rotateRight(key, value, newLeft, right);
+        }
+        if (diff < -1) {
+            if (height(right.right) >= height(right.left)) {
+                return rotateLeft(key, value, left, right);
+            }
+            Node newRight = rotateRight(right.key, right.value, right.left, right.right);
+            return rotateLeft(key, value, left, newRight);
+        }
+        return new Node(key, value, left, right);
+    }
+
+    // (key,value) with children left/right, where left is the taller side
+    private static Node rotateRight(int key, Symbol value, Node left, Node right) {
+        return new Node(left.key, left.value, left.left, new Node(key, value, left.right, right));
+    }
+
+    private static Node rotateLeft(int key, Symbol value, Node left, Node right) {
+        return new Node(right.key, right.value, new Node(key, value, left, right.left), right.right);
+    }
+}
@@ -0,0 +1,127 @@
+// main/java/com/gt/music/model/Pitch.java
+package com.gt.music.model;
+
+import com.gt.music.types.Accidental;
+
+/**
+ * Compact numeric pitch.
+ * A pitch is a diatonic step: octave * 7 + letter index (C=0 ... B=6), e.g. G4 = 32.
+ * Together with an {@link Accidental} it resolves to a MIDI key number without any strings;
+ * names are only produced (from cached tables) for display.
+ */
+public final class Pitch {
+    private Pitch(){}
+
+    /** No pitch assigned (new note, or placed outside the mapped range). */
+    public static final int NONE = -1;
+
+    public static final int MIN_OCTAVE = 0;
+    public static final int MAX_OCTAVE = 9;
+    public static final int MAX_STEP = (MAX_OCTAVE + 1) * 7 - 1;
+
+    private static final char[] LETTERS = { 'C', 'D', 'E', 'F', 'G', 'A', 'B' };
+    private static final int[] SEMITONES = { 0, 2, 4, 5, 7, 9, 11 };
+
+    // step -> "G4", and [accidental][step] -> "G#4" / "Gb4" / "G4"
+    private static final String[] NAMES = new String[MAX_STEP + 1];
+    private static final String[][] MIDI_NAMES = new String[Accidental.values().length][MAX_STEP + 1];
+    static {
+        for (int step = 0; step <= MAX_STEP; step++) {
+            char letter = LETTERS[step % 7];
+            int octave = step / 7;
+            NAMES[step] = "" + letter + octave;
+            MIDI_NAMES[Accidental.NONE.ordinal()][step] = NAMES[step];
+            MIDI_NAMES[Accidental.SHARP.ordinal()][step] = letter + "#" + octave;
+            MIDI_NAMES[Accidental.FLAT.ordinal()][step] = letter + "b" + octave;
+        }
+    }
+
+    public static int step(char letter, int octave) {
+        int li = letterIndex(letter);
+        if (li < 0 || octave < MIN_OCTAVE || octave > MAX_OCTAVE) return NONE;
+        return octave * 7 + li;
+    }
+
+    /**
+     * @param name like "G4" / "C5" (a "#"/"b" after the letter is ignored; accidentals live on the note)
+     * @return diatonic step, or {@link #NONE} for "", "Outside" or anything unparsable
+     */
+    public static int parseStep(String name) {
+        if (name == null || name.length() < 2) return NONE;
+        int i = 1;
+        if (name.charAt(i) == '#' || name.charAt(i) == 'b') i++;
+        if (i != name.length() - 1) return NONE;
+        char o = name.charAt(i);
+        if (o < '0' || o > '9') return NONE;
+        return step(Character.toUpperCase(name.charAt(0)), o - '0');
+    }
+
+    public static boolean isValid(int step) {
+        return step >= 0 && step <= MAX_STEP;
+    }
+
+    public static int octave(int step) {
+        return step / 7;
+    }
+
+    public static char letter(int step) {
+        return LETTERS[step % 7];
+    }
+
+    /** @return e.g. "G4", or "" for {@link #NONE} */
+    public static String name(int step) {
+        return isValid(step) ? NAMES[step] : "";
+    }
+
+    /** @return e.g. "G#4" "Gb4" "G4", or "" for {@link #NONE} */
+    public static String midiName(int step, Accidental acc) {
+        if (!isValid(step)) return "";
+        if (acc == null) acc = Accidental.NONE;
+        return MIDI_NAMES[acc.ordinal()][step];
+    }
+
+    public static int accidentalOffset(Accidental acc) {
+        if (acc == null) return 0;
+        switch (acc) {
+            case SHARP: return 1;
+            case FLAT:  return -1;
+            default:    return 0;
+        }
+    }
+
+    /** @return MIDI key number (C4 = 60), or -1 if there is no playable pitch */
+    public static int midiKey(int step, Accidental acc) {
+        if (!isValid(step)) return -1;
+        int key = 12 * (step / 7 + 1) + SEMITONES[step % 7] + accidentalOffset(acc);
+        return (key < 0 || key > 127) ? -1 : key;
+    }
+
+    // semitone within the octave -> letter index of its sharp-side spelling (C, C#, D, D#, E, F, ...)
+    private static final int[] KEY_LETTERS = { 0, 0, 1, 1, 2, 3, 3, 4, 4, 5, 5, 6 };
+
+    /** Diatonic step of a MIDI key spelled with sharps (61 = C#4 -> step of C4); see {@link #accidentalForKey}. */
+    public static int stepForKey(int key) {
+        if (key < 12 || key > 127) return NONE;
+        int step = (key / 12 - 1) * 7 + KEY_LETTERS[key % 12];
+        return isValid(step) ? step : NONE;
+    }
+
+    /** SHARP for the black keys, NONE otherwise (the spelling {@link #stepForKey} uses). */
+    public static Accidental accidentalForKey(int key) {
+        int pc = Math.floorMod(key, 12);
+        return (SEMITONES[KEY_LETTERS[pc]] == pc) ? Accidental.NONE : Accidental.SHARP;
+    }
+
+    private static int letterIndex(char letter) {
+        switch (letter) {
+            case 'C': return 0;
+            case 'D': return 1;
+            case 'E': return 2;
+            case 'F': return 3;
+            case 'G': return 4;
+            case 'A': return 5;
+            case 'B': return 6;
+            default:  return -1;
+        }
+    }
+}
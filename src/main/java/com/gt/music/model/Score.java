@@ -0,0 +1,84 @@
+package com.gt.music.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The whole document: an ordered list of {@link ScorePage}s.
+ * Listeners registered here get the page list changes plus every event of every page,
+ * so a whole-score observer (navigator, exporter, autosave) subscribes once.
+ */
+public class Score {
+    public static final int DEFAULT_STAVES = 4;
+
+    private final List<ScorePage> pages = new ArrayList<>();
+    private final List<ScorePage> readOnlyPages = Collections.unmodifiableList(pages);
+    private final List<ScoreListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScoreListener pageForwarder = this::fire;
+
+    public Score() {
+        addPage(new ScorePage(DEFAULT_STAVES));
+    }
+
+    public List<ScorePage> getPages() {
+        return readOnlyPages;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public ScorePage getPage(int index) {
+        return pages.get(index);
+    }
+
+    public int indexOf(ScorePage page) {
+        return pages.indexOf(page);
+    }
+
+    public void addPage(ScorePage page) {
+        insertPage(pages.size(), page);
+    }
+
+    public void insertPage(int index, ScorePage page) {
+        pages.add(index, page);
+        page.addScoreListener(pageForwarder);
+        fire(new ScoreEvent(ScoreEvent.Type.PAGE_ADDED, page, null, index, false));
+    }
+
+    public ScorePage removePage(int index) {
+        ScorePage page = pages.remove(index);
+        page.removeScoreListener(pageForwarder);
+        fire(new ScoreEvent(ScoreEvent.Type.PAGE_REMOVED, page, null, index, false));
+        return page;
+    }
+
+    /**
+     * Replace the whole page list (e.g. after opening a file) with a single SCORE_REPLACED event.
+     * An empty list leaves one blank page.
+     */
+    public void replacePages(List<ScorePage> newPages) {
+        for (ScorePage page : pages) page.removeScoreListener(pageForwarder);
+        pages.clear();
+        pages.addAll(newPages);
+        if (pages.isEmpty()) pages.add(new ScorePage(DEFAULT_STAVES));
+        for (ScorePage page : pages) page.addScoreListener(pageForwarder);
+        fire(new ScoreEvent(ScoreEvent.Type.SCORE_REPLACED, null, null, -1, false));
+    }
+
+    public void addScoreListener(ScoreListener l) {
+        listeners.add(l);
+    }
+
+    public void removeScoreListener(ScoreListener l) {
+        listeners.remove(l);
+    }
+
+    private void fire(ScoreEvent e) {
+        for (ScoreListener l : listeners) {
+            l.scoreChanged(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.gt.music.model;
+
+import com.gt.music.types.Accidental;
+
+/**
+ * One fine-grained change to a {@link Score}: a page added/removed, or one symbol / staff count
+ * changed inside a page. Events are delivered synchronously on the thread that made the change (the EDT).
+ */
+public final class ScoreEvent {
+    public enum Type {
+        PAGE_ADDED, PAGE_REMOVED,
+        // every page was replaced at once (a file was opened)
+        SCORE_REPLACED,
+        STAVES_CHANGED,
+        SYMBOL_ADDED, SYMBOL_REMOVED, SYMBOL_MOVED,
+        PITCH_CHANGED, ACCIDENTAL_CHANGED
+    }
+
+    private final Type type;
+    private final ScorePage page;
+    private final Symbol symbol;
+    private final int index;
+    private final boolean adjusting;
+    // state before the change (for undo): old x/y of a move; old pitch step, accidental ordinal or staff count
+    private final int oldX;
+    private final int oldY;
+    private final int oldValue;
+
+    ScoreEvent(Type type, ScorePage page, Symbol symbol, int index, boolean adjusting) {
+        this(type, page, symbol, index, adjusting, 0, 0, 0);
+    }
+
+    ScoreEvent(Type type, ScorePage page, Symbol symbol, int index, boolean adjusting,
+               int oldX, int oldY, int oldValue) {
+        this.type = type;
+        this.page = page;
+        this.symbol = symbol;
+        this.index = index;
+        this.adjusting = adjusting;
+        this.oldX = oldX;
+        this.oldY = oldY;
+        this.oldValue = oldValue;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public ScorePage getPage() {
+        return page;
+    }
+
+    // the symbol concerned, null for page / staff events
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    // page index for PAGE_ADDED/PAGE_REMOVED, symbol index for SYMBOL_ADDED/SYMBOL_REMOVED, else -1
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * True for the intermediate steps of a continuous gesture (drag frames).
+     * The gesture always ends with a non-adjusting event, so caches and thumbnails can ignore these.
+     */
+    public boolean isAdjusting() {
+        return adjusting;
+    }
+
+    // SYMBOL_MOVED: position before this move
+    public int getOldX() {
+        return oldX;
+    }
+
+    public int getOldY() {
+        return oldY;
+    }
+
+    // PITCH_CHANGED
+    public int getOldPitchStep() {
+        return oldValue;
+    }
+
+    // ACCIDENTAL_CHANGED
+    public Accidental getOldAccidental() {
+        return Accidental.values()[oldValue];
+    }
+
+    // STAVES_CHANGED
+    public int getOldNumStaves() {
+        return oldValue;
+    }
+
+    @Override
+    public String toString() {
+        return "ScoreEvent[" + type + (symbol != null ? " #" + symbol.getId() : "")
+                + " index=" + index + (adjusting ? " adjusting" : "") + "]";
+    }
+}
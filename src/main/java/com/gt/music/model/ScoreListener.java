@@ -0,0 +1,5 @@
+package com.gt.music.model;
+
+public interface ScoreListener {
+    void scoreChanged(ScoreEvent event);
+}
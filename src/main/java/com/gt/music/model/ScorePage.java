@@ -0,0 +1,300 @@
+package com.gt.music.model;
+
+import com.gt.music.types.Accidental;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One page of a {@link Score}: its staff count and the symbols drawn on it (in insertion order).
+ * Every change goes through the methods here and is announced as a {@link ScoreEvent}, so views,
+ * thumbnails and exporters never have to own or poll the data.
+ *
+ * Mutate only on the EDT. Every edit also publishes a new immutable {@link PageSnapshot}
+ * (a persistent tree that shares all unchanged nodes with the previous one), so playback, export
+ * and rendering grab {@link #snapshot()} in O(1) from any thread and never see a half-done edit.
+ *
+ * A page opened from a file may start unloaded ({@link #lazy}): its symbols are decoded by its
+ * {@link Source} the first time anything asks for them, so untouched pages cost almost nothing.
+ * If that fails the page is marked unreadable ({@link #getLoadFailure()}) and behaves as an empty
+ * page, so the failure never escapes into whoever happened to touch it first (often the EDT).
+ * Until it is edited, it keeps its source, so saving writes its original bytes back unchanged.
+ */
+public class ScorePage {
+    /**
+     * Produces the symbols of a lazily loaded page, in paint order (ids are assigned on load).
+     * load() throws UncheckedIOException when the page cannot be read.
+     */
+    public interface Source {
+        List<Symbol> load();
+    }
+
+    private int numStaves;
+    private final List<Symbol> symbols = new ArrayList<>();
+    private final List<Symbol> readOnlySymbols = Collections.unmodifiableList(symbols);
+    private final Map<Integer, Symbol> byId = new HashMap<>();
+    private int nextId = 1;
+    // bumped on every finished (non-adjusting) change; caches compare it to decide whether they are stale
+    private int revision = 0;
+    private final List<ScoreListener> listeners = new CopyOnWriteArrayList<>();
+    // frozen copies of the symbols, keyed by id; replaced (path copy) on every edit
+    private PersistentSymbolTree frozen = PersistentSymbolTree.EMPTY;
+    private volatile PageSnapshot snapshot;
+    // non-null until the page content has been loaded
+    private volatile Source source;
+    // why loading failed, null if it did not; the page is then empty but keeps its source until edited
+    private volatile IOException loadFailure;
+    private volatile Source unreadable;
+
+    public ScorePage(int numStaves) {
+        this.numStaves = Math.max(1, numStaves);
+        this.snapshot = new PageSnapshot(this.numStaves, revision, frozen);
+    }
+
+    /** A page whose symbols are loaded from the source on first use. */
+    public static ScorePage lazy(int numStaves, Source source) {
+        ScorePage page = new ScorePage(numStaves);
+        page.snapshot = null;
+        page.source = source;
+        return page;
+    }
+
+    public boolean isLoaded() {
+        return source == null;
+    }
+
+    // the source still waiting to be loaded, or that failed to load and has not been edited since;
+    // null once loaded (lets a saver copy it without decoding)
+    public Source getPendingSource() {
+        Source s = source;
+        return (s != null) ? s : unreadable;
+    }
+
+    /** Why this page could not be loaded (it is shown empty), or null if it loaded fine or is not loaded yet. */
+    public IOException getLoadFailure() {
+        return loadFailure;
+    }
+
+    /**
+     * Swap the source of a page that is still pending, e.g. for a copy of its bytes when the file it
+     * is mapped from is about to be overwritten. Does nothing (returns false) once the page is loaded,
+     * unless it failed to load and has not been edited since.
+     */
+    public synchronized boolean replacePendingSource(Source expected, Source replacement) {
+        if (expected == null || replacement == null) return false;
+        if (source == expected) {
+            source = replacement;
+        } else if (unreadable == expected) {
+            unreadable = replacement;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /** The current state as an immutable snapshot: O(1) once loaded, callable from any thread. */
+    public PageSnapshot snapshot() {
+        PageSnapshot s = snapshot;
+        if (s == null) {
+            ensureLoaded();
+            s = snapshot;
+        }
+        return s;
+    }
+
+    public int getNumStaves() {
+        return numStaves;
+    }
+
+    public void setNumStaves(int count) {
+        // a pending page is loaded first, so the snapshot published below still has its symbols
+        ensureLoaded();
+        count = Math.max(1, count);
+        if (count == numStaves) return;
+        int old = numStaves;
+        numStaves = count;
+        fire(new ScoreEvent(ScoreEvent.Type.STAVES_CHANGED, this, null, -1, false, 0, 0, old));
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    // read-only live list, in insertion (= paint) order
+    public List<Symbol> getSymbols() {
+        ensureLoaded();
+        return readOnlySymbols;
+    }
+
+    public int size() {
+        ensureLoaded();
+        return symbols.size();
+    }
+
+    public int indexOf(Symbol s) {
+        ensureLoaded();
+        return symbols.indexOf(s);
+    }
+
+    public Symbol findById(int id) {
+        ensureLoaded();
+        return byId.get(id);
+    }
+
+    // SYMBOLS
+    public void addSymbol(Symbol s) {
+        ensureLoaded();   // before reading the size: a pending page is still empty
+        insertSymbol(symbols.size(), s);
+    }
+
+    /**
+     * Insert at a given paint-order position. Ids grow in paint order (snapshots list symbols by id),
+     * so a symbol without an id can only be appended and gets the next free one, and a symbol that
+     * keeps its id (undo putting it back) must go between a smaller and a larger one.
+     *
+     * @throws IllegalArgumentException if the symbol would break that order
+     */
+    public void insertSymbol(int index, Symbol s) {
+        if (s == null) return;
+        ensureLoaded();
+        if (index < 0 || index > symbols.size()) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + symbols.size());
+        }
+        int id = s.getId();
+        if (id == 0) {
+            if (index < symbols.size()) {
+                throw new IllegalArgumentException("a new symbol can only be appended, not inserted at " + index);
+            }
+            s.assignId(nextId++);
+        } else {
+            int before = (index > 0) ? symbols.get(index - 1).getId() : 0;
+            int after = (index < symbols.size()) ? symbols.get(index).getId() : Integer.MAX_VALUE;
+            if (id <= before || id >= after || byId.containsKey(id)) {
+                throw new IllegalArgumentException("symbol #" + id + " does not fit between #" + before
+                        + " and #" + after);
+            }
+            nextId = Math.max(nextId, id + 1);
+        }
+        symbols.add(index, s);
+        byId.put(s.getId(), s);
+        refreeze(s);
+        fire(ScoreEvent.Type.SYMBOL_ADDED, s, index, false);
+    }
+
+    public boolean removeSymbol(Symbol s) {
+        ensureLoaded();
+        int index = symbols.indexOf(s);
+        if (index < 0) return false;
+        symbols.remove(index);
+        byId.remove(s.getId());
+        frozen = frozen.remove(s.getId());
+        fire(ScoreEvent.Type.SYMBOL_REMOVED, s, index, false);
+        return true;
+    }
+
+    /** @return how many of the given symbols were on this page */
+    public int removeSymbols(Collection<? extends Symbol> toRemove) {
+        int removed = 0;
+        for (Symbol s : toRemove) {
+            if (removeSymbol(s)) removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Move a symbol. Drags pass adjusting=true for every frame and finish with one
+     * adjusting=false call at the drop position.
+     */
+    public void moveSymbol(Symbol s, int x, int y, boolean adjusting) {
+        if (!contains(s)) return;
+        int oldX = s.getX(), oldY = s.getY();
+        if (oldX == x && oldY == y && adjusting) return;
+        s.setX(x);
+        s.setY(y);
+        refreeze(s);
+        fire(new ScoreEvent(ScoreEvent.Type.SYMBOL_MOVED, this, s, -1, adjusting, oldX, oldY, 0));
+    }
+
+    public void setPitchStep(Note n, int pitchStep, boolean adjusting) {
+        if (!contains(n) || n.getPitchStep() == pitchStep) return;
+        int old = n.getPitchStep();
+        n.setPitchStep(pitchStep);
+        refreeze(n);
+        fire(new ScoreEvent(ScoreEvent.Type.PITCH_CHANGED, this, n, -1, adjusting, 0, 0, old));
+    }
+
+    public void setAccidental(Note n, Accidental a) {
+        if (a == null) a = Accidental.NONE;
+        if (!contains(n) || n.getAccidental() == a) return;
+        Accidental old = n.getAccidental();
+        n.setAccidental(a);
+        refreeze(n);
+        fire(new ScoreEvent(ScoreEvent.Type.ACCIDENTAL_CHANGED, this, n, -1, false, 0, 0, old.ordinal()));
+    }
+
+    // LISTENERS
+    public void addScoreListener(ScoreListener l) {
+        listeners.add(l);
+    }
+
+    public void removeScoreListener(ScoreListener l) {
+        listeners.remove(l);
+    }
+
+    private boolean contains(Symbol s) {
+        ensureLoaded();
+        return s != null && s.getId() != 0 && byId.get(s.getId()) == s;
+    }
+
+    private void fire(ScoreEvent.Type type, Symbol s, int index, boolean adjusting) {
+        fire(new ScoreEvent(type, this, s, index, adjusting));
+    }
+
+    /** Decode a lazy page once; loading is not an edit, so no event is fired and the revision stays. */
+    private void ensureLoaded() {
+        if (source == null) return;
+        synchronized (this) {
+            Source src = source;
+            if (src == null) return;
+            List<Symbol> loaded;
+            try {
+                loaded = src.load();
+            } catch (UncheckedIOException e) {
+                loaded = Collections.emptyList();
+                loadFailure = e.getCause();
+                unreadable = src;
+            }
+            for (Symbol s : loaded) {
+                if (s.getId() == 0) s.assignId(nextId++);
+                else nextId = Math.max(nextId, s.getId() + 1);
+                symbols.add(s);
+                byId.put(s.getId(), s);
+                refreeze(s);
+            }
+            snapshot = new PageSnapshot(numStaves, revision, frozen);
+            source = null;
+        }
+    }
+
+    private void refreeze(Symbol s) {
+        Symbol f = PageSnapshot.freeze(s);
+        if (f != null) frozen = frozen.put(s.getId(), f);
+    }
+
+    private void fire(ScoreEvent e) {
+        if (!e.isAdjusting()) revision++;
+        unreadable = null;   // edited: save what is on the page now
+        // publish before notifying, so listeners that take a snapshot already see this edit
+        snapshot = new PageSnapshot(numStaves, revision, frozen);
+        for (ScoreListener l : listeners) {
+            l.scoreChanged(e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.gt.music.model;
+
+/**
+ * staff 纵向布局的 O(1) 换算：所有 staff 等间距排列（第 i 条顶线 = topPadding + i * (staffHeight + staffSpacing)），
+ * 所以“y 属于哪条 staff”可以直接算出来，不需要逐条遍历；几百条 staff 的页面也是常数时间。
+ */
+public final class StaffGeometry {
+    private StaffGeometry() {
+    }
+
+    public static int staffTopY(int index, int topPadding, int staffHeight, int staffSpacing) {
+        return topPadding + index * (staffHeight + staffSpacing);
+    }
+
+    /**
+     * 中线距离 y 最近的 staff 下标（与逐条比较 |y - center| 取最小、平局取靠上者的结果一致），钳到 [0, numStaves-1]。
+     */
+    public static int nearestStaffIndex(int y, int topPadding, int staffHeight, int staffSpacing, int numStaves) {
+        if (numStaves <= 1) return 0;
+        int pitch = staffHeight + staffSpacing;
+        int d = y - (topPadding + staffHeight / 2);   // 相对第 0 条中线
+        // i = ceil(d / pitch - 1/2)：恰好在两条中线正中间时取靠上的那条
+        int i = ceilDiv(2 * d - pitch, 2 * pitch);
+        return clamp(i, numStaves);
+    }
+
+    /**
+     * “音头中心 + 半间距缓冲”归属：staff 上下各扩半个空白形成带子，y 落在哪条带子就属于哪条；
+     * 两条带子的交界点归靠上者；超出所有带子时钳到最上/最下一条。
+     */
+    public static int bandStaffIndex(int y, int topPadding, int staffHeight, int staffSpacing, int numStaves) {
+        if (numStaves <= 1) return 0;
+        int pitch = staffHeight + staffSpacing;
+        int halfGap = staffSpacing / 2;
+        int bandLength = staffHeight + 2 * halfGap;   // 带子长度（含两端）
+        int e = y - (topPadding - halfGap);           // 相对第 0 条带子的顶端
+        if (e < 0) return 0;
+
+        int i = Math.floorDiv(e, pitch);
+        int r = e - i * pitch;
+        if (r == 0 && i > 0 && bandLength >= pitch) {
+            i--;                                      // 恰在交界：靠上的带子优先
+        } else if (r > bandLength) {
+            return numStaves - 1;                     // 落在带子之间的缝里（staffSpacing 为奇数时）
+        }
+        return Math.min(i, numStaves - 1);
+    }
+
+    /** 相对 staff 顶线的半线距步数（四舍五入，可为负或超出五线范围） */
+    public static int halfLineStep(int y, int staffTopY, double halfLineSpacing) {
+        return (int) Math.round((y - staffTopY) / halfLineSpacing);
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    private static int clamp(int i, int numStaves) {
+        if (i < 0) return 0;
+        return Math.min(i, numStaves - 1);
+    }
+}
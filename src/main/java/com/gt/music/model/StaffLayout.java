@@ -0,0 +1,121 @@
+package com.gt.music.model;
+
+import com.gt.music.types.NoteDuration;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Page geometry shared by the editor view and the code that places symbols without a mouse
+ * (importers, exporters, playback). The rules are the ones the view applies on drop:
+ * a Note's (x,y) is its sprite's top-left corner and its notehead centre is y + sprite height
+ * - line spacing/2; a Rest is centred on the staff's middle line.
+ *
+ * Sprite heights come from the headers of the images the view draws, scaled the same way,
+ * so nothing here needs AWT and it works headless.
+ */
+public final class StaffLayout {
+    private StaffLayout() {
+    }
+
+    public static final int STAFF_WIDTH = 1000;
+    public static final int STAFF_HEIGHT = 60;
+    public static final int TOP_PADDING = 60;
+    public static final int LEFT_PADDING = 60;
+    public static final int STAFF_SPACING = 100;
+    /** Scale applied to the note and rest sprites. */
+    public static final double SPRITE_SCALE = 1.5;
+    public static final double HALF_LINE_SPACING = (double) STAFF_HEIGHT / 8.0;
+
+    /** First x a symbol can take, after the clef and time signature. */
+    public static final int FIRST_X = LEFT_PADDING + 130;
+    /** Largest x of a symbol on a line (leaves room for the end bar and the sprite). */
+    public static final int LAST_X = LEFT_PADDING + STAFF_WIDTH - 40;
+
+    // top line = F5; pitches outside the view's table (G3..D6) are folded by octaves to be drawn, not changed
+    private static final int TOP_LINE_STEP = Pitch.step('F', 5);
+    private static final int MIN_HALF_STEP = -5;   // D6
+    private static final int MAX_HALF_STEP = 13;   // G3
+    private static final int LINE_SPACING = (int) Math.round(2 * HALF_LINE_SPACING);
+
+    // loaded on first use
+    private static final class Sprites {
+        static final int[] NOTE_HEIGHTS = heights("Note");
+        static final int[] REST_HEIGHTS = heights("Rest");
+    }
+
+    public static int staffTopY(int staffIndex) {
+        return StaffGeometry.staffTopY(staffIndex, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING);
+    }
+
+    /** The y a Note needs to sound pitchStep on staff staffIndex (Pitch.NONE goes on the middle line). */
+    public static int noteY(NoteDuration duration, int pitchStep, int staffIndex) {
+        int halfSteps = Pitch.isValid(pitchStep) ? TOP_LINE_STEP - pitchStep : 4;
+        while (halfSteps > MAX_HALF_STEP) halfSteps -= 7;
+        while (halfSteps < MIN_HALF_STEP) halfSteps += 7;
+        int headY = (int) Math.round(staffTopY(staffIndex) + halfSteps * HALF_LINE_SPACING);
+        return headY - (spriteHeight(true, duration) - LINE_SPACING / 2);
+    }
+
+    /** The y of a Rest on staff staffIndex (sprite centred on the middle line). */
+    public static int restY(NoteDuration duration, int staffIndex) {
+        int midY = staffTopY(staffIndex) + STAFF_HEIGHT / 2;
+        return midY - spriteHeight(false, duration) / 2;
+    }
+
+    /** Staff a symbol belongs to: by notehead centre for a Note, by sprite centre for a Rest (the drop rule). */
+    public static int staffIndexOf(Symbol s, int numStaves) {
+        int h = spriteHeight(s);
+        int y = (s instanceof Note) ? s.getY() + h - LINE_SPACING / 2 : s.getY() + h / 2;
+        return StaffGeometry.bandStaffIndex(y, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING, numStaves);
+    }
+
+    /** Height of the sprite the view draws for a symbol, 0 when it has none. */
+    public static int spriteHeight(Symbol s) {
+        if (s instanceof Note) return spriteHeight(true, s.getDuration());
+        if (s instanceof Rest) return spriteHeight(false, s.getDuration());
+        return 0;
+    }
+
+    private static int spriteHeight(boolean note, NoteDuration duration) {
+        if (duration == null) return 0;
+        int[] heights = note ? Sprites.NOTE_HEIGHTS : Sprites.REST_HEIGHTS;
+        return heights[duration.ordinal()];
+    }
+
+    // indexed by NoteDuration ordinal, from quarterNote.png etc.; 0 when an image cannot be read
+    private static int[] heights(String kind) {
+        NoteDuration[] durations = NoteDuration.values();
+        int[] out = new int[durations.length];
+        for (int i = 0; i < durations.length; i++) {
+            String path = "/images/IMGmaterials/" + durations[i].name().toLowerCase(Locale.ROOT) + kind + ".png";
+            try (InputStream in = StaffLayout.class.getResourceAsStream(path)) {
+                if (in == null) throw new IOException("missing " + path);
+                out[i] = Math.max(1, (int) (imageHeight(in) * SPRITE_SCALE));
+            } catch (IOException e) {
+                System.err.println("Unable to read sprite size: " + e);
+            }
+        }
+        return out;
+    }
+
+    // reads only the header, the pixels are never decoded
+    private static int imageHeight(InputStream in) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = (stream == null) ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) throw new IOException("unknown image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream);
+                return reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -5,6 +5,8 @@ public abstract class Symbol {
     protected int x;
     protected int y;
     protected NoteDuration duration;
+    // stable id inside its ScorePage, 0 until the symbol is added to a page
+    private int id;
 
     public Symbol(int x, int y, NoteDuration duration) {
         this.x = x;
@@ -31,4 +33,12 @@ public abstract class Symbol {
     public NoteDuration getDuration() {
         return duration;
     }
-}
\ No newline at end of file
+
+    public int getId() {
+        return id;
+    }
+
+    void assignId(int id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,54 @@
+package com.gt.music.model.playback;
+
+/**
+ * 播放时每个事件“实际发出时刻 - 计划时刻”的统计：10 µs 一格的直方图（10 ms 以上归最后一格），
+ * 记录是 O(1) 且不分配内存，可以在播放线程里逐事件调用；播放结束后再读。
+ */
+public final class LatenessStats {
+    private static final long BUCKET_NS = 10_000;
+    private static final int BUCKETS = 1000;
+
+    private final long[] histogram = new long[BUCKETS + 1];
+    private long count;
+    private long sumNs;
+    private long maxNs;
+
+    public void record(long latenessNs) {
+        if (latenessNs < 0) latenessNs = 0;
+        int b = (int) Math.min(BUCKETS, latenessNs / BUCKET_NS);
+        histogram[b]++;
+        count++;
+        sumNs += latenessNs;
+        if (latenessNs > maxNs) maxNs = latenessNs;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return maxNs;
+    }
+
+    public long getMeanNanos() {
+        return (count == 0) ? 0 : sumNs / count;
+    }
+
+    /** @param p 0..1，例如 0.99；返回该分位所在格子的上沿（最多高估 10 µs） */
+    public long getPercentileNanos(double p) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(p * count);
+        long seen = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            seen += histogram[b];
+            if (seen >= rank) return (b == BUCKETS) ? maxNs : Math.min(maxNs, (b + 1) * BUCKET_NS);
+        }
+        return maxNs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d events, lateness mean %.3f ms, p99 %.3f ms, max %.3f ms",
+                count, getMeanNanos() / 1e6, getPercentileNanos(0.99) / 1e6, maxNs / 1e6);
+    }
+}
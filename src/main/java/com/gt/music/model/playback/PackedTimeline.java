@@ -0,0 +1,88 @@
+package com.gt.music.model.playback;
+
+import java.util.Arrays;
+
+/**
+ * 编译好的播放时间线：每个事件压成一个 long，按数值排序就是播放顺序。
+ *
+ * <pre>
+ *  63            20   19     18..15    14..8   7..0
+ * [ atMs (44 bit) ][ on ][ channel ][  key  ][ velocity ]
+ * </pre>
+ * on = 0 是 note-off，所以同一时刻先 STOP 再 START（避免卡音）。channel 是声部（staff），
+ * 播放时由 PlaybackEngine 换成该声部自己的 MIDI_Player（通道）。播放循环只读这个数组，不分配对象。
+ * 时刻是绝对毫秒（多页播放时已经加上了前面各页的时长），{@link #getEndMs()} 是下一页的起点。
+ */
+public final class PackedTimeline {
+    /** 与 MIDI_Player 预先做好的消息相同的力度 */
+    public static final int DEFAULT_VELOCITY = 120;
+
+    public static final PackedTimeline EMPTY = new PackedTimeline(new long[0], 0, 0);
+
+    private final long[] events;
+    private final int size;
+    private final long endMs;
+
+    private PackedTimeline(long[] events, int size, long endMs) {
+        this.events = events;
+        this.size = size;
+        this.endMs = endMs;
+    }
+
+    public static long encode(long atMs, boolean on, int channel, int key, int velocity) {
+        return (atMs << 20) | ((on ? 1L : 0L) << 19) | ((long) (channel & 0xF) << 15)
+                | ((long) (key & 0x7F) << 8) | (velocity & 0x7F);
+    }
+
+    public static long atMs(long event) {
+        return event >>> 20;
+    }
+
+    public static boolean isNoteOn(long event) {
+        return ((event >>> 19) & 1) != 0;
+    }
+
+    public static int channel(long event) {
+        return (int) (event >>> 15) & 0xF;
+    }
+
+    public static int key(long event) {
+        return (int) (event >>> 8) & 0x7F;
+    }
+
+    public static int velocity(long event) {
+        return (int) event & 0x7F;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+        return events[index];
+    }
+
+    /** 结束时刻（含末尾休止和最后一个音的余音） */
+    public long getEndMs() {
+        return endMs;
+    }
+
+    /** 追加事件（顺序任意），build 时一次原始类型排序 */
+    public static final class Builder {
+        private long[] events = new long[64];
+        private int size;
+
+        public Builder add(long atMs, boolean on, int channel, int key, int velocity) {
+            if (size == events.length) events = Arrays.copyOf(events, size * 2);
+            events[size++] = encode(atMs, on, channel, key, velocity);
+            return this;
+        }
+
+        public PackedTimeline build(long endMs) {
+            Arrays.sort(events, 0, size);
+            long last = (size == 0) ? 0 : atMs(events[size - 1]);
+            return new PackedTimeline(events, size, Math.max(endMs, last));
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.gt.music.model.playback;
+
+import com.gt.music.model.DurationMs;
+import com.gt.music.model.Note;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.Rest;
+import com.gt.music.model.ScoreEvent;
+import com.gt.music.model.ScoreListener;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.Symbol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一页的播放时间线，随编辑增量维护（监听页面事件，只在 EDT 上使用），结果与
+ * {@link TimelineBuilder#pack} 完全相同。
+ *
+ * 符号按阅读顺序 (x, id) 放在 TreeMap 里，再分成“列”：一个休止，或从一个音开始、x 在容差内的连续几个音（和弦）。
+ * 增删/水平移动一个符号只重新分组它所在的那一列，以及贪心分组因此错开的后面几列——一旦新列的起点
+ * 与旧列重合，后面就不用动；改音高/升降、上下移动（可能换了 staff，也就换了声部）只重算那一列，
+ * staff 数变化时各列的声部整体重算一遍。各列的起始时刻不存下来，
+ * 播放时按列累加，所以前面的时值变化不需要改动后面的任何东西。
+ *
+ * Play 取 {@link #snapshot()}：列对象本身不可变，快照只是列数组的一次拷贝（没改动时直接复用），
+ * 在播放线程上再编译成 {@link PackedTimeline}。后面的页没有增量时间线，编译线程用 {@link #snapshotOf} 从页面快照直接建。
+ * 播放光标在 EDT 上用播放的那个快照把时刻换回位置（{@link Snapshot#xAt}、{@link Snapshot#soundingAt}）。
+ */
+public final class PageTimeline implements ScoreListener {
+    private final ScorePage page;
+    private final int chordTolerancePx;
+    private final TreeMap<Long, Symbol> byPosition = new TreeMap<>();   // reading order
+    private final TreeMap<Long, Column> columns = new TreeMap<>();      // keyed by the first symbol's position
+    private Snapshot snapshot;
+
+    private PageTimeline(ScorePage page, int chordTolerancePx) {
+        this.page = page;
+        this.chordTolerancePx = chordTolerancePx;
+    }
+
+    /** 为 page 建立时间线并开始跟踪它的编辑；不再需要时调用 {@link #detach()} */
+    public static PageTimeline attach(ScorePage page, int chordTolerancePx) {
+        PageTimeline t = new PageTimeline(page, chordTolerancePx);
+        for (Symbol s : page.getSymbols()) t.byPosition.put(position(s.getX(), s), s);
+        if (!t.byPosition.isEmpty()) t.regroup(t.byPosition.firstKey(), Long.MAX_VALUE);
+        page.addScoreListener(t);
+        return t;
+    }
+
+    /**
+     * 不跟踪编辑、直接从页面快照建的时间线快照，与 attach 后取的 {@link #snapshot()} 相同（成员是快照里的符号）。
+     * 不碰 ScorePage，可以在任何线程上调用；后面的页由编译线程这样建，光标查询仍只在 EDT 上做。
+     */
+    public static Snapshot snapshotOf(PageSnapshot page, int chordTolerancePx) {
+        TreeMap<Long, Symbol> byPosition = new TreeMap<>();
+        for (Symbol s : page.getSymbols()) byPosition.put(position(s.getX(), s), s);
+        List<Column> columns = new ArrayList<>();
+        Iterator<Map.Entry<Long, Symbol>> it = byPosition.entrySet().iterator();
+        Map.Entry<Long, Symbol> next = it.hasNext() ? it.next() : null;
+        while (next != null) {
+            long pos = next.getKey();
+            List<Symbol> members = new ArrayList<>();
+            next = takeColumn(next, it, chordTolerancePx, members);
+            columns.add(new Column(pos, members.toArray(new Symbol[0]), page.getNumStaves()));
+        }
+        return new Snapshot(columns.toArray(new Column[0]));
+    }
+
+    public void detach() {
+        page.removeScoreListener(this);
+    }
+
+    public ScorePage getPage() {
+        return page;
+    }
+
+    public Snapshot snapshot() {
+        if (snapshot == null) snapshot = new Snapshot(columns.values().toArray(new Column[0]));
+        return snapshot;
+    }
+
+    @Override
+    public void scoreChanged(ScoreEvent e) {
+        Symbol s = e.getSymbol();
+        switch (e.getType()) {
+            case SYMBOL_ADDED:
+                insert(s, s.getX());
+                break;
+            case SYMBOL_REMOVED:
+                remove(s, s.getX());
+                break;
+            case SYMBOL_MOVED:
+                if (e.getOldX() == s.getX()) {
+                    recompute(s);   // same column; the staff (part) may have changed
+                    break;
+                }
+                remove(s, e.getOldX());
+                insert(s, s.getX());
+                break;
+            case PITCH_CHANGED:
+            case ACCIDENTAL_CHANGED:
+                recompute(s);
+                break;
+            case STAVES_CHANGED:
+                for (Map.Entry<Long, Column> c : columns.entrySet()) {
+                    c.setValue(new Column(c.getKey(), c.getValue().members, page.getNumStaves()));
+                }
+                break;
+            default:
+                return;
+        }
+        snapshot = null;
+    }
+
+    // x in the high half, id in the low half: Long order is reading order (x, then paint order)
+    private static long position(int x, Symbol s) {
+        return ((long) x << 32) | (s.getId() & 0xffffffffL);
+    }
+
+    // rebuild the column holding s (keys and parts), grouping unchanged
+    private void recompute(Symbol s) {
+        Map.Entry<Long, Column> c = columns.floorEntry(position(s.getX(), s));
+        if (c != null) columns.put(c.getKey(), new Column(c.getKey(), c.getValue().members, page.getNumStaves()));
+    }
+
+    private void insert(Symbol s, int x) {
+        long pos = position(x, s);
+        byPosition.put(pos, s);
+        // the new symbol may join the column just before it; nothing earlier can change
+        Long from = columns.floorKey(pos);
+        regroup((from != null) ? from : pos, pos);
+    }
+
+    private void remove(Symbol s, int x) {
+        long pos = position(x, s);
+        if (byPosition.remove(pos) == null) return;
+        Long from = columns.floorKey(pos);
+        if (from == null) return;
+        // a column that started with this symbol is gone; the column before it may now reach further
+        if (from == pos && columns.lowerKey(pos) != null) from = columns.lowerKey(pos);
+        regroup(from, pos);
+    }
+
+    /**
+     * Re-forms columns from position {@code from} (a column start, or a new first symbol) onwards.
+     * Once a new column starts exactly where an old one did, past the changed position, greedy
+     * grouping from there gives the old columns again, so the rest is kept.
+     */
+    private void regroup(long from, long changed) {
+        List<Column> fresh = new ArrayList<>();
+        Iterator<Map.Entry<Long, Symbol>> it = byPosition.tailMap(from, true).entrySet().iterator();
+        Map.Entry<Long, Symbol> next = it.hasNext() ? it.next() : null;
+        while (next != null) {
+            long pos = next.getKey();
+            if (pos > changed && columns.containsKey(pos)) break;
+            List<Symbol> members = new ArrayList<>();
+            next = takeColumn(next, it, chordTolerancePx, members);
+            fresh.add(new Column(pos, members.toArray(new Symbol[0]), page.getNumStaves()));
+        }
+        long end = (next != null) ? next.getKey() : Long.MAX_VALUE;
+        columns.subMap(from, true, end, false).clear();
+        for (Column c : fresh) columns.put(c.position, c);
+    }
+
+    /**
+     * Moves one column, starting at {@code first}, into members: a rest alone, or a note and the
+     * notes right after it within chordTolerancePx. Returns the entry after the column, or null.
+     */
+    private static Map.Entry<Long, Symbol> takeColumn(Map.Entry<Long, Symbol> first, Iterator<Map.Entry<Long, Symbol>> it,
+                                                      int chordTolerancePx, List<Symbol> members) {
+        Symbol s = first.getValue();
+        members.add(s);
+        Map.Entry<Long, Symbol> next = it.hasNext() ? it.next() : null;
+        if (s instanceof Note) {
+            int x0 = s.getX();
+            while (next != null) {
+                Symbol t = next.getValue();
+                if (!(t instanceof Note) || Math.abs(t.getX() - x0) > chordTolerancePx) break;
+                members.add(t);
+                next = it.hasNext() ? it.next() : null;
+            }
+        }
+        return next;
+    }
+
+    /** 一列：一个休止或一个和弦；键号、声部和时值在创建时算好，之后不变 */
+    private static final class Column {
+        final long position;
+        final Symbol[] members;    // to recompute after a pitch change, and for the playhead
+        final int advanceMs;       // how far the column moves time on
+        final int[] keys;          // playable keys
+        final int[] parts;         // part (staff) of each key
+        final int[] lengthsMs;     // sounding length of each key
+
+        Column(long position, Symbol[] members, int numStaves) {
+            this.position = position;
+            this.members = members;
+            if (members[0] instanceof Rest) {
+                advanceMs = DurationMs.of(((Rest) members[0]).getDuration());
+                keys = new int[0];
+                parts = new int[0];
+                lengthsMs = new int[0];
+                return;
+            }
+            int[] k = new int[members.length];
+            int[] p = new int[members.length];
+            int[] l = new int[members.length];
+            int n = 0;
+            int shortest = Integer.MAX_VALUE;
+            for (Symbol s : members) {
+                Note note = (Note) s;
+                int ms = DurationMs.of(note.getDuration());
+                shortest = Math.min(shortest, ms);
+                int key = note.getMidiKey();
+                if (key < 0) continue;   // no playable pitch
+                k[n] = key;
+                p[n] = TimelineBuilder.partOf(note, numStaves);
+                l[n] = ms;
+                n++;
+            }
+            advanceMs = shortest;
+            keys = (n == k.length) ? k : Arrays.copyOf(k, n);
+            parts = (n == p.length) ? p : Arrays.copyOf(p, n);
+            lengthsMs = (n == l.length) ? l : Arrays.copyOf(l, n);
+        }
+    }
+
+    /** 某一时刻的页时间线，不可变，可以交给播放线程（光标查询只在 EDT 上用） */
+    public static final class Snapshot {
+        private final Column[] columns;
+        private long[] startsMs;      // 各列起始时刻（页内），光标第一次查询时才算
+        private int longestMs;        // 最长的单个音，往回找仍在响的音时用
+        private long endMs;           // 最后一个音停下（或最后的休止结束）的时刻
+
+        private Snapshot(Column[] columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * 页内时刻 ms 上播放光标的 x：在所在列与下一列的 x 之间按时间插值；
+         * 在第一列之前或整页结束之后返回 -1
+         */
+        public int xAt(long ms) {
+            int i = columnAt(ms);
+            if (i < 0) return -1;
+            int x = x(columns[i]);
+            if (i + 1 == columns.length) return x;
+            double f = (double) (ms - startsMs[i]) / columns[i].advanceMs;
+            return x + (int) Math.round((x(columns[i + 1]) - x) * f);
+        }
+
+        /** 页内时刻 ms 正在发声的音符（按阅读顺序），加到 out 里 */
+        public void soundingAt(long ms, List<Symbol> out) {
+            int i = columnAt(ms);
+            if (i < 0) return;
+            int first = i;
+            while (first > 0 && startsMs[first - 1] + longestMs > ms) first--;
+            for (int c = first; c <= i; c++) {
+                for (Symbol s : columns[c].members) {
+                    if (!(s instanceof Note)) continue;
+                    Note n = (Note) s;
+                    if (n.getMidiKey() >= 0 && startsMs[c] + DurationMs.of(n.getDuration()) > ms) out.add(n);
+                }
+            }
+        }
+
+        // last column starting at or before ms, or -1 outside the page
+        private int columnAt(long ms) {
+            if (startsMs == null) {
+                long[] starts = new long[columns.length];
+                long now = 0;
+                for (int i = 0; i < columns.length; i++) {
+                    starts[i] = now;
+                    for (int len : columns[i].lengthsMs) {
+                        longestMs = Math.max(longestMs, len);
+                        endMs = Math.max(endMs, now + len);
+                    }
+                    now += columns[i].advanceMs;
+                }
+                endMs = Math.max(endMs, now);
+                startsMs = starts;
+            }
+            if (ms < 0 || ms >= endMs) return -1;
+            int i = Arrays.binarySearch(startsMs, ms);   // column starts are strictly increasing
+            return (i >= 0) ? i : -i - 2;
+        }
+
+        private static int x(Column c) {
+            return (int) (c.position >> 32);
+        }
+
+        /** 编译成 {@link PackedTimeline}（与 TimelineBuilder.pack 相同），所有时刻加上 offsetMs；不需要再给符号排序 */
+        public PackedTimeline pack(long offsetMs) {
+            PackedTimeline.Builder events = new PackedTimeline.Builder();
+            long now = offsetMs;
+            for (Column c : columns) {
+                for (int i = 0; i < c.keys.length; i++) {
+                    events.add(now, true, c.parts[i], c.keys[i], PackedTimeline.DEFAULT_VELOCITY);
+                    events.add(now + c.lengthsMs[i], false, c.parts[i], c.keys[i], 0);
+                }
+                now += c.advanceMs;
+            }
+            return events.build(now);
+        }
+    }
+}
@@ -1,16 +1,15 @@
 package com.gt.music.model.playback;
 
-import java.util.List;
-
 public class PlayEvent implements Comparable<PlayEvent> {
     public enum Type { START, STOP }
 
     public final long atMs;
     public final Type type;
-    public final List<String> noteNames;
+    // MIDI key numbers (C4 = 60)
+    public final int[] keys;
 
-    public PlayEvent(long atMs, Type type, List<String> noteNames){
-        this.atMs = atMs; this.type = type; this.noteNames = noteNames;
+    public PlayEvent(long atMs, Type type, int[] keys){
+        this.atMs = atMs; this.type = type; this.keys = keys;
     }
 
     @Override public int compareTo(PlayEvent o){
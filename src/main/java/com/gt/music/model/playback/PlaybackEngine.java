@@ -3,62 +3,218 @@ package com.gt.music.model.playback;
 import com.gt.music.midi.MIDI_Player;
 
 import javax.swing.*;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+/**
+ * 按时间线把音符发给 MIDI，两种方式：
+ *
+ * 提前量模式（默认，设备有时钟时）：每次醒来把未来 lookahead 毫秒内的事件一次发出，
+ * 每条消息带上设备时钟（微秒）上的确切时刻，由合成器自己在那一刻发声；
+ * 播放线程只在下一个事件还差半个窗口时醒来，每秒醒几十次以内。
+ *
+ * 即时模式（lookahead 为 0，或设备不提供时钟）：计时用 System.nanoTime 的绝对截止时刻（起点 + atMs），
+ * 误差不会一拍一拍累积；等待时先 parkNanos 到截止前 SPIN_NS，最后一小段自旋，
+ * 避免 sleep/park 的唤醒粒度（常见 50 µs ~ 1 ms）落到发音时刻上。
+ *
+ * requestStop 会 unpark 播放线程，Stop 不必等到下一个事件。提前量模式下已经发出、时刻还没到的
+ * 音仍会在设备队列里响，所以结束时除了立即关掉，还会在最后一个已发出的时刻再关一次（最多多响一个窗口）。
+ * 每个事件的迟到量记入 {@link LatenessStats}：即时模式是发出时刻减截止时刻，
+ * 提前量模式是消息到达设备时已经过了它的时刻多少（正常为 0）。
+ *
+ * 每个声部（staff）用 voices 里对应的 MIDI_Player，也就是各自的通道和乐器，几个声部同时响互不干扰；
+ * 声部比 voices 多时，多出来的合用最后一个。
+ *
+ * 时间线是逐页的 {@link PackedTimeline}，正在发声的键记在位图里；除了每页取一次下一段，
+ * 播放循环不分配对象，也不碰字符串。
+ *
+ * 播放到哪里由 {@link #getPosition()} 告诉界面：开始时写一次时间原点，每换一页写一次单槽，别的时候不写，
+ * 画光标不会给发音时刻带来任何抖动。
+ */
 public class PlaybackEngine implements Runnable {
-    private final List<PlayEvent> timeline;
-    private final MIDI_Player midi;
+    public static final int DEFAULT_LOOKAHEAD_MS = 80;
+    /** 即时模式：截止前最后这段时间自旋而不 park */
+    static final long SPIN_NS = 300_000;
+    /** 提前量模式：第一个事件在设备时钟上的起点比开始时晚这么多，第一批消息不会一到就已过时 */
+    static final long START_DELAY_US = 20_000;
+
+    private final Supplier<? extends Iterable<PackedTimeline>> timelineSource;
+    private final MIDI_Player[] voices;
+    private final MIDI_Player midi;      // voices[0]; all voices share one device, so its clock is theirs
     private final Runnable onFinishUi;
+    private final LatenessStats lateness = new LatenessStats();
+    private final PlaybackPosition position = new PlaybackPosition();
     private volatile boolean stopRequested = false;
+    private volatile Thread runner;
+    private volatile RuntimeException failure;
+    private int lookaheadMs = DEFAULT_LOOKAHEAD_MS;
+    private long lastStampUs = -1;    // 提前量模式下最后一个已发出消息的设备时刻
+    private final long[] sounding = new long[16 * 128 / 64]; // 位图：channel * 128 + key 正在发声（或已排队要发声）
+
+    public PlaybackEngine(PackedTimeline timeline, MIDI_Player midi, Runnable onFinishUi){
+        this(() -> Collections.singletonList(timeline), new MIDI_Player[]{ midi }, onFinishUi);
+    }
+
+    /** 从某页播到乐谱末尾，后面的页边播边编译；声部 i（第 i 条 staff）用 voices[i] 播 */
+    public PlaybackEngine(ScoreTimelineStream timeline, MIDI_Player[] voices, Runnable onFinishUi){
+        this(() -> timeline, voices, onFinishUi);
+    }
 
-    public PlaybackEngine(List<PlayEvent> timeline, MIDI_Player midi, Runnable onFinishUi){
-        this.timeline = timeline;
-        this.midi = midi;
+    private PlaybackEngine(Supplier<? extends Iterable<PackedTimeline>> timelineSource, MIDI_Player[] voices, Runnable onFinishUi){
+        if (voices.length == 0) throw new IllegalArgumentException("at least one voice is needed");
+        this.timelineSource = timelineSource;
+        this.voices = voices.clone();
+        this.midi = voices[0];
         this.onFinishUi = onFinishUi;
     }
 
-    public void requestStop(){ stopRequested = true; }
+    /** 提前发出的窗口（毫秒），0 表示即时模式；在 run 之前设置 */
+    public void setLookaheadMs(int lookaheadMs){
+        if (lookaheadMs < 0) throw new IllegalArgumentException("lookahead must be >= 0");
+        this.lookaheadMs = lookaheadMs;
+    }
 
-    @Override public void run() {
-        long start = System.currentTimeMillis();
-        int idx = 0;
-        Set<String> sounding = new HashSet<>();
+    public void requestStop(){
+        stopRequested = true;
+        Thread t = runner;
+        if (t != null) LockSupport.unpark(t);
+    }
 
-        try{
-            while (!stopRequested && idx < timeline.size()){
-                long now = System.currentTimeMillis() - start;
-                PlayEvent e = timeline.get(idx);
-
-                if (now < e.atMs){
-                    long sleep = Math.min(10, e.atMs - now); // 小步睡，Stop 响应更快
-                    Thread.sleep(sleep);
-                    continue;
-                }
+    /** 本次播放的迟到统计；播放线程结束后（例如在 onFinishUi 里）读取 */
+    public LatenessStats getLatenessStats(){ return lateness; }
 
-                if (e.type == PlayEvent.Type.START){
-                    for (String name : e.noteNames){
-                        midi.playMidiSound(name);
-                        sounding.add(name);
-                    }
-                }else{ // STOP
-                    for (String name : e.noteNames){
-                        midi.stopMidiSound(name);
-                        sounding.remove(name);
-                    }
-                }
-                idx++;
+    /** 播放因异常提前结束时的那个异常（例如后面某页编译不了），正常结束或被停止时为 null；在 onFinishUi 里读取 */
+    public RuntimeException getFailure(){ return failure; }
+
+    /** 当前播放位置，界面每帧读一次（画播放光标） */
+    public PlaybackPosition getPosition(){ return position; }
+
+    @Override public void run() {
+        runner = Thread.currentThread();
+        try{
+            Cursor timeline = new Cursor(timelineSource.get().iterator(), position);
+            long deviceStartUs = (lookaheadMs > 0) ? midi.getDeviceMicroseconds() : -1;
+            if (deviceStartUs >= 0){
+                playAhead(timeline, deviceStartUs);
+            }else{
+                playImmediate(timeline);
             }
-        } catch (InterruptedException ignored) {
+        } catch (RuntimeException e) {
+            failure = e;
         } finally {
+            runner = null;
             // 确保全部停掉
-            for (String n : sounding){
-                try { midi.stopMidiSound(n); } catch (Exception ignored){}
+            for (int w = 0; w < sounding.length; w++){
+                for (long bits = sounding[w]; bits != 0; bits &= bits - 1){
+                    int slot = w * 64 + Long.numberOfTrailingZeros(bits);
+                    int key = slot & 0x7F;
+                    MIDI_Player voice = voice(slot >>> 7);
+                    try {
+                        voice.noteOff(key);
+                        if (lastStampUs >= 0) voice.noteOff(key, lastStampUs);
+                    } catch (Exception ignored){}
+                }
             }
             if (onFinishUi != null){
                 SwingUtilities.invokeLater(onFinishUi);
             }
         }
     }
+
+    private void playImmediate(Cursor timeline){
+        long startNs = System.nanoTime();
+        position.start(startNs);
+        for (long e = timeline.next(); e >= 0; e = timeline.next()){
+            long deadline = startNs + PackedTimeline.atMs(e) * 1_000_000L;
+            if (!awaitDeadline(deadline, SPIN_NS)) return;
+            long late = System.nanoTime() - deadline;
+            dispatch(e, -1);
+            lateness.record(late);
+        }
+    }
+
+    private void playAhead(Cursor timeline, long deviceStartUs){
+        long windowUs = lookaheadMs * 1000L;
+        long originUs = deviceStartUs + START_DELAY_US;   // atMs = 0 on the device clock
+        position.start(System.nanoTime() + (originUs - midi.getDeviceMicroseconds()) * 1000L);
+        long next = timeline.next();
+        while (next >= 0){
+            if (stopRequested) return;
+            long nowUs = midi.getDeviceMicroseconds();
+            // everything due within the window goes out now, stamped with its exact device time
+            while (next >= 0){
+                long atUs = originUs + PackedTimeline.atMs(next) * 1000L;
+                if (atUs > nowUs + windowUs) break;
+                dispatch(next, atUs);
+                lastStampUs = atUs;
+                lateness.record((nowUs - atUs) * 1000L);
+                next = timeline.next();
+            }
+            if (next < 0) break;
+            // wake when the next event is half a window away, so every wake-up sends a batch
+            long wakeUs = originUs + PackedTimeline.atMs(next) * 1000L - windowUs / 2;
+            long waitNs = (wakeUs - midi.getDeviceMicroseconds()) * 1000L;
+            if (!awaitDeadline(System.nanoTime() + waitNs, 0)) return;
+        }
+        // let the queued tail finish before reporting the end
+        long tailNs = (lastStampUs - midi.getDeviceMicroseconds()) * 1000L;
+        awaitDeadline(System.nanoTime() + tailNs, 0);
+    }
+
+    private void dispatch(long e, long timestampUs){
+        int key = PackedTimeline.key(e);
+        int part = PackedTimeline.channel(e);
+        int slot = part << 7 | key;
+        if (PackedTimeline.isNoteOn(e)){
+            voice(part).noteOn(key, PackedTimeline.velocity(e), timestampUs);
+            sounding[slot >>> 6] |= 1L << slot;
+        }else{
+            voice(part).noteOff(key, timestampUs);
+            sounding[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    private MIDI_Player voice(int part){
+        return voices[Math.min(part, voices.length - 1)];
+    }
+
+    /** 等到 deadline（nanoTime），最后 spinNs 自旋；被要求停止或线程被中断时返回 false */
+    private boolean awaitDeadline(long deadline, long spinNs){
+        while (true){
+            if (stopRequested || Thread.currentThread().isInterrupted()) return false;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return true;
+            if (remaining > spinNs){
+                LockSupport.parkNanos(this, remaining - spinNs);
+            }
+            // 否则自旋：回到循环顶部再检查一次停止标志和剩余时间
+        }
+    }
+
+    /** 依次读各页的事件，每开始一页报告给 position；读完返回 -1（事件本身总是 &gt;= 0） */
+    private static final class Cursor {
+        private final Iterator<PackedTimeline> pages;
+        private final PlaybackPosition position;
+        private PackedTimeline page = PackedTimeline.EMPTY;
+        private int pageIndex = -1;
+        private int index;
+
+        Cursor(Iterator<PackedTimeline> pages, PlaybackPosition position){
+            this.pages = pages;
+            this.position = position;
+        }
+
+        long next(){
+            while (index >= page.size()){
+                if (!pages.hasNext()) return -1;
+                long startMs = page.getEndMs();
+                page = pages.next();
+                index = 0;
+                position.pageStarted(++pageIndex, startMs);
+            }
+            return page.get(index++);
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.gt.music.model.playback;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 播放线程告诉界面“现在播到哪里”的单槽通道，不加锁。
+ *
+ * 播放线程只写两样东西：开始时一次时间原点（atMs = 0 对应的 System.nanoTime），
+ * 以及每开始读一页时一次 (页序号, 该页起始毫秒)，写进一个 AtomicLong（lazySet，不等待、不分配）。
+ * 当前时刻不用播放线程报告，界面每帧自己用 nanoTime 减原点算出来，所以播放循环里没有任何额外工作。
+ *
+ * 读的一方（EDT，每帧一次）见 {@link #pageAt(long)}：提前量模式下下一页会比它真正响起早一个窗口被读到，
+ * 所以槽里的页要等当前时刻到了它的起点才切过去，在那之前仍显示上一页。
+ * 页序号从 0 开始，是本次播放的第几页（不是乐谱里的页码）。
+ */
+public final class PlaybackPosition {
+    private static final int START_BITS = 40;
+    private static final long START_MASK = (1L << START_BITS) - 1;
+
+    private volatile long originNanos;
+    private volatile boolean started;
+    private final AtomicLong latestPage = new AtomicLong(-1);
+
+    // reader side (one thread)
+    private int page = -1;
+    private long pageStartMs;
+
+    /** 播放线程：atMs = 0 在 nanoTime 上的时刻 */
+    void start(long originNanos) {
+        this.originNanos = originNanos;
+        this.started = true;
+    }
+
+    /** 播放线程：第 index 页从 startMs 开始 */
+    void pageStarted(int index, long startMs) {
+        latestPage.lazySet(((long) index << START_BITS) | (startMs & START_MASK));
+    }
+
+    /** 当前播放时刻（毫秒，与时间线的 atMs 相同）；还没开始时返回 -1 */
+    public long nowMs() {
+        if (!started) return -1;
+        long ms = (System.nanoTime() - originNanos) / 1_000_000L;
+        return Math.max(ms, 0);
+    }
+
+    /** nowMs 所在的页序号，还没有页开始时返回 -1；只从一个线程调用 */
+    public int pageAt(long nowMs) {
+        long latest = latestPage.get();
+        if (latest >= 0) {
+            int index = (int) (latest >>> START_BITS);
+            long startMs = latest & START_MASK;
+            if (index != page && nowMs >= startMs) {
+                page = index;
+                pageStartMs = startMs;
+            }
+        }
+        return page;
+    }
+
+    /** {@link #pageAt} 返回的那一页的起始毫秒 */
+    public long pageStartMs() {
+        return pageStartMs;
+    }
+}
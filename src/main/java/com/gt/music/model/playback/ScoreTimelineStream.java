@@ -0,0 +1,139 @@
+package com.gt.music.model.playback;
+
+import com.gt.music.model.ScorePage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 从某一页一直播到乐谱末尾的时间线，每页一段 {@link PackedTimeline}（时刻已接在前一页之后）。
+ * 第一页用 EDT 上已经维护好的 {@link PageTimeline} 快照，立即可播；后面的页由后台线程 "playback-compiler"
+ * 逐页取快照、建时间线快照（{@link PageTimeline#snapshotOf}）并编译，放进容量为 pagesAhead 的阻塞队列；
+ * 时间线快照留给播放光标（{@link #pageTimeline}），EDT 不必为后面的页建任何东西。编译最多领先播放这么多页，长乐谱不必先全部建完，
+ * 内存也不随页数增长。还没编译到的页在编译时才取快照，所以播放过程中对后面页的编辑也会播出来。
+ *
+ * 只能迭代一次（迭代开始时启动编译线程），由一个播放线程消费；播放线程被中断时就此结束。
+ * 某页编译失败时，前面的页照常播完，之后迭代器的 hasNext 抛出那个异常（{@link PlaybackEngine} 会记下它）。
+ * 播放结束或被停止后调用 {@link #close()} 让编译线程退出。
+ */
+public final class ScoreTimelineStream implements Iterable<PackedTimeline> {
+    private static final PackedTimeline END = new PackedTimeline.Builder().build(0);
+
+    private final PageTimeline.Snapshot first;
+    private final List<ScorePage> rest;
+    private final int chordTolerancePx;
+    private final BlockingQueue<PackedTimeline> compiled;
+    private final AtomicReferenceArray<PageTimeline.Snapshot> timelines;   // 按播放顺序；播过的页清掉
+    private volatile Thread compiler;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+    private boolean iterated;
+
+    /**
+     * @param first 起始页的时间线（在 EDT 上取的快照）
+     * @param rest 之后依次要播的页
+     * @param pagesAhead 编译最多领先几页
+     */
+    public ScoreTimelineStream(PageTimeline.Snapshot first, List<ScorePage> rest, int chordTolerancePx, int pagesAhead) {
+        this.first = first;
+        this.rest = new ArrayList<>(rest);
+        this.chordTolerancePx = chordTolerancePx;
+        this.compiled = new ArrayBlockingQueue<>(Math.max(1, pagesAhead));
+        this.timelines = new AtomicReferenceArray<>(rest.size() + 1);
+        this.timelines.set(0, first);
+    }
+
+    @Override
+    public synchronized Iterator<PackedTimeline> iterator() {
+        if (iterated) throw new IllegalStateException("a score timeline can be played only once");
+        iterated = true;
+        PackedTimeline firstPage = first.pack(0);
+        if (!rest.isEmpty() && !closed) {
+            Thread t = new Thread(() -> compile(firstPage.getEndMs()), "playback-compiler");
+            t.setDaemon(true);
+            compiler = t;
+            t.start();
+        }
+        return new Pages(firstPage);
+    }
+
+    /**
+     * 第 index 页（0 是起始页，与 {@link PlaybackPosition#pageAt} 相同）播的那个时间线快照，给 EDT 上画播放光标用；
+     * 还没编译到、或者已经播过两页以上时返回 null
+     */
+    public PageTimeline.Snapshot pageTimeline(int index) {
+        return (index >= 0 && index < timelines.length()) ? timelines.get(index) : null;
+    }
+
+    /** 停止编译线程；可以重复调用 */
+    public void close() {
+        closed = true;
+        Thread t = compiler;
+        if (t != null) t.interrupt();
+    }
+
+    private void compile(long offset) {
+        try {
+            try {
+                for (int i = 0; i < rest.size(); i++) {
+                    if (closed) return;
+                    PageTimeline.Snapshot timeline = PageTimeline.snapshotOf(rest.get(i).snapshot(), chordTolerancePx);
+                    PackedTimeline events = timeline.pack(offset);
+                    timelines.set(i + 1, timeline);   // 在这页开始播之前就能查到
+                    compiled.put(events);
+                    offset = events.getEndMs();
+                }
+            } catch (RuntimeException e) {
+                // 编译不了的页（例如读不出来）：已编译的页照常播完，播放线程取下一页时收到这个异常
+                failure = e;
+            }
+            compiled.put(END);
+        } catch (InterruptedException ignored) {
+            // closed
+        }
+    }
+
+    private final class Pages implements Iterator<PackedTimeline> {
+        private PackedTimeline next;
+        private boolean ended = rest.isEmpty();
+        private int index = -1;   // 上一次交出去的页
+
+        Pages(PackedTimeline firstPage) {
+            next = firstPage;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) return true;
+            if (ended) return false;
+            try {
+                next = compiled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();   // playback was stopped
+                ended = true;
+                return false;
+            }
+            if (next == END) {
+                next = null;
+                ended = true;
+                if (failure != null) throw failure;
+            }
+            return next != null;
+        }
+
+        @Override
+        public PackedTimeline next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            PackedTimeline page = next;
+            next = null;
+            // 光标最多落后播放线程一个提前量窗口，两页之前的快照不会再用到
+            if (++index >= 2) timelines.set(index - 2, null);
+            return page;
+        }
+    }
+}
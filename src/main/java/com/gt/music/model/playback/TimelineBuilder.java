@@ -4,89 +4,136 @@ import com.gt.music.model.Note;
 import com.gt.music.model.Rest;
 import com.gt.music.model.Symbol;
 import com.gt.music.model.DurationMs;
-import com.gt.music.model.MidiName;
-import com.gt.music.types.Accidental;
-import com.gt.music.types.NoteDuration;
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.StaffLayout;
 import com.gt.music.model.playback.PlayEvent.Type;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public final class TimelineBuilder {
     private TimelineBuilder(){}
 
     /**
-     * @param symbols 已按“阅读顺序（逐行从左到右）”排好的一页全部符号
+     * 同下，但每个音的声部（{@link PackedTimeline#channel}）是它所在的 staff（第 {@link #MAX_PARTS} 条起合用最后一个声部），
+     * 播放时每个声部用自己的 MIDI 通道和乐器
+     */
+    public static PackedTimeline pack(PageSnapshot page, int chordTolerancePx, long offsetMs){
+        return pack(page.getSymbols(), page.getNumStaves(), chordTolerancePx, offsetMs);
+    }
+
+    /**
+     * 把一页编译成 {@link PackedTimeline}，所有时刻加上 offsetMs（多页拼接时是前面各页的时长之和）；
+     * 不分声部，全部是声部 0
+     *
+     * @param page 一页全部符号（只读，可以是 PageSnapshot 的列表；不会被修改）
      * @param chordTolerancePx 认为同一列（和弦）的 x 容差，建议 8~12
      */
-    public static List<PlayEvent> build(List<Symbol> symbols, int chordTolerancePx){
-        // 1) 保险起见，再按 x 排一次
-        symbols.sort(Comparator.comparingInt(Symbol::getX));
+    public static PackedTimeline pack(List<? extends Symbol> page, int chordTolerancePx, long offsetMs){
+        return pack(page, 0, chordTolerancePx, offsetMs);
+    }
+
+    /** 最多几个声部：MIDI 的 16 个通道去掉打击乐通道 */
+    public static final int MAX_PARTS = 15;
+
+    /** 符号的声部：所在 staff，钳到 [0, MAX_PARTS-1]；numStaves 为 0 表示不分声部 */
+    static int partOf(Symbol s, int numStaves){
+        if (numStaves <= 0) return 0;
+        return Math.min(StaffLayout.staffIndexOf(s, numStaves), MAX_PARTS - 1);
+    }
+
+    private static PackedTimeline pack(List<? extends Symbol> page, int numStaves, int chordTolerancePx, long offsetMs){
+        // 按 x 排成阅读顺序（排的是引用副本，不动调用方的列表）
+        List<Symbol> symbols = new ArrayList<>(page);
+        long[] startMs = startTimes(symbols, chordTolerancePx);
 
+        PackedTimeline.Builder events = new PackedTimeline.Builder();
+        for (int i = 0; i < symbols.size(); i++){
+            Symbol s = symbols.get(i);
+            if (!(s instanceof Note)) continue;
+            Note n = (Note) s;
+            int key = n.getMidiKey();
+            if (key < 0) continue; // 没有可播放的音高就跳过
+            // 每个音一对 START/STOP（允许列内时值不同）
+            long at = offsetMs + startMs[i];
+            int part = partOf(n, numStaves);
+            events.add(at, true, part, key, PackedTimeline.DEFAULT_VELOCITY);
+            events.add(at + DurationMs.of(n.getDuration()), false, part, key, 0);
+        }
+        return events.build(offsetMs + startMs[symbols.size()]);
+    }
+
+    /**
+     * 播放怎么读一页：把 symbols 就地按 x 排成阅读顺序，返回每个符号开始的时刻（毫秒，页内从 0 起），
+     * 多出的最后一格是整页的时长（到最后一列结束、所有能发声的音都停下为止，下一页从这里开始）。
+     * x 相差不超过 chordTolerancePx 的连续音是同一列（和弦），同时开始，列的长度是列内最短的时值；
+     * 休止单独成列，只推进时间。导出器用它得到与播放完全相同的时刻。
+     */
+    public static long[] startTimes(List<Symbol> symbols, int chordTolerancePx){
+        symbols.sort(Comparator.comparingInt(Symbol::getX));
+        long[] startMs = new long[symbols.size() + 1];
         long now = 0;
-        List<PlayEvent> events = new ArrayList<>();
+        long sounding = 0; // 最晚停下的音
 
         for (int i = 0; i < symbols.size(); ){
             Symbol s = symbols.get(i);
 
             if (s instanceof Rest){
-                NoteDuration d = ((Rest) s).getDuration();
-                now += DurationMs.of(d); // 休止只推进时间
-                i++;
+                startMs[i++] = now;
+                now += DurationMs.of(((Rest) s).getDuration()); // 休止只推进时间
                 continue;
             }
 
-            // 收集同一列的音（和弦）
             int x0 = s.getX();
-            List<Note> chord = new ArrayList<>();
+            int shortest = Integer.MAX_VALUE;
             int j = i;
             while (j < symbols.size()){
                 Symbol t = symbols.get(j);
-                if (t instanceof Note && Math.abs(t.getX() - x0) <= chordTolerancePx){
-                    chord.add((Note) t);
-                    j++;
-                }else break;
-            }
-
-            // 当前列的 START：把每个音的“基音名+升降”转换成 MIDI 名
-            List<String> chordNames = chord.stream()
-                    .map(TimelineBuilder::toMidiName)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-
-            if (!chordNames.isEmpty()){
-                events.add(new PlayEvent(now, Type.START, chordNames));
-            }
-
-            // 为每个音生成独立的 STOP（允许列内时值不同）
-            for (Note n : chord){
-                String name = toMidiName(n);
-                if (name == null) continue;
-                long stopAt = now + DurationMs.of(n.getDuration());
-                events.add(new PlayEvent(stopAt, Type.STOP, Collections.singletonList(name)));
+                if (!(t instanceof Note) || Math.abs(t.getX() - x0) > chordTolerancePx) break;
+                shortest = Math.min(shortest, DurationMs.of(t.getDuration()));
+                if (((Note) t).getMidiKey() >= 0) sounding = Math.max(sounding, now + DurationMs.of(t.getDuration()));
+                startMs[j++] = now;
             }
 
             // 推进到下一列：用“本列最短时值”
-            int delta = chord.stream()
-                    .map(n -> DurationMs.of(n.getDuration()))
-                    .min(Integer::compareTo).orElse(0);
-            now += delta;
-
+            now += shortest;
             i = j;
         }
+        startMs[symbols.size()] = Math.max(now, sounding);
+        return startMs;
+    }
 
-        // 同一时刻先 STOP 再 START，避免卡音
-        events.sort(Comparator
-                .comparingLong((PlayEvent e) -> e.atMs)
-                .thenComparing(e -> e.type == Type.STOP ? 0 : 1));
+    /**
+     * @param page 一页全部符号（只读，可以是 PageSnapshot 的列表；不会被修改）
+     * @param chordTolerancePx 认为同一列（和弦）的 x 容差，建议 8~12
+     */
+    public static List<PlayEvent> build(List<? extends Symbol> page, int chordTolerancePx){
+        List<PlayEvent> events = new ArrayList<>();
+        build(page, chordTolerancePx, events);
         return events;
     }
 
-    // —— 工具：Note -> "C#4" / "Gb4" / "G4"
-    private static String toMidiName(Note n){
-        String base = n.getPitch();
-        if (base == null || base.isEmpty()) return null; // 没有可播放的基音名
-        Accidental a = n.getAccidental();
-        return MidiName.applyAccidental(base, a);
+    /**
+     * 同上，但把事件（已排序）放进 out，并返回整页的时长（含末尾休止），多页拼接时用它算下一页的起点。
+     * 同一时刻开始的音合成一个 START。
+     */
+    public static long build(List<? extends Symbol> page, int chordTolerancePx, List<PlayEvent> out){
+        PackedTimeline packed = pack(page, chordTolerancePx, 0);
+        int[] keys = new int[16];
+        for (int i = 0; i < packed.size(); ){
+            long e = packed.get(i);
+            long at = PackedTimeline.atMs(e);
+            if (!PackedTimeline.isNoteOn(e)){
+                out.add(new PlayEvent(at, Type.STOP, new int[]{ PackedTimeline.key(e) }));
+                i++;
+                continue;
+            }
+            int k = 0;
+            while (i < packed.size() && packed.get(i) >>> 19 == e >>> 19){ // same time, note-on
+                if (k == keys.length) keys = Arrays.copyOf(keys, k * 2);
+                keys[k++] = PackedTimeline.key(packed.get(i++));
+            }
+            out.add(new PlayEvent(at, Type.START, Arrays.copyOf(keys, k)));
+        }
+        return packed.getEndMs();
     }
 }
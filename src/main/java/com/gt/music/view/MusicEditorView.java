@@ -1,10 +1,15 @@
 package com.gt.music.view;
 
 import com.gt.music.model.MusicEditorModel;
+import com.gt.music.model.ScoreEvent;
+import com.gt.music.model.ScorePage;
 import com.gt.music.view.canvas.MusicView;
+import com.gt.music.view.canvas.PageThumbnailRenderer;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
 import java.util.Hashtable;
 import java.util.ArrayList;
 
@@ -23,8 +28,21 @@ public class MusicEditorView extends JFrame {
     private JLabel pageLabel;
 
     private JMenuItem exitMenuItem;
+    private JMenuItem openMenuItem;
+    private JMenuItem saveMenuItem;
+    private JMenuItem saveAsMenuItem;
+    private JMenuItem exportPngMenuItem;
+    private JMenuItem exportSvgMenuItem;
+    private JMenuItem importMusicXmlMenuItem;
+    private JMenuItem exportMusicXmlMenuItem;
+    private JMenuItem exportMidiMenuItem;
+    private JMenuItem importMidiMenuItem;
+    private JMenuItem exportWavMenuItem;
+    private JMenuItem undoMenuItem;
+    private JMenuItem redoMenuItem;
     private JMenuItem newStaffMenuItem;
     private JMenuItem deleteStaffMenuItem;
+    private JMenuItem staffInstrumentMenuItem;
 
     private JButton selectButton;
     private JButton penButton;
@@ -40,9 +58,12 @@ public class MusicEditorView extends JFrame {
 
     private JSlider durationSlider;
 
+    private final MusicEditorModel model;
+    //One slot per page of the score, same order; a view is only created when its page is first shown
     private ArrayList<MusicView> pageViews;
     private JScrollPane contentScrollPane;
     private JLabel statusBar;
+    private PageNavigatorStrip pageNavigator;
 
     private int displayedPageIndex = 0;
 
@@ -50,6 +71,7 @@ public class MusicEditorView extends JFrame {
     public MusicEditorView(MusicEditorModel model) {
         //Create window and set title
         super("My Music Editor");
+        this.model = model;
         //Window close behavior
         this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         //Window basic layout
@@ -63,17 +85,61 @@ public class MusicEditorView extends JFrame {
         //menu-file
         JMenu fileMenu = new JMenu("File");
         menuBar.add(fileMenu);
+        //menu-file -> open/save
+        openMenuItem = new JMenuItem("Open...");
+        openMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O,
+                Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        saveMenuItem = new JMenuItem("Save");
+        saveMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S,
+                Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        saveAsMenuItem = new JMenuItem("Save As...");
+        fileMenu.add(openMenuItem);
+        fileMenu.add(saveMenuItem);
+        fileMenu.add(saveAsMenuItem);
+        fileMenu.addSeparator();
+        //menu-file -> export
+        exportPngMenuItem = new JMenuItem("Export Pages as PNG...");
+        exportSvgMenuItem = new JMenuItem("Export Pages as SVG...");
+        fileMenu.add(exportPngMenuItem);
+        fileMenu.add(exportSvgMenuItem);
+        //menu-file -> MusicXML
+        importMusicXmlMenuItem = new JMenuItem("Import MusicXML...");
+        exportMusicXmlMenuItem = new JMenuItem("Export MusicXML...");
+        fileMenu.addSeparator();
+        fileMenu.add(importMusicXmlMenuItem);
+        fileMenu.add(exportMusicXmlMenuItem);
+        //menu-file -> MIDI
+        importMidiMenuItem = new JMenuItem("Import MIDI File...");
+        exportMidiMenuItem = new JMenuItem("Export MIDI File...");
+        fileMenu.add(importMidiMenuItem);
+        fileMenu.add(exportMidiMenuItem);
+        //menu-file -> audio
+        exportWavMenuItem = new JMenuItem("Export Audio (WAV)...");
+        fileMenu.add(exportWavMenuItem);
+        fileMenu.addSeparator();
         //menu-file -> exit
         exitMenuItem = new JMenuItem("Exit");
         fileMenu.add(exitMenuItem);
         //menu-edit
         JMenu editMenu = new JMenu("Edit");
         menuBar.add(editMenu);
+        //menu-edit -> undo/redo
+        undoMenuItem = new JMenuItem("Undo");
+        undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+                Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        redoMenuItem = new JMenuItem("Redo");
+        redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y,
+                Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        editMenu.add(undoMenuItem);
+        editMenu.add(redoMenuItem);
+        editMenu.addSeparator();
         //menu-edit -> staff
         newStaffMenuItem = new JMenuItem("New Staff");
         deleteStaffMenuItem = new JMenuItem("Delete Staff");
         editMenu.add(newStaffMenuItem);
         editMenu.add(deleteStaffMenuItem);
+        staffInstrumentMenuItem = new JMenuItem("Staff Instrument...");
+        editMenu.add(staffInstrumentMenuItem);
         //menu-edit -> pages
         newPageMenuItem = new JMenuItem("New Page");
         deletePageMenuItem = new JMenuItem("Delete Page");
@@ -190,10 +256,18 @@ public class MusicEditorView extends JFrame {
 
         this.add(toolPanel, BorderLayout.WEST);
 
+        //2.5 Page thumbnails (rendered on background workers)
+        pageNavigator = new PageNavigatorStrip(new PageThumbnailRenderer(140));
+        JScrollPane navigatorScrollPane = new JScrollPane(pageNavigator);
+        navigatorScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        navigatorScrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        this.add(navigatorScrollPane, BorderLayout.EAST);
+
         this.pageViews = new ArrayList<>();
-        MusicView firstPage = new MusicView(model);
-        firstPage.setStatusSink(text -> statusBar.setText(text));
-        this.pageViews.add(firstPage);
+        resetPageViews();
+        MusicView firstPage = viewFor(0);
+        //Follow the score: create/drop page views and refresh thumbnails
+        model.getScore().addScoreListener(this::onScoreChanged);
 
         //Add label to scroll panel
         contentScrollPane = new JScrollPane(firstPage);
@@ -214,6 +288,58 @@ public class MusicEditorView extends JFrame {
         return exitMenuItem;
     }
 
+    public JMenuItem getOpenMenuItem() {
+        return openMenuItem;
+    }
+
+    public JMenuItem getSaveMenuItem() {
+        return saveMenuItem;
+    }
+
+    public JMenuItem getSaveAsMenuItem() {
+        return saveAsMenuItem;
+    }
+
+    public JMenuItem getExportPngMenuItem() {
+        return exportPngMenuItem;
+    }
+
+    public JMenuItem getExportSvgMenuItem() {
+        return exportSvgMenuItem;
+    }
+
+    public JMenuItem getImportMusicXmlMenuItem() {
+        return importMusicXmlMenuItem;
+    }
+
+    public JMenuItem getExportMusicXmlMenuItem() {
+        return exportMusicXmlMenuItem;
+    }
+
+    public JMenuItem getExportMidiMenuItem() {
+        return exportMidiMenuItem;
+    }
+
+    public JMenuItem getExportWavMenuItem() {
+        return exportWavMenuItem;
+    }
+
+    public JMenuItem getStaffInstrumentMenuItem() {
+        return staffInstrumentMenuItem;
+    }
+
+    public JMenuItem getImportMidiMenuItem() {
+        return importMidiMenuItem;
+    }
+
+    public JMenuItem getUndoMenuItem() {
+        return undoMenuItem;
+    }
+
+    public JMenuItem getRedoMenuItem() {
+        return redoMenuItem;
+    }
+
     public JMenuItem getNewStaffMenuItem() {
         return newStaffMenuItem;
     }
@@ -304,6 +430,10 @@ public class MusicEditorView extends JFrame {
         return pageLabel;
     }
 
+    public PageNavigatorStrip getPageNavigator() {
+        return pageNavigator;
+    }
+
 
     //loadIcon method with scaling support
     private ImageIcon loadIcon(String path, int width, int height) {
@@ -325,24 +455,67 @@ public class MusicEditorView extends JFrame {
     }
 
 
-    public void addNewPageView(MusicEditorModel model) {
-        MusicView newPage = new MusicView(model);
-        newPage.setStatusSink(text -> statusBar.setText(text));
-        this.pageViews.add(newPage);
+    private MusicView createPageView(ScorePage page) {
+        MusicView view = new MusicView(model, page);
+        view.setStatusSink(text -> statusBar.setText(text));
+        return view;
     }
 
-    public void deleteCurrentPageView(int pageIndex) {
-        if (pageIndex >= 0 && pageIndex < this.pageViews.size()) {
-            this.pageViews.remove(pageIndex);
+    //Page view for a page index, created (and its page loaded) on first use
+    private MusicView viewFor(int pageIndex) {
+        MusicView view = this.pageViews.get(pageIndex);
+        if (view == null) {
+            view = createPageView(model.getScore().getPage(pageIndex));
+            this.pageViews.set(pageIndex, view);
+        }
+        return view;
+    }
+
+    private void resetPageViews() {
+        for (MusicView view : this.pageViews) {
+            if (view != null) view.dispose();
+        }
+        this.pageViews.clear();
+        for (int i = 0; i < model.getScore().getPageCount(); i++) {
+            this.pageViews.add(null);
+        }
+    }
+
+    private void onScoreChanged(ScoreEvent e) {
+        switch (e.getType()) {
+            case PAGE_ADDED:
+                this.pageViews.add(e.getIndex(), null);
+                break;
+            case PAGE_REMOVED:
+                MusicView removed = this.pageViews.remove(e.getIndex());
+                if (removed != null) removed.dispose();
+                pageNavigator.forgetPage(e.getPage());
+                break;
+            case SCORE_REPLACED:
+                resetPageViews();
+                pageNavigator.forgetAllPages();
+                this.displayedPageIndex = 0;
+                break;
+            default:
+                //Page content changed: refresh its thumbnail once the edit is finished
+                if (!e.isAdjusting()) pageNavigator.refreshPage(e.getPage());
+                break;
         }
     }
 
     public void displayPage(int pageIndex) {
         if (pageIndex >= 0 && pageIndex < this.pageViews.size()) {
-            MusicView viewToDisplay = this.pageViews.get(pageIndex);
+            MusicView viewToDisplay = viewFor(pageIndex);
             this.displayedPageIndex = pageIndex;
+            // a page of an opened file that could not be decoded is shown empty; say so
+            IOException failure = model.getScore().getPage(pageIndex).getLoadFailure();
+            if (failure != null) {
+                statusBar.setText("Status: Page " + (pageIndex + 1) + " could not be read and is shown empty: "
+                        + failure.getMessage());
+            }
             // Switch display content
             this.contentScrollPane.setViewportView(viewToDisplay);
+            this.pageNavigator.setPages(model.getScore().getPages(), pageIndex);
             this.revalidate();
             this.repaint();
         }
@@ -352,15 +525,7 @@ public class MusicEditorView extends JFrame {
     public com.gt.music.view.canvas.MusicView getMusicView() {
         if (pageViews == null || pageViews.isEmpty()) return null;
         if (displayedPageIndex < 0 || displayedPageIndex >= pageViews.size()) return null;
-        return pageViews.get(displayedPageIndex);
-    }
-
-
-    /** 把当前页所有 Symbol 以“逐行从左到右”的顺序返回 */
-    public java.util.List<com.gt.music.model.Symbol> getActivePageSymbolsInReadingOrder(){
-        com.gt.music.view.canvas.MusicView mv = getMusicView();
-        if (mv == null) return java.util.Collections.emptyList();
-        return mv.exportSymbolsInReadingOrder();
+        return viewFor(displayedPageIndex);
     }
 
 }
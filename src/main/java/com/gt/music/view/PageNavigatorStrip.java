@@ -0,0 +1,123 @@
+package com.gt.music.view;
+
+import com.gt.music.model.ScorePage;
+import com.gt.music.view.canvas.PageThumbnailRenderer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Vertical strip of page thumbnails. Thumbnails are rendered off the EDT by
+ * {@link PageThumbnailRenderer}; this panel only shows the cached images and
+ * forwards clicks as 0-based page indexes.
+ */
+public class PageNavigatorStrip extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final Color CURRENT_BORDER = new Color(0, 120, 215);
+
+    private final PageThumbnailRenderer renderer;
+    private final List<ScorePage> pages = new ArrayList<>();
+    private final List<JButton> buttons = new ArrayList<>();
+    private int[] requestedRevisions = new int[0];   // page revision last asked of the renderer, -1 if none
+    private int currentIndex = -1;
+    private IntConsumer onPageSelected;
+
+    public PageNavigatorStrip(PageThumbnailRenderer renderer) {
+        this.renderer = renderer;
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+    }
+
+    public void setOnPageSelected(IntConsumer callback) {
+        this.onPageSelected = callback;
+    }
+
+    /**
+     * Sync the strip with the current page list and highlight the displayed page.
+     * Buttons are rebuilt only when the page list itself changed, and only pages edited since
+     * their last thumbnail request are sent to the renderer again.
+     */
+    public void setPages(List<ScorePage> newPages, int displayedIndex) {
+        if (!pages.equals(newPages)) {
+            pages.clear();
+            pages.addAll(newPages);
+            rebuildButtons();
+            currentIndex = -1;
+        }
+        if (displayedIndex != currentIndex) {
+            int previous = currentIndex;
+            currentIndex = displayedIndex;
+            markCurrent(previous);
+            markCurrent(currentIndex);
+        }
+        for (int i = 0; i < pages.size(); i++) {
+            refreshPage(i);
+        }
+    }
+
+    /**
+     * Ask for an up-to-date thumbnail of one page (cheap when it has not changed).
+     * Pages of an opened file that have not been loaded yet keep their numbered placeholder,
+     * so the strip never forces a page off disk.
+     */
+    public void refreshPage(ScorePage page) {
+        refreshPage(pages.indexOf(page));
+    }
+
+    private void refreshPage(int index) {
+        if (index < 0 || index >= pages.size()) return;
+        ScorePage page = pages.get(index);
+        if (!page.isLoaded() || requestedRevisions[index] == page.getRevision()) return;
+        requestedRevisions[index] = page.getRevision();
+        JButton button = buttons.get(index);
+        renderer.request(page, img -> button.setIcon(new ImageIcon(img)));
+    }
+
+    private void markCurrent(int index) {
+        if (index < 0 || index >= buttons.size()) return;
+        boolean current = index == currentIndex;
+        buttons.get(index).setBorder(BorderFactory.createLineBorder(current ? CURRENT_BORDER : Color.LIGHT_GRAY,
+                current ? 3 : 1));
+    }
+
+    /** Drop the cached thumbnail of a page that has been deleted. */
+    public void forgetPage(ScorePage page) {
+        renderer.evict(page);
+    }
+
+    /** Drop every cached thumbnail (a different score was opened). */
+    public void forgetAllPages() {
+        for (ScorePage page : pages) renderer.evict(page);
+    }
+
+    private void rebuildButtons() {
+        removeAll();
+        buttons.clear();
+        requestedRevisions = new int[pages.size()];
+        Arrays.fill(requestedRevisions, -1);
+        for (int i = 0; i < pages.size(); i++) {
+            final int pageIndex = i;
+            JButton button = new JButton(String.valueOf(i + 1));
+            button.setHorizontalTextPosition(SwingConstants.CENTER);
+            button.setVerticalTextPosition(SwingConstants.BOTTOM);
+            button.setAlignmentX(Component.CENTER_ALIGNMENT);
+            button.setFocusable(false);
+            button.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
+            BufferedImage cached = renderer.cached(pages.get(i));
+            if (cached != null) button.setIcon(new ImageIcon(cached));
+            button.addActionListener(e -> {
+                if (onPageSelected != null) onPageSelected.accept(pageIndex);
+            });
+            buttons.add(button);
+            add(button);
+            add(Box.createVerticalStrut(6));
+        }
+        revalidate();
+        repaint();
+    }
+}
@@ -0,0 +1,48 @@
+package com.gt.music.view.canvas;
+
+import com.gt.music.model.Symbol;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * 不依赖 Swing 组件的整页渲染：输出 BufferedImage（PNG）或 SVG 文本。
+ * 只读传入的数据，可以在任意线程、java.awt.headless=true 下调用。
+ */
+final class HeadlessPageRenderer {
+    private HeadlessPageRenderer() {
+    }
+
+    static BufferedImage renderImage(int numStaves, List<? extends Symbol> symbols,
+                                     MusicViewImages.Bank sprites, double scale) {
+        int w = Math.max(1, (int) Math.round(MusicPagePainter.pageWidth() * scale));
+        int h = Math.max(1, (int) Math.round(MusicPagePainter.pageHeight(numStaves) * scale));
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = out.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, w, h);
+            g2.scale(scale, scale);
+            PageCanvas canvas = PageCanvas.of(g2, null);
+            MusicPagePainter.paintStaves(canvas, numStaves, sprites);
+            MusicPagePainter.paintSymbols(canvas, symbols, numStaves, sprites);
+        } finally {
+            g2.dispose();
+        }
+        return out;
+    }
+
+    static void writeSvg(int numStaves, List<? extends Symbol> symbols,
+                         MusicViewImages.Bank sprites, Writer out) throws IOException {
+        SvgPageCanvas canvas = new SvgPageCanvas();
+        MusicPagePainter.paintStaves(canvas, numStaves, sprites);
+        MusicPagePainter.paintSymbols(canvas, symbols, numStaves, sprites);
+        canvas.writeTo(out, MusicPagePainter.pageWidth(), MusicPagePainter.pageHeight(numStaves));
+    }
+}
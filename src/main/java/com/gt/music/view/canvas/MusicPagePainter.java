@@ -0,0 +1,176 @@
+package com.gt.music.view.canvas;
+
+import com.gt.music.model.Note;
+import com.gt.music.model.Rest;
+import com.gt.music.model.StaffGeometry;
+import com.gt.music.model.Symbol;
+import com.gt.music.types.Accidental;
+
+import java.awt.*;
+import java.util.List;
+
+import static com.gt.music.view.canvas.MusicView.HALF_LINE_SPACING;
+import static com.gt.music.view.canvas.MusicView.LEFT_PADDING;
+import static com.gt.music.view.canvas.MusicView.STAFF_HEIGHT;
+import static com.gt.music.view.canvas.MusicView.STAFF_SPACING;
+import static com.gt.music.view.canvas.MusicView.STAFF_WIDTH;
+import static com.gt.music.view.canvas.MusicView.TOP_PADDING;
+
+/**
+ * 一页乐谱的纯绘制逻辑（五线谱 + 音符/休止符 + 加线 + 升降号）。
+ * 不依赖任何 Swing 组件，MusicView、后台缩略图与 PNG/SVG 导出共用同一套布局规则。
+ */
+final class MusicPagePainter {
+    private MusicPagePainter() {
+    }
+
+    static int pageWidth() {
+        return LEFT_PADDING * 2 + STAFF_WIDTH;
+    }
+
+    static int pageHeight(int numStaves) {
+        return (TOP_PADDING * 2) + (numStaves * STAFF_HEIGHT) + ((numStaves - 1) * STAFF_SPACING);
+    }
+
+    /** 画全部 staff：五线、左右边线、结束线、谱号与拍号 */
+    static void paintStaves(PageCanvas g2, int numStaves, MusicViewImages.Bank sprites) {
+        g2.setColor(Color.BLACK);
+        for (int i = 0; i < numStaves; i++) {
+            int staffY = TOP_PADDING + i * (STAFF_HEIGHT + STAFF_SPACING);
+
+            int lineSpacing = STAFF_HEIGHT / 4;
+            for (int j = 0; j < 5; j++) {
+                int lineY = staffY + j * lineSpacing;
+                g2.drawLine(LEFT_PADDING, lineY, LEFT_PADDING + STAFF_WIDTH, lineY);
+            }
+
+            // Left/Right borders
+            g2.drawLine(LEFT_PADDING, staffY, LEFT_PADDING, staffY + STAFF_HEIGHT);
+            g2.drawLine(LEFT_PADDING + STAFF_WIDTH, staffY, LEFT_PADDING + STAFF_WIDTH, staffY + STAFF_HEIGHT);
+
+            // End line for last staff
+            if (i == numStaves - 1) {
+                g2.drawLine(LEFT_PADDING + STAFF_WIDTH - 6, staffY, LEFT_PADDING + STAFF_WIDTH - 6, staffY + STAFF_HEIGHT);
+                g2.fillRect(LEFT_PADDING + STAFF_WIDTH - 3, staffY, 3, STAFF_HEIGHT);
+            } else {
+                g2.drawLine(LEFT_PADDING + STAFF_WIDTH, staffY, LEFT_PADDING + STAFF_WIDTH, staffY + STAFF_HEIGHT);
+            }
+
+            // Clef & time
+            Image treble = sprites.get(MusicViewImages.Key.CLEF_TREBLE);
+            if (treble != null) {
+                g2.drawSprite(MusicViewImages.Key.CLEF_TREBLE, treble, LEFT_PADDING + 10, staffY - 22);
+            }
+            Image common = sprites.get(MusicViewImages.Key.TIME_COMMON);
+            if (common != null) {
+                g2.drawSprite(MusicViewImages.Key.TIME_COMMON, common, LEFT_PADDING + 80, staffY + 9);
+            }
+        }
+    }
+
+    static void paintSymbols(PageCanvas g2, List<? extends Symbol> symbols, int numStaves, MusicViewImages.Bank sprites) {
+        for (Symbol symbol : symbols) {
+            paintSymbol(g2, symbol, numStaves, sprites);
+        }
+    }
+
+    /** 画单个符号；Note 额外画加线与升降号（升降号位置：x - 宽 - 4, y + 35） */
+    static void paintSymbol(PageCanvas g2, Symbol symbol, int numStaves, MusicViewImages.Bank sprites) {
+        if (symbol instanceof Note) {
+            Note n = (Note) symbol;
+            drawLedgerLines(g2, n, numStaves, sprites);
+
+            MusicViewImages.Key noteKey = MusicViewImages.keyForSymbol(n);
+            Image noteImg = (noteKey != null) ? sprites.get(noteKey) : null;
+            if (noteImg != null) g2.drawSprite(noteKey, noteImg, n.getX(), n.getY());
+
+            Accidental a = n.getAccidental();
+            if (a != Accidental.NONE) {
+                MusicViewImages.Key accKey = MusicViewImages.keyForAccidental(a);
+                Image accImg = (accKey != null) ? sprites.get(accKey) : null;
+                if (accImg != null) {
+                    int aw = accImg.getWidth(null);
+                    int ax = n.getX() - aw - 4;
+                    int ay = n.getY() + 35;
+                    g2.drawSprite(accKey, accImg, ax, ay);
+                }
+            }
+        } else if (symbol instanceof Rest) {
+            MusicViewImages.Key restKey = MusicViewImages.keyForSymbol(symbol);
+            Image restImg = (restKey != null) ? sprites.get(restKey) : null;
+            if (restImg != null) g2.drawSprite(restKey, restImg, symbol.getX(), symbol.getY());
+        }
+    }
+
+    /**
+     * 为超出五线谱上下边界的 Note 画加线（最多两条）。
+     * 约定：当前 Note 的 (x,y) 是图片的“左上角”，我们据此取图宽高，计算中心与横向线段宽度。
+     */
+    static void drawLedgerLines(PageCanvas g2, Note n, int numStaves, MusicViewImages.Bank sprites) {
+        Image img = MusicViewImages.forSymbol(n, sprites);
+        if (img == null) return;
+
+        // 以“线距”为单位计算：lineSpacing=相邻两条五线的垂直距离
+        final int lineSpacing = (int) Math.round(2 * HALF_LINE_SPACING);  // = STAFF_HEIGHT/4
+        // 先算音头中心（已修正为 head 在底部）
+        final int HEAD_BOTTOM_PADDING = 0;
+        final int headH = (int) Math.round(2 * HALF_LINE_SPACING); // ~= lineSpacing
+        final int posY  = n.getY() + img.getHeight(null) - HEAD_BOTTOM_PADDING - headH / 2;
+
+        // 用“半间距缓冲”的归属法，而不是最近中心
+        final int staffTopY    = staffTopForNotehead(posY, numStaves);
+        final int staffBottomY = staffTopY + STAFF_HEIGHT;
+
+        final int noteLeft = n.getX();
+        final int noteW = img.getWidth(null);
+
+        // 画短横线长度：略宽于音头（视觉好看一点）
+        final int halfW = noteW / 2;
+        final int pad = Math.max(4, halfW / 2);
+        final int x1 = noteLeft - pad;
+        final int x2 = noteLeft + noteW + pad;
+
+        int count = 0;            // 需要几条加线（0~2）
+        boolean above = false;    // true=在上方; false=在下方
+
+        if (posY < staffTopY) {
+            int diff = staffTopY - posY;
+            count = Math.min(2, diff / lineSpacing); // floor(diff/lineSpacing)
+            above = true;
+        } else if (posY > staffBottomY) {
+            int diff = posY - staffBottomY;
+            count = Math.min(2, diff / lineSpacing); // floor(diff/lineSpacing)
+            above = false;
+        }
+
+        if (count <= 0) return;
+
+        g2.setLineWidth(2f); // 线条稍粗一点，和五线一致或略粗
+        // 画 1 或 2 条
+        if (above) {
+            int y1 = staffTopY - lineSpacing;      // 第一条：贴近 staff 顶部的那条
+            g2.drawLine(x1, y1, x2, y1);
+            if (count >= 2) {
+                int y2 = staffTopY - 2 * lineSpacing;
+                g2.drawLine(x1, y2, x2, y2);
+            }
+        } else {
+            int y1 = staffBottomY + lineSpacing;   // 第一条：贴近 staff 底部的那条
+            g2.drawLine(x1, y1, x2, y1);
+            if (count >= 2) {
+                int y2 = staffBottomY + 2 * lineSpacing;
+                g2.drawLine(x1, y2, x2, y2);
+            }
+        }
+        g2.setLineWidth(1f);
+    }
+
+    /**
+     * 用“音头中心Y + 半间距缓冲”来决定属于哪条 staff。
+     * 只有当音头中心跨过两条 staff 的中线（空白区的一半）才切换 staff。
+     */
+    static int staffTopForNotehead(int headCenterY, int numStaves) {
+        int i = StaffGeometry.bandStaffIndex(headCenterY, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING, numStaves);
+        return StaffGeometry.staffTopY(i, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING);
+    }
+}
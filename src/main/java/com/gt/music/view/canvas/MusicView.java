@@ -4,7 +4,13 @@ import com.gt.music.gestures.GestureStroke;
 import com.gt.music.gestures.ScratchOutDetector;
 import com.gt.music.model.MusicEditorModel;
 import com.gt.music.model.Note;
+import com.gt.music.model.Pitch;
 import com.gt.music.model.Rest;
+import com.gt.music.model.ScoreEvent;
+import com.gt.music.model.ScoreListener;
+import com.gt.music.model.ScorePage;
+import com.gt.music.model.StaffGeometry;
+import com.gt.music.model.StaffLayout;
 import com.gt.music.model.Symbol;
 import com.gt.music.types.Accidental;
 import com.gt.music.types.EditMode;
@@ -27,12 +33,12 @@ import java.util.function.Consumer;
 
 public class MusicView extends JComponent {
 
-    private static final int STAFF_WIDTH = 1000;
-    private static final int STAFF_HEIGHT = 60;
-    private static final int TOP_PADDING = 60;
-    private static final int LEFT_PADDING = 60;
-    private static final int STAFF_SPACING = 100;
-    private static final double SCALE_FACTOR = 1.5;
+    static final int STAFF_WIDTH = StaffLayout.STAFF_WIDTH;
+    static final int STAFF_HEIGHT = StaffLayout.STAFF_HEIGHT;
+    static final int TOP_PADDING = StaffLayout.TOP_PADDING;
+    static final int LEFT_PADDING = StaffLayout.LEFT_PADDING;
+    static final int STAFF_SPACING = StaffLayout.STAFF_SPACING;
+    static final double SCALE_FACTOR = StaffLayout.SPRITE_SCALE;
     private static final double SCRATCH_DIR_RATIO = 4.0;  // 横纵位移比例阈值
     private static final int SCRATCH_MIN_REVERSALS = 2;   // 至少两次水平反转
 
@@ -41,17 +47,29 @@ public class MusicView extends JComponent {
             "F5","E5","D5","C5","B4","A4","G4","F4","E4",
             "D4","C4","B3","A3","G3"
     };
-    private static final double HALF_LINE_SPACING = (double) STAFF_HEIGHT / 8.0;
+    // staff 顶线 = F5
+    private static final MusicViewPitchMapper.PitchTable PITCHES =
+            new MusicViewPitchMapper.PitchTable(PITCH_NAMES, "F5");
+    static final double HALF_LINE_SPACING = StaffLayout.HALF_LINE_SPACING;
     // yTolerance 吸附常量
     private static final int SNAP_Y_TOLERANCE_PX = (int) Math.round(HALF_LINE_SPACING);
 
-    private int numStaves = 4;
     private MusicEditorModel model;
-    private ArrayList<Symbol> symbols;
+    // 本视图显示的页面；符号归 ScorePage 所有，这里只读，修改一律走 page 的方法
+    private final ScorePage page;
+    private final List<Symbol> symbols;
+    private final ScoreListener pageListener = this::onPageEvent;
     private Symbol activeSymbol = null;
     private Symbol selectedSymbol = null;
     private Consumer<String> onPitchCalculatedCallback;
 
+    /** 拖动音符时音高一变就收到 (staff, MIDI 键号)；松手或音高出界时键号为 -1 */
+    public interface PitchAuditionListener {
+        void auditionPitch(int staff, int midiKey);
+    }
+    private PitchAuditionListener pitchAuditionListener;
+    private int lastAuditionKey = -1;
+
     // 拖拽升降号期间的 UI 状态
     private boolean draggingAccidental = false;
     private boolean showAllNoteBBoxes = false;
@@ -62,6 +80,31 @@ public class MusicView extends JComponent {
     private final MusicViewSnapper snapper = new MusicViewSnapper(12);
     // 记录拖拽期间所属的 staff，跨 staff 时用于重置吸附
     private Integer _lastDragStaffTop = null;
+    // 每条 staff 一份按 x 排序的 Note 索引（吸附用）；页面版本变化后整体重建
+    private MusicViewSnapper.StaffIndex[] staffIndexes = null;
+    private int staffIndexesRevision = -1;
+
+    // 拖拽合帧：mouseDragged 只记录最新指针，每帧（约 60fps）统一处理一次
+    private static final int DRAG_FRAME_MS = 16;
+    // 拖拽期间状态栏防抖间隔
+    private static final int STATUS_DEBOUNCE_MS = 80;
+    private final Timer dragFrameTimer;
+    private Point pendingDragPoint = null;
+    // 上一帧处理过的半线距格子；没跨格就跳过吸附/音高计算
+    private int lastSnapCellX = Integer.MIN_VALUE;
+    private int lastPitchStaffTop = Integer.MIN_VALUE;
+    private int lastPitchStep = Integer.MIN_VALUE;
+    private final Timer statusDebounceTimer;
+    private String pendingStatus = null;
+    // 按下到松开之间对符号的全部修改（新建、拖拽、吸附）合成一步撤销
+    private boolean editGroupOpen = false;
+
+    // 播放光标（x < 0 不显示）和正在发声的音符；播放时控制器每帧设置一次，只重绘变化的那几块
+    private static final int PLAYHEAD_WIDTH = 2;
+    private static final Color PLAYHEAD_COLOR = new Color(220, 40, 40, 200);
+    private static final Color SOUNDING_COLOR = new Color(255, 150, 0, 90);
+    private int playheadX = -1;
+    private List<Symbol> soundingSymbols = new ArrayList<>();
 
     private List<Point2D> currentStroke = new ArrayList<>();
     private boolean isDrawingStroke = false;
@@ -74,9 +117,11 @@ public class MusicView extends JComponent {
     /**
      * View.Component.main.java.com.gt.music.view.canvas.MusicView Constructor
      */
-    public MusicView(MusicEditorModel model) {
+    public MusicView(MusicEditorModel model, ScorePage page) {
         this.model = model;
-        this.symbols = new ArrayList<>();
+        this.page = page;
+        this.symbols = page.getSymbols();
+        page.addScoreListener(pageListener);
 
         updatePreferredSize();
 
@@ -86,6 +131,11 @@ public class MusicView extends JComponent {
         this.addKeyListener(handler);
         this.setFocusable(true);
         this.sprites = MusicViewImages.loadDefaultFromResources(SCALE_FACTOR);
+
+        this.dragFrameTimer = new Timer(DRAG_FRAME_MS, e -> flushPendingDrag());
+        this.dragFrameTimer.setRepeats(false);
+        this.statusDebounceTimer = new Timer(STATUS_DEBOUNCE_MS, e -> flushPendingStatus());
+        this.statusDebounceTimer.setRepeats(false);
     }
 
     /**
@@ -105,62 +155,13 @@ public class MusicView extends JComponent {
         g2.fillRect(0, 0, getWidth(), getHeight());
 
         // --- Drawing staff ---
-        g2.setColor(Color.BLACK);
-        for (int i = 0; i < numStaves; i++) {
-            int staffY = TOP_PADDING + i * (STAFF_HEIGHT + STAFF_SPACING);
-
-            int lineSpacing = STAFF_HEIGHT / 4;
-            for (int j = 0; j < 5; j++) {
-                int lineY = staffY + j * lineSpacing;
-                g2.drawLine(LEFT_PADDING, lineY, LEFT_PADDING + STAFF_WIDTH, lineY);
-            }
-
-            // Left/Right borders
-            g2.drawLine(LEFT_PADDING, staffY, LEFT_PADDING, staffY + STAFF_HEIGHT);
-            g2.drawLine(LEFT_PADDING + STAFF_WIDTH, staffY, LEFT_PADDING + STAFF_WIDTH, staffY + STAFF_HEIGHT);
-
-            // End line for last staff
-            if (i == numStaves - 1) {
-                g2.drawLine(LEFT_PADDING + STAFF_WIDTH - 6, staffY, LEFT_PADDING + STAFF_WIDTH - 6, staffY + STAFF_HEIGHT);
-                g2.fillRect(LEFT_PADDING + STAFF_WIDTH - 3, staffY, 3, STAFF_HEIGHT);
-            } else {
-                g2.drawLine(LEFT_PADDING + STAFF_WIDTH, staffY, LEFT_PADDING + STAFF_WIDTH, staffY + STAFF_HEIGHT);
-            }
-
-            // Clef & time
-            Image treble = sprites.get(MusicViewImages.Key.CLEF_TREBLE);
-            if (treble != null) {
-                g2.drawImage(treble, LEFT_PADDING + 10, staffY - 22, this);
-            }
-            Image common = sprites.get(MusicViewImages.Key.TIME_COMMON);
-            if (common != null) {
-                g2.drawImage(common, LEFT_PADDING + 80, staffY + 9, this);
-            }
-        }
+        PageCanvas canvas = PageCanvas.of(g2, this);
+        int numStaves = page.getNumStaves();
+        MusicPagePainter.paintStaves(canvas, numStaves, sprites);
 
         // --- Drawing items (notes/rests) ---  （原样保留）
         for (Symbol symbol : symbols) {
-            if (symbol instanceof Note) {
-                Note n = (Note) symbol;
-                drawLedgerLines(g2, n);
-
-                Image noteImg = getImageForSymbol(n);
-                if (noteImg != null) g2.drawImage(noteImg, n.getX(), n.getY(), null);
-
-                Accidental a = n.getAccidental();
-                if (a != Accidental.NONE) {
-                    Image accImg = MusicViewImages.forAccidental(a, sprites);
-                    if (accImg != null) {
-                        int aw = accImg.getWidth(null);
-                        int ax = n.getX() - aw - 4;
-                        int ay = n.getY() + 35;
-                        g2.drawImage(accImg, ax, ay, null);
-                    }
-                }
-            } else if (symbol instanceof Rest) {
-                Image restImg = getImageForSymbol(symbol);
-                if (restImg != null) g2.drawImage(restImg, symbol.getX(), symbol.getY(), null);
-            }
+            MusicPagePainter.paintSymbol(canvas, symbol, numStaves, sprites);
 
             Image img = getImageForSymbol(symbol);
             if (symbol == selectedSymbol && img != null) {
@@ -170,6 +171,21 @@ public class MusicView extends JComponent {
             }
         }
 
+        // --- 播放中：正在发声的音符和播放光标 ---
+        if (!soundingSymbols.isEmpty()) {
+            g2.setColor(SOUNDING_COLOR);
+            for (Symbol s : soundingSymbols) {
+                Rectangle r = getSymbolBounds(s);
+                if (r != null) g2.fill(r);
+            }
+            g2.setColor(Color.BLACK);
+        }
+        if (playheadX >= 0) {
+            g2.setColor(PLAYHEAD_COLOR);
+            g2.fillRect(playheadX, 0, PLAYHEAD_WIDTH, getHeight());
+            g2.setColor(Color.BLACK);
+        }
+
         // --- NOTES全局包围盒高亮（原样） ---
         if (showAllNoteBBoxes) {
             g2.setColor(new Color(0, 120, 215, 140));
@@ -298,6 +314,7 @@ public class MusicView extends JComponent {
         //    - 与 scratchBox 相交的 Note：若只命中 accidental 区域则去掉 accidental；否则删除 Note
         List<Symbol> toRemove = new ArrayList<>();
         int accidentalClearedCount = 0;
+        model.getHistory().beginGroup();
 
         for (Symbol s : new ArrayList<>(symbols)) {
             Rectangle symBox = getSymbolBounds(s);
@@ -324,7 +341,7 @@ public class MusicView extends JComponent {
                 if (accHit && !noteHit) {
                     // 只划到了升降号 → 清除 accidental
                     if (n.getAccidental() != Accidental.NONE) {
-                        n.setAccidental(Accidental.NONE);
+                        page.setAccidental(n, Accidental.NONE);
                         accidentalClearedCount++;
                     }
                 } else {
@@ -334,10 +351,11 @@ public class MusicView extends JComponent {
             }
         }
 
-        // 应用删除
+        // 应用删除（与上面清除的升降号一起算一步撤销）
         if (!toRemove.isEmpty()) {
-            symbols.removeAll(toRemove);
+            page.removeSymbols(toRemove);
         }
+        model.getHistory().endGroup();
 
         // 状态栏提示
         if (!toRemove.isEmpty() && accidentalClearedCount > 0) {
@@ -382,19 +400,18 @@ public class MusicView extends JComponent {
         if (name.contains("note") || name.contains("circle")) {
             NoteDuration dur = mapDurationFromName(name);
             newSymbol = new Note(x, y, dur);
-            symbols.add(newSymbol);
+            page.addSymbol(newSymbol);
             updateStatus("Recognized: " + name + " → Note added at (" + x + ", " + y + ")");
         } else if (name.contains("rest") || name.contains("rectangle") || name.contains("right curly brace")) {
             NoteDuration dur = mapDurationFromName(name);
             newSymbol = new Rest(x, y, dur);
-            symbols.add(newSymbol);
+            page.addSymbol(newSymbol);
             updateStatus("Recognized: " + name + " → Rest added at (" + x + ", " + y + ")");
         } else if (name.contains("star") || name.contains("flat")) {
             Symbol target = findNoteAtPoint(x, y);
             if (target instanceof Note) {
                 Note note = (Note) target;
-                if (name.contains("star")) note.setAccidental(Accidental.SHARP);
-                else note.setAccidental(Accidental.FLAT);
+                page.setAccidental(note, name.contains("star") ? Accidental.SHARP : Accidental.FLAT);
                 updateStatus("Recognized: " + name + " → applied to note " + note.getPitch());
             } else {
                 updateStatus("Recognized " + name + " but not over a note → ignored.");
@@ -477,17 +494,85 @@ public class MusicView extends JComponent {
     }
 
 
-    public void setNumStaves(int count) {
-        this.numStaves = count;
+    /** 页面模型的变化（可能来自本视图，也可能来自别处）：同步选中态、尺寸并重绘 */
+    private void onPageEvent(ScoreEvent e) {
+        switch (e.getType()) {
+            case STAVES_CHANGED:
+                updatePreferredSize();
+                break;
+            case SYMBOL_REMOVED:
+                Symbol s = e.getSymbol();
+                if (s == selectedSymbol) selectedSymbol = null;
+                if (s == selectedAccidentalNote) selectedAccidentalNote = null;
+                soundingSymbols.remove(s);
+                if (s == activeSymbol) {
+                    stopAudition();
+                    activeSymbol = null;
+                    resetDragFrameState();
+                    endEditGroup();
+                }
+                break;
+            default:
+                break;
+        }
+        repaint();
+    }
 
-        updatePreferredSize();
-        this.repaint();
+    private void beginEditGroup() {
+        if (editGroupOpen) return;
+        editGroupOpen = true;
+        model.getHistory().beginGroup();
+    }
+
+    private void endEditGroup() {
+        if (!editGroupOpen) return;
+        editGroupOpen = false;
+        model.getHistory().endGroup();
+    }
+
+    /**
+     * 播放光标移到 x（&lt; 0 隐藏），高亮 sounding 里的音符。只重绘旧、新光标所在的竖条
+     * 和高亮有变化的音符，其余部分不动；在 EDT 上调用。
+     */
+    public void setPlayhead(int x, List<Symbol> sounding) {
+        if (x != playheadX) {
+            repaintPlayhead(playheadX);
+            playheadX = x;
+            repaintPlayhead(x);
+        }
+        if (!sounding.equals(soundingSymbols)) {
+            for (Symbol s : soundingSymbols) repaintSymbol(s);
+            soundingSymbols = new ArrayList<>(sounding);
+            for (Symbol s : soundingSymbols) repaintSymbol(s);
+        }
+    }
+
+    public void clearPlayhead() {
+        setPlayhead(-1, new ArrayList<>());
+    }
+
+    private void repaintPlayhead(int x) {
+        if (x >= 0) repaint(x, 0, PLAYHEAD_WIDTH, getHeight());
+    }
+
+    private void repaintSymbol(Symbol s) {
+        Rectangle r = getSymbolBounds(s);
+        if (r != null) repaint(r);
+    }
+
+    /** 页面被删除时调用：不再监听模型 */
+    public void dispose() {
+        page.removeScoreListener(pageListener);
+        stopAudition();
+        endEditGroup();
+        dragFrameTimer.stop();
+        statusDebounceTimer.stop();
     }
 
     private void updatePreferredSize() {
-        int newWidth = LEFT_PADDING * 2 + STAFF_WIDTH;
+        int newWidth = MusicPagePainter.pageWidth();
         // Total height
-        int newHeight = (TOP_PADDING * 2) + (numStaves * STAFF_HEIGHT) + ((numStaves - 1) * STAFF_SPACING);
+        int newHeight = MusicPagePainter.pageHeight(page.getNumStaves());
 
         // New preferred size
         setPreferredSize(new Dimension(newWidth, newHeight));
@@ -546,7 +631,8 @@ public class MusicView extends JComponent {
                         newSymbol.setX(e.getX() - img.getWidth(null)  / 2);
                         newSymbol.setY(e.getY() - img.getHeight(null) / 2);
                     }
-                    symbols.add(newSymbol);
+                    beginEditGroup();
+                    page.addSymbol(newSymbol);
                     activeSymbol = newSymbol;
                     repaint();
                 }
@@ -569,10 +655,13 @@ public class MusicView extends JComponent {
                     selectedSymbol = s;
                     activeSymbol   = s;
                     hit = true;
+                    beginEditGroup();
 
                     if (s instanceof Note) {
                         // 进入拖拽准备态 & 状态栏更新
                         snapper.onDragStart((Note) s);
+                        resetDragFrameState();
+                        lastAuditionKey = ((Note) s).getMidiKey();   // only changes are heard
                         updatePitchStatus((Note) s);
                         repaint();
                         return; // 命中 Note 时直接返回，避免后续逻辑覆盖状态栏
@@ -637,69 +726,11 @@ public class MusicView extends JComponent {
                 return;
             }
 
-            // 3) 选中符号拖拽（你原有的大段逻辑，原样保留）
+            // 3) 选中符号拖拽：只记下最新指针位置，交给下一帧统一处理；试听不等这一帧
             if (activeSymbol != null) {
-                Image img = getImageForSymbol(activeSymbol);
-
-                if (activeSymbol instanceof Note) {
-                    Note dragging = (Note) activeSymbol;
-
-                    int halfW = (img != null) ? img.getWidth(null) / 2 : 8;
-                    int halfH = (img != null) ? img.getHeight(null) / 2 : 8;
-
-                    java.util.List<Symbol> sameStaff = getSymbolsOnSameStaff(dragging);
-
-                    int aCenterYNow = (img != null) ? (dragging.getY() + img.getHeight(null) / 2) : dragging.getY();
-                    int staffTopNow = MusicViewSnapper.nearestStaffTopY(
-                            aCenterYNow, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING, numStaves);
-
-                    if (_lastDragStaffTop == null) {
-                        _lastDragStaffTop = staffTopNow;
-                    } else if (!_lastDragStaffTop.equals(staffTopNow)) {
-                        snapper.onDragStart(dragging);
-                        _lastDragStaffTop = staffTopNow;
-                    }
-
-                    snapper.onDragMove(
-                            dragging,
-                            sameStaff,
-                            e.getX(),
-                            halfW,
-                            (Note n) -> {
-                                Image im = getImageForSymbol(n);
-                                return (im != null) ? im.getWidth(null) : (halfW * 2);
-                            }
-                    );
-
-                    Integer snappedX = snapper.snappedXOrNull();
-                    int newX = (snappedX != null) ? snappedX : (e.getX() - halfW);
-                    int newY = (img != null) ? (e.getY() - halfH) : e.getY();
-
-                    dragging.setX(newX);
-                    dragging.setY(newY);
-
-                    int headY = noteheadCenterY(dragging);
-                    String pitch = MusicViewPitchMapper.calculatePitch(
-                            headY,
-                            numStaves,
-                            TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING,
-                            HALF_LINE_SPACING,
-                            PITCH_NAMES
-                    );
-                    dragging.setPitch(pitch);
-                    updatePitchStatus(dragging);
-
-                } else {
-                    if (img != null) {
-                        activeSymbol.setX(e.getX() - img.getWidth(null) / 2);
-                        activeSymbol.setY(e.getY() - img.getHeight(null) / 2);
-                    } else {
-                        activeSymbol.setX(e.getX());
-                        activeSymbol.setY(e.getY());
-                    }
-                }
-
-                MusicView.this.repaint();
+                if (isSelectMode() && activeSymbol instanceof Note) auditionDragPitch((Note) activeSymbol, e.getY());
+                pendingDragPoint = e.getPoint();
+                if (!dragFrameTimer.isRunning()) dragFrameTimer.start();
             }
         }
 
@@ -729,17 +760,21 @@ public class MusicView extends JComponent {
 
             // --- 2) 结束符号拖拽（Note / Rest）---
             if (activeSymbol != null) {
+                stopAudition();
+                // 先把还没来得及处理的最后一帧落地，保证松手位置准确
+                flushPendingDrag();
+
                 // Drag Note
                 if (activeSymbol instanceof Note) {
                     Note activeNote = (Note) activeSymbol;
 
                     // 1) 用音头中心 Y 计算音高（覆盖 G3..D6）
                     int headY = noteheadCenterY(activeNote);
-                    String pitch = MusicViewPitchMapper.calculatePitch(
-                            headY, numStaves, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING,
-                            HALF_LINE_SPACING, PITCH_NAMES);
-                    activeNote.setPitch(pitch);
-                    if (onPitchCalculatedCallback != null) onPitchCalculatedCallback.accept(pitch);
+                    page.setPitchStep(activeNote, calculatePitchStep(headY), true);
+                    if (onPitchCalculatedCallback != null) {
+                        onPitchCalculatedCallback.accept(
+                                activeNote.getPitchStep() == Pitch.NONE ? "Outside" : activeNote.getPitch());
+                    }
 
                     // 2) 纵向吸附（贴线/贴间）
                     int staffTopY = findStaffTopY(headY); // 若返回 -1 就不 snap
@@ -750,7 +785,7 @@ public class MusicView extends JComponent {
                         Image img = getImageForSymbol(activeNote);
                         int noteH = (img != null) ? img.getHeight(null) : 0;
                         int lineSpacing = (int) Math.round(2 * HALF_LINE_SPACING);
-                        activeNote.setY(snappedHeadY - (noteH - lineSpacing / 2));
+                        page.moveSymbol(activeNote, activeNote.getX(), snappedHeadY - (noteH - lineSpacing / 2), true);
                         MusicView.this.repaint();
                     }
 
@@ -770,20 +805,17 @@ public class MusicView extends JComponent {
                     int staffTopY = findStaffTopY(centerY);
                     if (staffTopY != -1) {
                         int midY = staffTopY + (STAFF_HEIGHT / 2); // 中线
-                        activeSymbol.setY(midY - imgH / 2);
+                        page.moveSymbol(activeSymbol, activeSymbol.getX(), midY - imgH / 2, true);
                         MusicView.this.repaint();
                     }
                 }
+                // 拖拽结束：落点作为一次完成的修改通知出去（缩略图、撤销等只关心这一次）
+                page.moveSymbol(activeSymbol, activeSymbol.getX(), activeSymbol.getY(), false);
             }
 
             activeSymbol = null;
-        }
-
-
-        private int findStaffTopY(int absoluteY) {
-            return MusicViewSnapper.nearestStaffTopY(
-                    absoluteY, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING, numStaves
-            );
+            resetDragFrameState();
+            endEditGroup();
         }
 
         // 判断当前模式：选择SELECT/自由绘制PEN/普通绘制DRAW
@@ -825,7 +857,7 @@ public class MusicView extends JComponent {
                     Note note = selectedAccidentalNote;
 
                     // 清除状态
-                    note.setAccidental(Accidental.NONE);
+                    page.setAccidental(note, Accidental.NONE);
 
                     updatePitchStatus(note);
 
@@ -837,7 +869,7 @@ public class MusicView extends JComponent {
                 }
 
                 if (selectedSymbol != null) {
-                    symbols.remove(selectedSymbol);
+                    page.removeSymbol(selectedSymbol);
                     selectedSymbol = null;
                     MusicView.this.repaint();
                 }
@@ -892,11 +924,10 @@ public class MusicView extends JComponent {
 
         // 3) 写入 accidental（唯一性自然替换）
         ToolType tool = model.getCurrentTool();
-        String oldPitch = target.getPitch();
         if (tool == ToolType.SHARP) {
-            target.setAccidental(Accidental.SHARP);
+            page.setAccidental(target, Accidental.SHARP);
         } else if (tool == ToolType.FLAT) {
-            target.setAccidental(Accidental.FLAT);
+            page.setAccidental(target, Accidental.FLAT);
         } else {
             return false;
         }
@@ -963,15 +994,15 @@ public class MusicView extends JComponent {
         return MusicViewPitchMapper.getPositionPointForNote(duration, SCALE_FACTOR);
     }
 
-    private String calculatePitch(int absoluteY) {
-        return MusicViewPitchMapper.calculatePitch(
+    private int calculatePitchStep(int absoluteY) {
+        return MusicViewPitchMapper.calculatePitchStep(
                 absoluteY,
-                numStaves,
+                page.getNumStaves(),
                 TOP_PADDING,
                 STAFF_HEIGHT,
                 STAFF_SPACING,
                 HALF_LINE_SPACING,
-                PITCH_NAMES
+                PITCHES
         );
     }
 
@@ -979,10 +1010,43 @@ public class MusicView extends JComponent {
         return this.model;
     }
 
+    public ScorePage getPage() {
+        return page;
+    }
+
+    public int getNumStaves() {
+        return page.getNumStaves();
+    }
+
     public void setOnPitchCalculated(Consumer<String> callback) {
         this.onPitchCalculatedCallback = callback;
     }
 
+    public void setOnPitchAudition(PitchAuditionListener listener) {
+        this.pitchAuditionListener = listener;
+    }
+
+    /**
+     * 拖动中：按指针 y 直接算出这一帧将要落到的音高（与 flushPendingDrag 的结果相同），变了就报告，
+     * 不必等下一帧真正移动音符
+     */
+    private void auditionDragPitch(Note dragging, int pointerY) {
+        if (pitchAuditionListener == null) return;
+        Image img = getImageForSymbol(dragging);
+        int newY = (img != null) ? pointerY - img.getHeight(null) / 2 : pointerY;
+        int headY = noteheadCenterY(dragging) - dragging.getY() + newY;
+        int key = Pitch.midiKey(calculatePitchStep(headY), dragging.getAccidental());
+        if (key == lastAuditionKey) return;
+        lastAuditionKey = key;
+        int staff = StaffGeometry.bandStaffIndex(headY, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING, page.getNumStaves());
+        pitchAuditionListener.auditionPitch(staff, key);
+    }
+
+    private void stopAudition() {
+        if (lastAuditionKey >= 0 && pitchAuditionListener != null) pitchAuditionListener.auditionPitch(0, -1);
+        lastAuditionKey = -1;
+    }
+
 
     public void setStatusSink(Consumer<String> sink) {
         this.statusSink = sink;
@@ -992,101 +1056,154 @@ public class MusicView extends JComponent {
     }
     private void updatePitchStatus(Note note) {
         if (note == null || statusSink == null) return;
-        // 组合“G4♯ / G4♭ / G4”
-        statusSink.accept("Status: Pitch: " + note.getDisplayPitchWithAccidentalSymbol());
+        // 直接刷新时丢弃尚未发出的防抖文本，避免旧音高覆盖新状态
+        statusDebounceTimer.stop();
+        pendingStatus = null;
+        statusSink.accept("Status: Pitch: " + displayPitch(note));
     }
 
+    // 组合“G4♯ / G4♭ / G4”；落在 G3..D6 之外显示 Outside
+    private static String displayPitch(Note note) {
+        if (note.getPitchStep() == Pitch.NONE) return "Outside";
+        return note.getDisplayPitchWithAccidentalSymbol();
+    }
 
-    // 只返回与 dragging 同一 staff 的 Note（Rest 自动被排除）
-    private java.util.List<Symbol> getSymbolsOnSameStaff(Note dragging) {
-        java.util.List<Symbol> out = new java.util.ArrayList<>();
-        Image imgA = getImageForSymbol(dragging);
-        int headH = (int) Math.round(2 * HALF_LINE_SPACING);
-        int headCenterY = (imgA != null) ? (dragging.getY() + imgA.getHeight(null) - headH / 2)
-                : (dragging.getY());
-        int staffTop = staffTopForNotehead(headCenterY);
-        int staffBottom = staffTop + STAFF_HEIGHT;
+    /** 拖拽期间使用：只保留最新文本，最多每 STATUS_DEBOUNCE_MS 刷新一次状态栏 */
+    private void updatePitchStatusDebounced(Note note) {
+        if (note == null || statusSink == null) return;
+        pendingStatus = "Status: Pitch: " + displayPitch(note);
+        if (!statusDebounceTimer.isRunning()) statusDebounceTimer.start();
+    }
 
-        for (Symbol s : symbols) {
-            if (!(s instanceof Note)) continue;
-            Image im = getImageForSymbol(s);
-            int hH = (int) Math.round(2 * HALF_LINE_SPACING);
-            int cY = (im != null) ? (s.getY() + im.getHeight(null) - hH / 2) : s.getY(); // 用“音头中心”
-            if (cY >= staffTop - STAFF_SPACING / 2 && cY <= staffBottom + STAFF_SPACING / 2) {
-                out.add(s);
+    private void flushPendingStatus() {
+        if (pendingStatus != null && statusSink != null) statusSink.accept(pendingStatus);
+        pendingStatus = null;
+    }
+
+    private int findStaffTopY(int absoluteY) {
+        return MusicViewSnapper.nearestStaffTopY(
+                absoluteY, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING, page.getNumStaves()
+        );
+    }
+
+    private void resetDragFrameState() {
+        dragFrameTimer.stop();
+        pendingDragPoint = null;
+        lastSnapCellX = Integer.MIN_VALUE;
+        lastPitchStaffTop = Integer.MIN_VALUE;
+        lastPitchStep = Integer.MIN_VALUE;
+        _lastDragStaffTop = null;
+    }
+
+    /** 每帧一次：用最新的指针位置移动选中符号，并按需更新吸附与音高 */
+    private void flushPendingDrag() {
+        dragFrameTimer.stop();
+        Point p = pendingDragPoint;
+        pendingDragPoint = null;
+        if (p == null || activeSymbol == null) return;
+
+        Image img = getImageForSymbol(activeSymbol);
+
+        if (activeSymbol instanceof Note) {
+            Note dragging = (Note) activeSymbol;
+
+            int halfW = (img != null) ? img.getWidth(null) / 2 : 8;
+            int halfH = (img != null) ? img.getHeight(null) / 2 : 8;
+
+            int aCenterYNow = (img != null) ? (dragging.getY() + img.getHeight(null) / 2) : dragging.getY();
+            int staffTopNow = findStaffTopY(aCenterYNow);
+
+            boolean staffChanged = false;
+            if (_lastDragStaffTop == null) {
+                _lastDragStaffTop = staffTopNow;
+                staffChanged = true;
+            } else if (!_lastDragStaffTop.equals(staffTopNow)) {
+                snapper.onDragStart(dragging);
+                _lastDragStaffTop = staffTopNow;
+                staffChanged = true;
+            }
+
+            // 横向没跨过半线距格子且 staff 未变：沿用上一帧的吸附结果
+            int cellX = (int) Math.floor(p.x / HALF_LINE_SPACING);
+            if (staffChanged || cellX != lastSnapCellX) {
+                lastSnapCellX = cellX;
+                snapper.onDragMove(
+                        dragging,
+                        staffIndexFor(staffTopForNotehead(noteheadCenterY(dragging))),
+                        p.x,
+                        halfW
+                );
+            }
+
+            Integer snappedX = snapper.snappedXOrNull();
+            int newX = (snappedX != null) ? snappedX : (p.x - halfW);
+            int newY = (img != null) ? (p.y - halfH) : p.y;
+
+            page.moveSymbol(dragging, newX, newY, true);
+
+            // 音头没跨过半线距边界时音高不会变，跳过重新计算
+            int headY = noteheadCenterY(dragging);
+            int pitchStaffTop = findStaffTopY(headY);
+            int step = (int) Math.round((headY - pitchStaffTop) / HALF_LINE_SPACING);
+            if (pitchStaffTop != lastPitchStaffTop || step != lastPitchStep) {
+                lastPitchStaffTop = pitchStaffTop;
+                lastPitchStep = step;
+                page.setPitchStep(dragging, calculatePitchStep(headY), true);
+                updatePitchStatusDebounced(dragging);
+            }
+
+        } else {
+            if (img != null) {
+                page.moveSymbol(activeSymbol, p.x - img.getWidth(null) / 2, p.y - img.getHeight(null) / 2, true);
+            } else {
+                page.moveSymbol(activeSymbol, p.x, p.y, true);
             }
         }
-        return out;
-    }
 
+        repaint();
+    }
 
 
     /**
-     * 为超出五线谱上下边界的 Note 画加线（最多两条）。
-     * 约定：当前 Note 的 (x,y) 是图片的“左上角”，我们据此取图宽高，计算中心与横向线段宽度。
+     * 取某条 staff 的 x 索引（只含 Note，Rest 自动被排除）。
+     * 归属规则与 staffTopForNotehead 相同：音头中心落在 staff 上下各扩半个空白的带子里；
+     * 超出所有带子的 Note 不参与吸附。索引按页面版本缓存，拖拽过程中不会重建。
      */
-    private void drawLedgerLines(Graphics2D g2, Note n) {
-        Image img = getImageForSymbol(n);
-        if (img == null) return;
-
-        // 以“线距”为单位计算：lineSpacing=相邻两条五线的垂直距离
-        final int lineSpacing = (int) Math.round(2 * HALF_LINE_SPACING);  // = STAFF_HEIGHT/4
-        // 先算音头中心（已修正为 head 在底部）
-        final int HEAD_BOTTOM_PADDING = 0;
-        final int headH = (int) Math.round(2 * HALF_LINE_SPACING); // ~= lineSpacing
-        final int posY  = n.getY() + img.getHeight(null) - HEAD_BOTTOM_PADDING - headH / 2;
-
-        // 用“半间距缓冲”的归属法，而不是最近中心
-        final int staffTopY    = staffTopForNotehead(posY);
-        final int staffBottomY = staffTopY + STAFF_HEIGHT;
-
-
-        final int noteLeft = n.getX();
-        final int noteTop = n.getY();
-        final int noteW = img.getWidth(null);
-        final int noteH = img.getHeight(null);
-
-        // 画短横线长度：略宽于音头（视觉好看一点）
-        final int halfW = noteW / 2;
-        final int pad = Math.max(4, halfW / 2);
-        final int x1 = noteLeft - pad;
-        final int x2 = noteLeft + noteW + pad;
-
-
-        int count = 0;            // 需要几条加线（0~2）
-        boolean above = false;    // true=在上方; false=在下方
-
-        if (posY < staffTopY) {
-            int diff = staffTopY - posY;
-            count = Math.min(2, diff / lineSpacing); // floor(diff/lineSpacing)
-            above = true;
-        } else if (posY > staffBottomY) {
-            int diff = posY - staffBottomY;
-            count = Math.min(2, diff / lineSpacing); // floor(diff/lineSpacing)
-            above = false;
+    private MusicViewSnapper.StaffIndex staffIndexFor(int staffTop) {
+        if (staffIndexes == null || staffIndexesRevision != page.getRevision()
+                || staffIndexes.length != page.getNumStaves()) {
+            rebuildStaffIndexes();
         }
+        int i = (staffTop - TOP_PADDING) / (STAFF_HEIGHT + STAFF_SPACING);
+        return (i >= 0 && i < staffIndexes.length) ? staffIndexes[i] : MusicViewSnapper.StaffIndex.EMPTY;
+    }
 
-        if (count <= 0) return;
-
-        Stroke old = g2.getStroke();
-        g2.setStroke(new BasicStroke(2f)); // 线条稍粗一点，和五线一致或略粗
-        // 画 1 或 2 条
-        if (above) {
-            int y1 = staffTopY - lineSpacing;      // 第一条：贴近 staff 顶部的那条
-            g2.drawLine(x1, y1, x2, y1);
-            if (count >= 2) {
-                int y2 = staffTopY - 2 * lineSpacing;
-                g2.drawLine(x1, y2, x2, y2);
-            }
-        } else {
-            int y1 = staffBottomY + lineSpacing;   // 第一条：贴近 staff 底部的那条
-            g2.drawLine(x1, y1, x2, y1);
-            if (count >= 2) {
-                int y2 = staffBottomY + 2 * lineSpacing;
-                g2.drawLine(x1, y2, x2, y2);
+    private void rebuildStaffIndexes() {
+        int numStaves = page.getNumStaves();
+        List<List<Note>> buckets = new ArrayList<>(numStaves);
+        for (int i = 0; i < numStaves; i++) buckets.add(new ArrayList<>());
+
+        int headH = (int) Math.round(2 * HALF_LINE_SPACING);
+        for (Symbol s : symbols) {
+            if (!(s instanceof Note)) continue;
+            Image im = getImageForSymbol(s);
+            int cY = (im != null) ? (s.getY() + im.getHeight(null) - headH / 2) : s.getY(); // 用“音头中心”
+            int staffIdx = StaffGeometry.bandStaffIndex(cY, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING, numStaves);
+            int staffTop = StaffGeometry.staffTopY(staffIdx, TOP_PADDING, STAFF_HEIGHT, STAFF_SPACING);
+            if (cY >= staffTop - STAFF_SPACING / 2 && cY <= staffTop + STAFF_HEIGHT + STAFF_SPACING / 2) {
+                buckets.get(staffIdx).add((Note) s);
             }
         }
-        g2.setStroke(old);
+
+        MusicViewSnapper.NoteWidthProvider widths = n -> {
+            Image im = getImageForSymbol(n);
+            return (im != null) ? im.getWidth(null) : 16;
+        };
+        staffIndexes = new MusicViewSnapper.StaffIndex[numStaves];
+        for (int i = 0; i < numStaves; i++) {
+            staffIndexes[i] = MusicViewSnapper.StaffIndex.build(buckets.get(i), widths);
+        }
+        staffIndexesRevision = page.getRevision();
     }
 
 
@@ -1095,19 +1212,7 @@ public class MusicView extends JComponent {
      * 只有当音头中心跨过两条 staff 的中线（空白区的一半）才切换 staff。
      */
     private int staffTopForNotehead(int headCenterY) {
-        for (int i = 0; i < numStaves; i++) {
-            int top = TOP_PADDING + i * (STAFF_HEIGHT + STAFF_SPACING);
-            int bottom = top + STAFF_HEIGHT;
-            int bandTop    = top - STAFF_SPACING / 2;    // 向上扩一半空白
-            int bandBottom = bottom + STAFF_SPACING / 2; // 向下扩一半空白
-            if (headCenterY >= bandTop && headCenterY <= bandBottom) {
-                return top;
-            }
-        }
-        // 超出所有带子：钳到最近的端头
-        int lastTop = TOP_PADDING + (numStaves - 1) * (STAFF_HEIGHT + STAFF_SPACING);
-        if (headCenterY < TOP_PADDING - STAFF_SPACING / 2) return TOP_PADDING;
-        return lastTop;
+        return MusicPagePainter.staffTopForNotehead(headCenterY, page.getNumStaves());
     }
 
 
@@ -1120,13 +1225,6 @@ public class MusicView extends JComponent {
     }
 
 
-    // +++ 在 MusicView 里新增 +++
-    public java.util.List<com.gt.music.model.Symbol> exportSymbolsInReadingOrder(){
-        java.util.List<com.gt.music.model.Symbol> out = new java.util.ArrayList<>(this.symbols /* ← 替换为你的容器名 */);
-        out.sort(java.util.Comparator.comparingInt(com.gt.music.model.Symbol::getX));
-        return out;
-    }
-
     /** 将识别出的名称映射到 NoteDuration */
     private NoteDuration mapDurationFromName(String name) {
         name = name.toLowerCase();
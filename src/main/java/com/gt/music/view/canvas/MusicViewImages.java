@@ -8,6 +8,7 @@ import com.gt.music.types.NoteDuration;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 final class MusicViewImages {
@@ -32,51 +33,62 @@ final class MusicViewImages {
 
     // 选择器：根据 com.gt.music.model.Symbol/Duration 选择一个图片 Key，然后让 Bank 提供真正的 Image
     static Image forSymbol(Symbol s, Bank bank) {
+        Key key = keyForSymbol(s);
+        return (key != null) ? bank.get(key) : null;
+    }
+
+    static Key keyForSymbol(Symbol s) {
         NoteDuration d = s.getDuration();
         if (s instanceof Note) {
             switch (d) {
                 case WHOLE:
-                    return bank.get(Key.NOTE_WHOLE);
+                    return Key.NOTE_WHOLE;
                 case HALF:
-                    return bank.get(Key.NOTE_HALF);
+                    return Key.NOTE_HALF;
                 case QUARTER:
-                    return bank.get(Key.NOTE_QUARTER);
+                    return Key.NOTE_QUARTER;
                 case EIGHTH:
-                    return bank.get(Key.NOTE_EIGHTH);
+                    return Key.NOTE_EIGHTH;
                 case SIXTEENTH:
-                    return bank.get(Key.NOTE_SIXTEENTH);
+                    return Key.NOTE_SIXTEENTH;
                 default:
                     return null;
             }
         } else if (s instanceof Rest) {
             switch (d) {
                 case WHOLE:
-                    return bank.get(Key.REST_WHOLE);
+                    return Key.REST_WHOLE;
                 case HALF:
-                    return bank.get(Key.REST_HALF);
+                    return Key.REST_HALF;
                 case QUARTER:
-                    return bank.get(Key.REST_QUARTER);
+                    return Key.REST_QUARTER;
                 case EIGHTH:
-                    return bank.get(Key.REST_EIGHTH);
+                    return Key.REST_EIGHTH;
                 case SIXTEENTH:
-                    return bank.get(Key.REST_SIXTEENTH);
+                    return Key.REST_SIXTEENTH;
                 default:
                     return null;
             }
         }
         return null;
     }
+
     // 供 MusicView 使用：根据 Accidental 类型从 bank 获取图片
     static Image forAccidental(Accidental a, Bank bank) {
+        Key key = keyForAccidental(a);
+        return (key != null) ? bank.get(key) : null;
+    }
+
+    static Key keyForAccidental(Accidental a) {
         if (a == null || a == Accidental.NONE) {
             return null;
         }
 
         switch (a) {
             case SHARP:
-                return bank.get(Key.ACC_SHARP);
+                return Key.ACC_SHARP;
             case FLAT:
-                return bank.get(Key.ACC_FLAT);
+                return Key.ACC_FLAT;
             default:
                 return null;
         }
@@ -163,24 +175,36 @@ final class MusicViewImages {
 
     // 按你的默认路径加载 10 张图片并缩放，然后组装成 SpriteBank 返回。
     static SpriteBank loadDefaultFromResources(double scaleFactor) {
+        return loadFromResources(scaleFactor, false);
+    }
+
+    /**
+     * 与 loadDefaultFromResources 相同的图片与缩放，但全部同步缩放成 BufferedImage：
+     * 宽高立即可用，也可以在后台线程/离屏 Graphics2D 上直接绘制（不依赖 ImageObserver）。
+     */
+    static SpriteBank loadBufferedFromResources(double scaleFactor) {
+        return loadFromResources(scaleFactor, true);
+    }
+
+    private static SpriteBank loadFromResources(double scaleFactor, boolean buffered) {
         try {
-            Image noteWhole = loadScaled("/images/IMGmaterials/wholeNote.png", scaleFactor);
-            Image noteHalf = loadScaled("/images/IMGmaterials/halfNote.png", scaleFactor);
-            Image noteQuarter = loadScaled("/images/IMGmaterials/quarterNote.png", scaleFactor);
-            Image noteEighth = loadScaled("/images/IMGmaterials/eighthNote.png", scaleFactor);
-            Image noteSixteenth = loadScaled("/images/IMGmaterials/sixteenthNote.png", scaleFactor);
+            Image noteWhole = loadScaled("/images/IMGmaterials/wholeNote.png", scaleFactor, buffered);
+            Image noteHalf = loadScaled("/images/IMGmaterials/halfNote.png", scaleFactor, buffered);
+            Image noteQuarter = loadScaled("/images/IMGmaterials/quarterNote.png", scaleFactor, buffered);
+            Image noteEighth = loadScaled("/images/IMGmaterials/eighthNote.png", scaleFactor, buffered);
+            Image noteSixteenth = loadScaled("/images/IMGmaterials/sixteenthNote.png", scaleFactor, buffered);
 
-            Image restWhole = loadScaled("/images/IMGmaterials/wholeRest.png", scaleFactor);
-            Image restHalf = loadScaled("/images/IMGmaterials/halfRest.png", scaleFactor);
-            Image restQuarter = loadScaled("/images/IMGmaterials/quarterRest.png", scaleFactor);
-            Image restEighth = loadScaled("/images/IMGmaterials/eighthRest.png", scaleFactor);
-            Image restSixteenth = loadScaled("/images/IMGmaterials/sixteenthRest.png", scaleFactor);
+            Image restWhole = loadScaled("/images/IMGmaterials/wholeRest.png", scaleFactor, buffered);
+            Image restHalf = loadScaled("/images/IMGmaterials/halfRest.png", scaleFactor, buffered);
+            Image restQuarter = loadScaled("/images/IMGmaterials/quarterRest.png", scaleFactor, buffered);
+            Image restEighth = loadScaled("/images/IMGmaterials/eighthRest.png", scaleFactor, buffered);
+            Image restSixteenth = loadScaled("/images/IMGmaterials/sixteenthRest.png", scaleFactor, buffered);
 
-            Image clefTreble = loadScaled("/images/IMGmaterials/trebleClef.png", 1.2);
-            Image timeCommon = loadScaled("/images/IMGmaterials/commonTime.png", 0.8);
+            Image clefTreble = loadScaled("/images/IMGmaterials/trebleClef.png", 1.2, buffered);
+            Image timeCommon = loadScaled("/images/IMGmaterials/commonTime.png", 0.8, buffered);
 
-            Image accSharp = loadScaled("/images/IMGmaterials/sharp.png", 1.2);
-            Image accFlat  = loadScaled("/images/IMGmaterials/flat.png",  1.2);
+            Image accSharp = loadScaled("/images/IMGmaterials/sharp.png", 1.2, buffered);
+            Image accFlat  = loadScaled("/images/IMGmaterials/flat.png",  1.2, buffered);
 
             return SpriteBank.fromExisting(
                     noteWhole, noteHalf, noteQuarter, noteEighth, noteSixteenth,
@@ -198,9 +222,9 @@ final class MusicViewImages {
     }
 
     // 私有小工具：读图并缩放（抛异常给上面的 try 统一处理）
-    private static Image loadScaled(String path, double factor) throws java.io.IOException {
+    private static Image loadScaled(String path, double factor, boolean buffered) throws java.io.IOException {
         java.awt.Image raw = javax.imageio.ImageIO.read(MusicViewImages.class.getResource(path));
-        return scaled(raw, factor);
+        return buffered ? scaledBuffered(raw, factor) : scaled(raw, factor);
     }
 
     static Image Load(String path) {
@@ -226,4 +250,28 @@ final class MusicViewImages {
         if (newHeight < 1) newHeight = 1;
         return srcImg.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
     }
+
+    /**
+     * Same size rule as {@link #scaled}, but drawn synchronously into an ARGB BufferedImage
+     * @param srcImg original img (already fully loaded, e.g. from ImageIO)
+     * @param factor scale factor
+     * @return scaled BufferedImage
+     */
+    static BufferedImage scaledBuffered(Image srcImg, double factor) {
+        if (srcImg == null) return null;
+        int newWidth = (int) (srcImg.getWidth(null) * factor);
+        int newHeight = (int) (srcImg.getHeight(null) * factor);
+        if (newWidth < 1) newWidth = 1;
+        if (newHeight < 1) newHeight = 1;
+        BufferedImage out = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(srcImg, 0, 0, newWidth, newHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
 }
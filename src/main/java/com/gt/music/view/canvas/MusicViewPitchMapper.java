@@ -1,5 +1,7 @@
 package com.gt.music.view.canvas;
 
+import com.gt.music.model.Pitch;
+import com.gt.music.model.StaffGeometry;
 import com.gt.music.types.NoteDuration;
 
 import java.awt.*;
@@ -39,7 +41,50 @@ final class MusicViewPitchMapper {
     }
 
     /**
-     * 等价于 calculatePitch(int absoluteY)
+     * 预先建好的音高表：下标即音高编号（0 = 最高音），锚点音名对应 staff 顶线（step = 0）。
+     * y → 音高、音名 → 下标、下标 → y 都是常数时间；每个下标同时缓存数值音高（Pitch 的全音阶步）。
+     */
+    static final class PitchTable {
+        private final String[] names;
+        private final int[] pitchSteps;
+        private final int anchorIndex;
+        private final java.util.Map<String, Integer> indexByName;
+
+        PitchTable(String[] names, String anchorName) {
+            this.names = names.clone();
+            this.pitchSteps = new int[names.length];
+            this.indexByName = new java.util.HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                indexByName.putIfAbsent(names[i], i);
+                pitchSteps[i] = Pitch.parseStep(names[i]);
+            }
+            // 若没找到锚点（异常配置），退化为 0 避免崩溃
+            this.anchorIndex = indexByName.getOrDefault(anchorName, 0);
+        }
+
+        int size() { return names.length; }
+
+        /** 相对 staff 顶线的半线距步数 → 音高下标；超出范围返回 -1 */
+        int indexAtStep(int step) {
+            int idx = anchorIndex + step;
+            return (idx < 0 || idx >= names.length) ? -1 : idx;
+        }
+
+        String nameAt(int index) { return names[index]; }
+
+        int pitchStepAt(int index) { return pitchSteps[index]; }
+
+        int indexOf(String name) {
+            Integer i = (name != null) ? indexByName.get(name) : null;
+            return (i != null) ? i : -1;
+        }
+
+        /** 音高下标 → 相对 staff 顶线的半线距步数 */
+        int stepOf(int index) { return index - anchorIndex; }
+    }
+
+    /**
+     * 等价于 calculatePitch(int absoluteY)：最近 staff 与半线距步数都用算术直接得到
      */
     static String calculatePitch(
             int absoluteY,
@@ -48,55 +93,55 @@ final class MusicViewPitchMapper {
             int staffHeight,
             int staffSpacing,
             double halfLineSpacing,
-            String[] pitchNames) {
+            PitchTable pitches) {
 
         // 1) 选最近的 staff（以 staff 中线距离最小为准）
-        int bestTop = topPadding;
-        int bestDist = Integer.MAX_VALUE;
-        for (int i = 0; i < numStaves; i++) {
-            int top = topPadding + i * (staffHeight + staffSpacing);
-            int center = top + staffHeight / 2;
-            int dist = Math.abs(absoluteY - center);
-            if (dist < bestDist) {
-                bestDist = dist;
-                bestTop = top;
-            }
-        }
+        int staff = StaffGeometry.nearestStaffIndex(absoluteY, topPadding, staffHeight, staffSpacing, numStaves);
+        int bestTop = StaffGeometry.staffTopY(staff, topPadding, staffHeight, staffSpacing);
 
         // 2) 相对该 staff 顶部按“半线距”计算 step（允许落在 staff 之外）
-        int step = (int) Math.round((absoluteY - bestTop) / halfLineSpacing);
+        int step = StaffGeometry.halfLineStep(absoluteY, bestTop, halfLineSpacing);
 
-        // 3) 以 F5 为锚点：step=0 时应该落在 "F5" 的下标处
-        int baseIndex = -1;
-        for (int i = 0; i < pitchNames.length; i++) {
-            if ("F5".equals(pitchNames[i])) { baseIndex = i; break; }
-        }
-        if (baseIndex < 0) {
-            // 若没找到 F5（异常配置），退化为旧行为避免崩溃
-            baseIndex = 0;
-        }
+        // 3) 以锚点（F5）为 step=0，正常在其上下沿半线距滚动
+        int idx = pitches.indexAtStep(step);
+        return (idx < 0) ? "Outside" : pitches.nameAt(idx);
+    }
 
-        int idx = baseIndex + step; // 正常在 F5 上下沿半线距滚动
-        if (idx < 0 || idx >= pitchNames.length) return "Outside";
-        return pitchNames[idx];
+    /**
+     * 与 calculatePitch 相同的换算，但直接返回数值音高（Pitch 的全音阶步），超出范围返回 Pitch.NONE
+     */
+    static int calculatePitchStep(
+            int absoluteY,
+            int numStaves,
+            int topPadding,
+            int staffHeight,
+            int staffSpacing,
+            double halfLineSpacing,
+            PitchTable pitches) {
+        int staff = StaffGeometry.nearestStaffIndex(absoluteY, topPadding, staffHeight, staffSpacing, numStaves);
+        int top = StaffGeometry.staffTopY(staff, topPadding, staffHeight, staffSpacing);
+        int idx = pitches.indexAtStep(StaffGeometry.halfLineStep(absoluteY, top, halfLineSpacing));
+        return (idx < 0) ? Pitch.NONE : pitches.pitchStepAt(idx);
     }
 
 
     /**
-     *
+     * 音高下标 → 该音在 staffTopY 这条 staff 上的标准 y（与 calculatePitch 互逆）
      */
     static int getSnapYForPitch(
-            String pitch,
+            int pitchIndex,
             int staffTopY,
             double halfLineSpacing,
-            String[] pitchNames) {
+            PitchTable pitches) {
+        if (pitchIndex < 0 || pitchIndex >= pitches.size()) return -1;
+        return (int) Math.round(staffTopY + pitches.stepOf(pitchIndex) * halfLineSpacing);
+    }
 
-        for (int i = 0; i < pitchNames.length; i++) {
-            if (pitchNames[i].equals(pitch)) {
-                double standardSnapY = staffTopY + (i * halfLineSpacing);
-                return (int) Math.round(standardSnapY);
-            }
-        }
-        return -1;
+    static int getSnapYForPitch(
+            String pitch,
+            int staffTopY,
+            double halfLineSpacing,
+            PitchTable pitches) {
+        return getSnapYForPitch(pitches.indexOf(pitch), staffTopY, halfLineSpacing, pitches);
     }
 }
@@ -1,6 +1,7 @@
 package com.gt.music.view.canvas;
 
 import com.gt.music.model.Note;
+import com.gt.music.model.StaffGeometry;
 import com.gt.music.model.Symbol;
 import java.util.List;
 import java.awt.*;
@@ -26,12 +27,81 @@ final class MusicViewSnapper {
         snapAnchorX = null;
     }
 
-    // —— 改动点：多一个 widthProvider 参数；并用“中心点±半宽”来判断水平相交 ——
+    /**
+     * 一条 staff 上全部 Note 的只读索引：按左边界 x 排序，宽度在建索引时一次性缓存。
+     * 查询水平相交时先二分定位，再只扫描 [aLeft - maxWidth, aRight] 范围内的少数候选。
+     */
+    static final class StaffIndex {
+        static final StaffIndex EMPTY = new StaffIndex(new Note[0], new int[0], new int[0], new int[0], 0);
+
+        private final Note[] notes;
+        private final int[] lefts;   // 升序
+        private final int[] widths;
+        private final int[] order;   // 在原符号列表中的顺序，用于保持“先命中者优先”
+        private final int maxWidth;
+
+        private StaffIndex(Note[] notes, int[] lefts, int[] widths, int[] order, int maxWidth) {
+            this.notes = notes;
+            this.lefts = lefts;
+            this.widths = widths;
+            this.order = order;
+            this.maxWidth = maxWidth;
+        }
+
+        /** @param staffNotes 同一 staff 的 Note，按原符号列表顺序 */
+        static StaffIndex build(List<Note> staffNotes, NoteWidthProvider widthProvider) {
+            int n = staffNotes.size();
+            if (n == 0) return EMPTY;
+            Integer[] idx = new Integer[n];
+            for (int i = 0; i < n; i++) idx[i] = i;
+            java.util.Arrays.sort(idx, (p, q) -> Integer.compare(staffNotes.get(p).getX(), staffNotes.get(q).getX()));
+
+            Note[] notes = new Note[n];
+            int[] lefts = new int[n], widths = new int[n], order = new int[n];
+            int maxW = 1;
+            for (int i = 0; i < n; i++) {
+                Note b = staffNotes.get(idx[i]);
+                notes[i] = b;
+                lefts[i] = b.getX();
+                widths[i] = Math.max(1, widthProvider.getWidth(b));
+                order[i] = idx[i];
+                if (widths[i] > maxW) maxW = widths[i];
+            }
+            return new StaffIndex(notes, lefts, widths, order, maxW);
+        }
+
+        int size() { return notes.length; }
+
+        /** 第一个 left >= key 的下标 */
+        private int lowerBound(int key) {
+            int lo = 0, hi = lefts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (lefts[mid] < key) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        /** 与 [aLeft, aRight] 水平相交的 Note（排除 self）；多个时取原列表中最靠前的，没有返回 -1 */
+        int findOverlap(int aLeft, int aRight, Note self) {
+            int best = -1;
+            for (int i = lowerBound(aLeft - maxWidth); i < lefts.length && lefts[i] <= aRight; i++) {
+                if (notes[i] == self) continue;
+                // 你的坐标是“左上角”，因此 B 的范围 = [left, left + width]
+                if (aLeft <= lefts[i] + widths[i] && (best < 0 || order[i] < order[best])) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+    // —— 改动点：用 staff 的 x 索引二分查找水平相交（中心点±半宽），每次移动不再扫描/分配列表 ——
     public void onDragMove(Note dragging,
-                           List<Symbol> staffItems,
+                           StaffIndex staffIndex,
                            int mouseX,
-                           int aHalfW,
-                           NoteWidthProvider widthProvider) {
+                           int aHalfW) {
         if (dragging == null) return;
 
         if (isSnapped()) {
@@ -46,23 +116,11 @@ final class MusicViewSnapper {
         int aLeft = mouseX - aHalfW;
         int aRight = mouseX + aHalfW;
 
-        for (Symbol s : staffItems) {
-            if (!(s instanceof Note)) continue;
-            if (s == dragging) continue;
-            Note b = (Note) s;
-
-            int bW = Math.max(1, widthProvider.getWidth(b));
-            // 你的坐标是“左上角”，因此 B 的范围 = [b.getX(), b.getX() + bW]
-            int bLeft = b.getX();
-            int bRight = b.getX() + bW;
-
-            boolean horizontalOverlap = (aRight >= bLeft) && (aLeft <= bRight);
-            if (horizontalOverlap) {
-                snappedTo = b;
-                // 题意是“同一水平位置”，通常锁中心 X 更自然（和你 bboxForSymbol 的中心一致）
-                snapAnchorX = b.getX();
-                break;
-            }
+        int hit = staffIndex.findOverlap(aLeft, aRight, dragging);
+        if (hit >= 0) {
+            snappedTo = staffIndex.notes[hit];
+            // 题意是“同一水平位置”，通常锁中心 X 更自然（和你 bboxForSymbol 的中心一致）
+            snapAnchorX = staffIndex.lefts[hit];
         }
     }
 
@@ -73,19 +131,9 @@ final class MusicViewSnapper {
     public boolean isSnapped() { return snappedTo != null && snapAnchorX != null; }
 
     // —— Utils ——
-    static int nearestStaffTopY(int absoluteY, int topPadding, int staffHeight, int staffSpacing, int numStaves) { /* 原样 */
-        int bestTop = topPadding;
-        int bestDist = Integer.MAX_VALUE;
-        for (int i = 0; i < numStaves; i++) {
-            int top = topPadding + i * (staffHeight + staffSpacing);
-            int center = top + staffHeight / 2;
-            int dist = Math.abs(absoluteY - center);
-            if (dist < bestDist) {
-                bestDist = dist;
-                bestTop = top;
-            }
-        }
-        return bestTop;
+    static int nearestStaffTopY(int absoluteY, int topPadding, int staffHeight, int staffSpacing, int numStaves) {
+        int i = StaffGeometry.nearestStaffIndex(absoluteY, topPadding, staffHeight, staffSpacing, numStaves);
+        return StaffGeometry.staffTopY(i, topPadding, staffHeight, staffSpacing);
     }
 
     static int snapY(int rawY, int staffTopY, double halfLineSpacing, int tolerancePx) { /* 原样 */
@@ -0,0 +1,60 @@
+package com.gt.music.view.canvas;
+
+import java.awt.*;
+import java.awt.image.ImageObserver;
+
+/**
+ * MusicPagePainter 的绘制目标：只包含画谱需要的几种操作，
+ * 既可以落到 Graphics2D（屏幕 / BufferedImage），也可以落到 SVG 文本。
+ */
+interface PageCanvas {
+    void setColor(Color c);
+
+    void setLineWidth(float width);
+
+    void drawLine(int x1, int y1, int x2, int y2);
+
+    void fillRect(int x, int y, int w, int h);
+
+    /** 画一张贴图；key 用于 SVG 等需要按图片身份去重的目标 */
+    void drawSprite(MusicViewImages.Key key, Image img, int x, int y);
+
+    static PageCanvas of(Graphics2D g2, ImageObserver observer) {
+        return new Graphics2DCanvas(g2, observer);
+    }
+
+    final class Graphics2DCanvas implements PageCanvas {
+        private final Graphics2D g2;
+        private final ImageObserver observer;
+
+        Graphics2DCanvas(Graphics2D g2, ImageObserver observer) {
+            this.g2 = g2;
+            this.observer = observer;
+        }
+
+        @Override
+        public void setColor(Color c) {
+            g2.setColor(c);
+        }
+
+        @Override
+        public void setLineWidth(float width) {
+            g2.setStroke(new BasicStroke(width));
+        }
+
+        @Override
+        public void drawLine(int x1, int y1, int x2, int y2) {
+            g2.drawLine(x1, y1, x2, y2);
+        }
+
+        @Override
+        public void fillRect(int x, int y, int w, int h) {
+            g2.fillRect(x, y, w, h);
+        }
+
+        @Override
+        public void drawSprite(MusicViewImages.Key key, Image img, int x, int y) {
+            g2.drawImage(img, x, y, observer);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.gt.music.view.canvas;
+
+import com.gt.music.model.PageSnapshot;
+import com.gt.music.model.ScorePage;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 页面缩略图渲染器：在后台线程池里把一页的符号数据画成小图，不创建任何 Swing 组件。
+ * 缓存按页（ScorePage 实例）+ 版本号（{@link ScorePage#getRevision()}）管理，
+ * 页面内容没变就直接复用，变了才重新渲染。
+ *
+ * 所有公开方法都只能在 EDT 上调用；实际绘制在 HeadlessPageRenderer 里完成。
+ */
+public final class PageThumbnailRenderer {
+
+    private final int thumbWidth;
+    private final double scale;
+    private final MusicViewImages.Bank sprites;
+    private final ExecutorService workers;
+    private final Map<ScorePage, Entry> cache = new IdentityHashMap<>();
+
+    private static final class Entry {
+        BufferedImage image;       // 最近一次完成的缩略图（可能已过期）
+        int imageRevision = -1;    // image 对应的页面版本
+        int pendingRevision = -1;  // 正在后台渲染的版本
+        Future<?> pending;
+        Consumer<BufferedImage> onReady;
+    }
+
+    public PageThumbnailRenderer(int thumbWidth) {
+        this.thumbWidth = Math.max(16, thumbWidth);
+        this.scale = (double) this.thumbWidth / MusicPagePainter.pageWidth();
+        this.sprites = MusicViewImages.loadBufferedFromResources(MusicView.SCALE_FACTOR);
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "page-thumbnail-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    public int getThumbWidth() {
+        return thumbWidth;
+    }
+
+    /** 已有的缩略图（可能比页面当前内容旧），没有则返回 null */
+    public BufferedImage cached(ScorePage page) {
+        Entry e = cache.get(page);
+        return (e != null) ? e.image : null;
+    }
+
+    /**
+     * 请求某页的最新缩略图。缓存命中时立即回调；否则取页面的不可变快照（O(1)），
+     * 交给后台渲染，完成后在 EDT 上回调 onReady。同一页的旧任务会被新版本取代。
+     */
+    public void request(ScorePage page, Consumer<BufferedImage> onReady) {
+        final PageSnapshot snapshot = page.snapshot();
+        int revision = snapshot.getRevision();
+        Entry e = cache.computeIfAbsent(page, k -> new Entry());
+        e.onReady = onReady;
+
+        if (e.image != null && e.imageRevision == revision) {
+            if (onReady != null) onReady.accept(e.image);
+            return;
+        }
+        if (e.pending != null && e.pendingRevision == revision) {
+            return; // 同一版本已在渲染中
+        }
+        if (e.pending != null) e.pending.cancel(false);
+
+        e.pendingRevision = revision;
+        e.pending = workers.submit(() -> {
+            BufferedImage img = HeadlessPageRenderer.renderImage(
+                    snapshot.getNumStaves(), snapshot.getSymbols(), sprites, scale);
+            SwingUtilities.invokeLater(() -> {
+                // 已被删除或已有更新的请求：丢弃
+                if (cache.get(page) != e || e.pendingRevision != revision) return;
+                e.image = img;
+                e.imageRevision = revision;
+                e.pending = null;
+                if (e.onReady != null) e.onReady.accept(img);
+            });
+        });
+    }
+
+    /** 页面被删除时释放缓存并取消未完成的渲染 */
+    public void evict(ScorePage page) {
+        Entry e = cache.remove(page);
+        if (e != null && e.pending != null) e.pending.cancel(false);
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        cache.clear();
+    }
+}
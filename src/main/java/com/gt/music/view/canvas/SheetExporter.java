@@ -0,0 +1,139 @@
+package com.gt.music.view.canvas;
+
+import com.gt.music.model.Symbol;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 整份乐谱导出为 PNG / SVG：每页一个文件，多页在线程池里并行渲染。
+ * 不需要任何 Swing 组件，可在 java.awt.headless=true 的服务器上运行。
+ */
+public final class SheetExporter {
+
+    public enum Format {
+        PNG("png"), SVG("svg");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /** 一页的只读数据：staff 数量 + 符号（调用方保证导出期间不再修改） */
+    public static final class Page {
+        private final int numStaves;
+        private final List<? extends Symbol> symbols;
+
+        public Page(int numStaves, List<? extends Symbol> symbols) {
+            this.numStaves = numStaves;
+            this.symbols = symbols;
+        }
+
+        public int getNumStaves() {
+            return numStaves;
+        }
+
+        public List<? extends Symbol> getSymbols() {
+            return symbols;
+        }
+    }
+
+    private final double scale;
+    private final MusicViewImages.Bank sprites;
+
+    /**
+     * @param scale PNG 的输出缩放（1.0 = 与屏幕同尺寸）；SVG 为矢量，始终按原始坐标输出
+     */
+    public SheetExporter(double scale) {
+        this.scale = (scale > 0) ? scale : 1.0;
+        this.sprites = MusicViewImages.loadBufferedFromResources(MusicView.SCALE_FACTOR);
+    }
+
+    /**
+     * 并行导出全部页面，返回按页码排序的文件列表。
+     * @param threads 工作线程数；&lt;= 0 表示使用全部 CPU 核
+     */
+    public List<File> exportAll(List<Page> pages, File outDir, Format format, int threads) throws IOException {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create output directory: " + outDir);
+        }
+        if (pages.isEmpty()) return Collections.emptyList();
+
+        int n = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        n = Math.min(n, pages.size());
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "sheet-export-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        int digits = Math.max(3, String.valueOf(pages.size()).length());
+        List<Callable<File>> jobs = new ArrayList<>(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            File file = new File(outDir, String.format("page-%0" + digits + "d.%s", i + 1, format.getExtension()));
+            jobs.add(() -> {
+                exportPage(page, file, format);
+                return file;
+            });
+        }
+
+        try {
+            List<File> out = new ArrayList<>(pages.size());
+            for (Future<File> f : pool.invokeAll(jobs)) {
+                out.add(f.get());
+            }
+            return out;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Export failed: " + cause, cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void exportPage(Page page, File file, Format format) throws IOException {
+        if (format == Format.PNG) {
+            BufferedImage img = renderImage(page);
+            if (!ImageIO.write(img, "png", file)) {
+                throw new IOException("No PNG writer available for " + file);
+            }
+        } else {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                HeadlessPageRenderer.writeSvg(page.getNumStaves(), page.getSymbols(), sprites, out);
+            }
+        }
+    }
+
+    public BufferedImage renderImage(Page page) {
+        return HeadlessPageRenderer.renderImage(page.getNumStaves(), page.getSymbols(), sprites, scale);
+    }
+}
@@ -0,0 +1,88 @@
+package com.gt.music.view.canvas;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 把 MusicPagePainter 的绘制指令写成 SVG 文本。
+ * 每种贴图只在 &lt;defs&gt; 里以 PNG(base64) 存一份，正文用 &lt;use&gt; 引用，文件体积与符号数量线性相关。
+ */
+final class SvgPageCanvas implements PageCanvas {
+    private final StringBuilder body = new StringBuilder(4096);
+    private final Map<MusicViewImages.Key, Image> usedSprites = new EnumMap<>(MusicViewImages.Key.class);
+    private String color = "#000000";
+    private float lineWidth = 1f;
+
+    @Override
+    public void setColor(Color c) {
+        color = String.format("#%02x%02x%02x", c.getRed(), c.getGreen(), c.getBlue());
+    }
+
+    @Override
+    public void setLineWidth(float width) {
+        lineWidth = width;
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        body.append("<line x1=\"").append(x1).append("\" y1=\"").append(y1)
+                .append("\" x2=\"").append(x2).append("\" y2=\"").append(y2)
+                .append("\" stroke=\"").append(color).append("\" stroke-width=\"").append(lineWidth)
+                .append("\"/>\n");
+    }
+
+    @Override
+    public void fillRect(int x, int y, int w, int h) {
+        body.append("<rect x=\"").append(x).append("\" y=\"").append(y)
+                .append("\" width=\"").append(w).append("\" height=\"").append(h)
+                .append("\" fill=\"").append(color).append("\"/>\n");
+    }
+
+    @Override
+    public void drawSprite(MusicViewImages.Key key, Image img, int x, int y) {
+        usedSprites.putIfAbsent(key, img);
+        body.append("<use xlink:href=\"#").append(spriteId(key))
+                .append("\" x=\"").append(x).append("\" y=\"").append(y).append("\"/>\n");
+    }
+
+    void writeTo(Writer out, int width, int height) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+                + " width=\"" + width + "\" height=\"" + height
+                + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+        out.write("<rect width=\"100%\" height=\"100%\" fill=\"#ffffff\"/>\n");
+        out.write("<defs>\n");
+        for (Map.Entry<MusicViewImages.Key, Image> e : usedSprites.entrySet()) {
+            Image img = e.getValue();
+            out.write("<image id=\"" + spriteId(e.getKey()) + "\" width=\"" + img.getWidth(null)
+                    + "\" height=\"" + img.getHeight(null) + "\" xlink:href=\"data:image/png;base64,"
+                    + pngBase64(img) + "\"/>\n");
+        }
+        out.write("</defs>\n");
+        out.append(body);
+        out.write("</svg>\n");
+    }
+
+    private static String spriteId(MusicViewImages.Key key) {
+        return "sprite-" + key.name().toLowerCase();
+    }
+
+    private static String pngBase64(Image img) throws IOException {
+        BufferedImage buf;
+        if (img instanceof BufferedImage) {
+            buf = (BufferedImage) img;
+        } else {
+            buf = MusicViewImages.scaledBuffered(img, 1.0);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(buf, "png", bytes);
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+}